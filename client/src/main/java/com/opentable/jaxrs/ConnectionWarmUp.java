@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * Opens a freshly built client's connections to {@link JaxRsClientConfig#getWarmUpEndpoints()} before it
+ * is handed out, so the first requests after a deploy do not all pay for TCP and TLS handshakes.
+ *
+ * <p>For each endpoint, {@link JaxRsClientConfig#getWarmUpConnections()} {@code HEAD} requests are sent at once
+ * through the client itself.  Being concurrent they each need a connection of their own, which the engine's pool
+ * (Apache or Jetty alike) opens, handshakes and keeps once the response is in.  No more than
+ * {@link JaxRsClientConfig#getConnectionPoolSize()} requests are sent in all.  Any response counts, whatever its
+ * status; failures are logged and otherwise ignored.  Whatever is still outstanding at
+ * {@link JaxRsClientConfig#getWarmUpTimeout()} is cancelled and no longer counted, so building the client never
+ * waits longer than that.
+ *
+ * <p>Warm-up requests carry {@value #WARM_UP_PROPERTY}: the client's metrics, circuit breaker, concurrency limit
+ * and load balancer statistics do not see them, and they are neither retried nor hedged.  Features of your own
+ * should likewise check {@link #isWarmUp(ClientRequestContext)}.
+ *
+ * <p>Each warm-up request's latency is recorded to the {@value #LATENCY} histogram, tagged like the instruments of
+ * {@link ClientMetricsFeature}, and the total is logged.
+ */
+public final class ConnectionWarmUp {
+    public static final String LATENCY = "jaxrs.client.warm-up.latency";
+    /** Request property set on warm-up requests. */
+    public static final String WARM_UP_PROPERTY = "ot.jaxrs.warm-up";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionWarmUp.class);
+
+    private ConnectionWarmUp() { }
+
+    /** @return whether {@code request} only opens a connection, so filters should let it through untouched */
+    public static boolean isWarmUp(ClientRequestContext request) {
+        return isWarmUp(request::getProperty);
+    }
+
+    /**
+     * For engines: whether the request with these properties is a warm-up request.
+     * @param properties the request's properties, as its filters see them
+     */
+    public static boolean isWarmUp(Function<String, Object> properties) {
+        return Boolean.TRUE.equals(properties.apply(WARM_UP_PROPERTY));
+    }
+
+    static Client warmUp(Client client, String clientName, JaxRsClientConfig config) {
+        final List<URI> endpoints = config.getWarmUpEndpoints();
+        final int perEndpoint = Math.min(config.getWarmUpConnections(), config.getHttpClientDefaultMaxPerRoute());
+        if (endpoints.isEmpty() || perEndpoint <= 0) {
+            return client;
+        }
+        final ClientMetricRegistry.Histogram latency = ClientMetricsFeature.registry(client.getConfiguration())
+                .histogram(LATENCY, ClientMetricsFeature.tags(client.getConfiguration()));
+
+        final int total = Math.min(endpoints.size() * perEndpoint, Math.max(1, config.getConnectionPoolSize()));
+        final long start = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(total);
+        // set once building stops waiting: later responses are closed but no longer counted
+        final AtomicBoolean over = new AtomicBoolean();
+        final AtomicInteger opened = new AtomicInteger();
+        final List<Future<Response>> outstanding = new ArrayList<>(total);
+        for (int n = 0; n < total; n++) {
+            final URI endpoint = endpoints.get(n / perEndpoint);
+            final long requestStart = System.nanoTime();
+            final InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+                @Override
+                public void completed(Response response) {
+                    response.close();
+                    if (!over.get()) {
+                        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - requestStart));
+                        opened.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    LOG.debug("Warm-up request for client '{}' to {} failed", clientName, endpoint, throwable);
+                    done.countDown();
+                }
+            };
+            try {
+                outstanding.add(client.target(endpoint).request().property(WARM_UP_PROPERTY, Boolean.TRUE).async().head(callback));
+            } catch (RuntimeException e) {
+                LOG.warn("Could not start warm-up request for client '{}' to {}", clientName, endpoint, e);
+                done.countDown();
+            }
+        }
+
+        try {
+            done.await(Math.max(0, config.getWarmUpTimeout().toNanos() - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        over.set(true);
+        outstanding.forEach(f -> f.cancel(true));
+        LOG.info("Warmed up client '{}': {} of {} connections to {} in {} ms", clientName, opened.get(),
+                total, endpoints, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return client;
+    }
+}
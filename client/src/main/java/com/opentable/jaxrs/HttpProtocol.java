@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+/**
+ * The HTTP version a client speaks; see {@link JaxRsClientConfig#getHttpProtocol()}.
+ */
+public enum HttpProtocol {
+    /** HTTP/1.1, one request at a time per pooled connection. */
+    HTTP_1_1,
+    /**
+     * HTTP/2: {@code h2} negotiated by ALPN for {@code https}.  Concurrent requests to a host are multiplexed
+     * over a few connections.  How {@code http} URIs get cleartext {@code h2c} depends on the engine; see
+     * {@link JaxRsClientConfig#getHttpProtocol()}.
+     */
+    HTTP_2
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import org.springframework.context.ApplicationContext;
+
+/**
+ * SPI naming an engine and creating its {@link InternalClientFactory}.
+ *
+ * Engines are discovered with {@link java.util.ServiceLoader}: each engine jar lists its
+ * implementation in {@code META-INF/services/com.opentable.jaxrs.InternalClientEngine}.
+ */
+interface InternalClientEngine {
+    /** @return the name clients select this engine by, see {@link JaxRsClientConfig#getEngine()} */
+    String getName();
+
+    InternalClientFactory newFactory(ApplicationContext ctx);
+}
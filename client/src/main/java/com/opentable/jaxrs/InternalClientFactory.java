@@ -18,10 +18,21 @@ import java.util.Collection;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+
 /**
  * SPI for creating {@link ClientBuilder} instances.
  */
 interface InternalClientFactory {
     ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups);
+
+    /**
+     * As above, additionally handing over the registry that engine-level metrics
+     * (e.g. connection pool occupancy) should be published to.
+     */
+    default ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups, ClientMetricRegistry metricRegistry) {
+        return newBuilder(clientName, config, featureGroups);
+    }
+
     <T> T createClientProxy(Class<T> proxyType, WebTarget baseTarget);
 }
@@ -13,41 +13,88 @@
  */
 package com.opentable.jaxrs;
 
-import java.util.WeakHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 /**
- * Hides gory details of reflection from main API.
+ * Hides gory details of engine discovery from main API.
  *
- * Finds and remembers the Class for InternalClientFactory, uses it
- * to create new instances.
+ * Finds every {@link InternalClientEngine} on the classpath once, and remembers the
+ * {@link InternalClientFactory} each creates per application context.  Lookups of an
+ * existing factory take no locks.
  */
 final class InternalClientFactoryHolder {
-    private static final InternalClientFactory FACTORY_IMPL = findFactory(null);
-    private static final WeakHashMap<ApplicationContext, InternalClientFactory> factories = new WeakHashMap<>();
+    /** Used when a client does not choose an engine and more than one is present. */
+    static final String DEFAULT_ENGINE = "resteasy";
+
+    private static final Logger LOG = LoggerFactory.getLogger(InternalClientFactoryHolder.class);
+    private static final Map<String, InternalClientEngine> ENGINES = findEngines();
+    private static final ConcurrentMap<String, InternalClientFactory> FACTORY_IMPLS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<ApplicationContext, ConcurrentMap<String, InternalClientFactory>> factories =
+            new MapMaker().weakKeys().makeMap();
 
     private InternalClientFactoryHolder() { }
 
-    static synchronized InternalClientFactory factory(ApplicationContext ctx) {
-        if (ctx == null) {
-            return FACTORY_IMPL;
-        } else {
-            return factories.computeIfAbsent(ctx, InternalClientFactoryHolder::findFactory);
+    /**
+     * @param engine the engine name, or empty for the default engine
+     */
+    static InternalClientFactory factory(ApplicationContext ctx, String engine) {
+        final String name = engineName(engine);
+        ConcurrentMap<String, InternalClientFactory> byEngine = ctx == null ? FACTORY_IMPLS : factories.get(ctx);
+        if (byEngine == null) {
+            byEngine = factories.computeIfAbsent(ctx, c -> new ConcurrentHashMap<>());
+        }
+        final InternalClientFactory result = byEngine.get(name);
+        if (result != null) {
+            return result;
+        }
+        return byEngine.computeIfAbsent(name, n -> ENGINES.get(n).newFactory(ctx));
+    }
+
+    /** @return the name of the engine {@code engine} selects, after resolving the default */
+    static String engineName(String engine) {
+        if (ENGINES.isEmpty()) {
+            throw new IllegalStateException("Can't find a JAX-RS client engine. " +
+                    "did you include a jaxrs-clientfactory-* jar on your classpath?");
+        }
+        if (Strings.isNullOrEmpty(engine)) {
+            if (ENGINES.size() == 1) {
+                return ENGINES.keySet().iterator().next();
+            }
+            if (ENGINES.containsKey(DEFAULT_ENGINE)) {
+                return DEFAULT_ENGINE;
+            }
+            throw new IllegalStateException("Engines " + ENGINES.keySet() + " are all on the classpath; " +
+                    "choose one with JaxRsClientConfig.getEngine()");
+        }
+        if (!ENGINES.containsKey(engine)) {
+            throw new IllegalArgumentException("Unknown JAX-RS client engine '" + engine + "', available are " + ENGINES.keySet());
         }
+        return engine;
     }
 
-    private static InternalClientFactory findFactory(ApplicationContext ctx) {
-        try {
-            final ClassLoader classLoader = InternalClientFactoryHolder.class.getClassLoader(); //NOPMD
-            final String implClass = "com.opentable.jaxrs.JaxRsClientFactoryImpl";
-            return InternalClientFactory.class.cast(
-                    Class.forName(implClass, true, classLoader).getConstructor(ApplicationContext.class).newInstance(ctx));
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("Can't find com.opentable.jaxrs.JaxRsClientBuilderImpl. " +
-                    "did you include a jaxrs-clientbuilder-* jar on your classpath?", e);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException("Error instantiating factory class", e);
+    private static Map<String, InternalClientEngine> findEngines() {
+        final Map<String, InternalClientEngine> result = new TreeMap<>();
+        final ClassLoader classLoader = InternalClientFactoryHolder.class.getClassLoader(); //NOPMD
+        for (InternalClientEngine engine : ServiceLoader.load(InternalClientEngine.class, classLoader)) {
+            final InternalClientEngine existing = result.putIfAbsent(engine.getName(), engine);
+            if (existing != null) {
+                LOG.warn("Engine '{}' is provided by both {} and {}; using the former",
+                        engine.getName(), existing.getClass().getName(), engine.getClass().getName());
+            }
         }
+        LOG.debug("Found JAX-RS client engines {}", result.keySet());
+        return ImmutableMap.copyOf(result);
     }
 }
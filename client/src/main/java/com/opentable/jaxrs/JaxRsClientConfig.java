@@ -13,7 +13,13 @@
  */
 package com.opentable.jaxrs;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.immutables.value.Value;
 
@@ -30,12 +36,26 @@ import org.immutables.value.Value;
  * resteasy - resteasy implementation backed by jetty. This is the default
  * resteasy-apache - old resteasy implementation using apache http client.
  * jersey - jersey implementation, also backed by apache http client.
+ * jdk - resteasy implementation backed by the JDK's java.net.http client.
+ *
+ * Several engines may be on the classpath at once; each client picks one with {@link #getEngine()}.
  */
 @Value.Immutable
 public interface JaxRsClientConfig
 {
     JaxRsClientConfig DEFAULT = new JaxRsClientConfig() {};
 
+    /**
+     * Engine that builds this client: resteasy, resteasy-apache, jersey or jdk.
+     * Empty means the only engine on the classpath, or resteasy if there are several.
+     *
+     * Supported: resteasy, resteasy-apache, jersey, jdk
+     */
+    @Value.Default
+    default String getEngine() {
+        return "";
+    }
+
     /**
      * Timeout to check out a connection from the connection pool.
      *
@@ -96,7 +116,7 @@ public interface JaxRsClientConfig
      * in-flight awaiting resource (e.g. connection) availability
      * before we reject additional requests.
      *
-     * Supported: resteasy-apache, resteasy
+     * Supported: resteasy-apache, resteasy, jdk
      * Unsupported: jersey
      */
     @Value.Default
@@ -107,7 +127,7 @@ public interface JaxRsClientConfig
     /**
      * Timeout to establish initial connection.
      *
-     * Supported: resteasy-apache, resteasy
+     * Supported: resteasy-apache, resteasy, jdk
      * Unsupported: jersey
      */
     @Value.Default
@@ -118,7 +138,7 @@ public interface JaxRsClientConfig
     /**
      * Socket timeout.  Not used for asynchronous capable engines.
      *
-     * Supported: resteasy-apache, jersey
+     * Supported: resteasy-apache, jersey, jdk
      * Unsupported: resteasy
      *
      * @see java.net.SocketOptions#SO_TIMEOUT
@@ -156,7 +176,7 @@ public interface JaxRsClientConfig
     /**
      * Whether cookies should be handled.
      *
-     * Supported: resteasy, resteasy-apache
+     * Supported: resteasy, resteasy-apache, jdk
      * Unsupported: jersey
      */
     @Value.Default
@@ -168,7 +188,7 @@ public interface JaxRsClientConfig
      * Number of Executor Threads. Defaults to -1.
      * If set to -1, will try to autosize for cores. Not implemented for Jersey.
      *
-     * Supported: resteasy, resteasy-apache
+     * Supported: resteasy, resteasy-apache, jdk
      * Unsupported: jersey
      */
     @Value.Default
@@ -178,7 +198,7 @@ public interface JaxRsClientConfig
      * Get the HTTP proxy host to proxy this client's requests through
      * @return the proxy host, or an empty string if the client should not use a proxy
      *
-     * Supported: resteasy
+     * Supported: resteasy, jdk
      * Unsupported: resteasy-apache, jersey
      */
     @Value.Default
@@ -190,7 +210,7 @@ public interface JaxRsClientConfig
      * Get the HTTP port of the proxy server to proxy this client's requests through
      * @return the HTTP port, or 0 if the client should not use a proxy
      *
-     * Supported: resteasy
+     * Supported: resteasy, jdk
      * Unsupported: resteasy-apache, jersey
      */
     @Value.Default
@@ -210,7 +230,7 @@ public interface JaxRsClientConfig
     /**
      * Get a user agent for the client to use
      *
-     * Supported: resteasy, resteasy-apache
+     * Supported: resteasy, resteasy-apache, jdk
      * Unsupported: jersey
      *
      * @return the user agent string to use
@@ -247,4 +267,263 @@ public interface JaxRsClientConfig
         return false;
     }
 
+    /**
+     * HTTP version to speak.  With {@link HttpProtocol#HTTP_2} concurrent requests to a host share a few
+     * multiplexed connections rather than needing one each, so high fan-out to one host no longer takes dozens
+     * of connections.  Plain {@code http} URIs differ by engine:
+     * <ul>
+     *     <li>resteasy speaks {@code h2c} with prior knowledge, so every server the client talks to must
+     *     speak HTTP/2.  It ignores {@link #isLimitConnectionPool()} over HTTP/2.</li>
+     *     <li>jdk sends its first request on a connection as HTTP/1.1 with {@code Upgrade: h2c}, and stays
+     *     on HTTP/1.1 if the server does not switch.</li>
+     * </ul>
+     *
+     * Supported: resteasy, jdk
+     * Unsupported: resteasy-apache, jersey
+     */
+    @Value.Default
+    default HttpProtocol getHttpProtocol() {
+        return HttpProtocol.HTTP_1_1;
+    }
+
+    /**
+     * Run this client on a thread pool, scheduler and buffer pool shared with every other
+     * client of the same factory that opts in, instead of dedicated ones.  The client's
+     * {@link #getExecutorThreads()} and {@link #getAsyncQueueLimit()} still bound how much of
+     * the shared pool it may occupy.  Cuts the thread count of services with many clients.
+     * The jdk engine shares only the pool its async invocations run on.
+     *
+     * Supported: resteasy, jdk
+     * Unsupported: resteasy-apache, jersey
+     */
+    @Value.Default
+    default boolean isSharedEventLoop() {
+        return false;
+    }
+
+    /**
+     * Most threads the {@link #isSharedEventLoop() shared} pool may grow to.  The pool is shared, so it
+     * takes the largest value of the clients using it.
+     *
+     * Supported: resteasy, jdk
+     * Unsupported: resteasy-apache, jersey
+     */
+    @Value.Default
+    default int getSharedEventLoopMaxThreads() {
+        return 400;
+    }
+
+    /**
+     * Threads the {@link #isSharedEventLoop() shared} pool keeps even when idle, the largest value of the
+     * clients using it.  The pool, and these threads, stop when the last of those clients is closed.
+     *
+     * Supported: resteasy
+     * Unsupported: resteasy-apache, jersey, jdk
+     */
+    @Value.Default
+    default int getSharedEventLoopMinThreads() {
+        return 8;
+    }
+
+    /**
+     * Run async invocations on virtual threads, one per invocation, instead of on a bounded
+     * platform thread pool.  At most {@link #getAsyncQueueLimit()} invocations may be outstanding;
+     * further ones are rejected immediately.  Requires a JVM with virtual threads, otherwise
+     * a warning is logged and the platform thread pool is used.
+     *
+     * Supported: resteasy, resteasy-apache, jdk
+     * Unsupported: jersey
+     */
+    @Value.Default
+    default boolean isVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * Record request count, latency, status, bytes and in-flight metrics for this client
+     * into the factory's {@link com.opentable.jaxrs.metrics.ClientMetricRegistry}.
+     *
+     * Supported: all
+     */
+    @Value.Default
+    default boolean isMetricsEnabled() {
+        return true;
+    }
+
+    /**
+     * Replace the fixed bound on concurrent requests with an adaptive one: the limit grows while
+     * response times stay near the best seen recently and shrinks as they inflate or the server
+     * answers 429/503.  Requests over the limit fail fast with a
+     * {@link com.opentable.jaxrs.limiter.ConcurrencyLimitExceededException} instead of queueing.
+     *
+     * Supported: all
+     */
+    @Value.Default
+    default boolean isAdaptiveConcurrencyLimit() {
+        return false;
+    }
+
+    /**
+     * Starting point of the adaptive concurrency limit.
+     * @see #isAdaptiveConcurrencyLimit()
+     */
+    @Value.Default
+    default int getConcurrencyLimitInitial() {
+        return 20;
+    }
+
+    /**
+     * The adaptive concurrency limit never drops below this.
+     * @see #isAdaptiveConcurrencyLimit()
+     */
+    @Value.Default
+    default int getConcurrencyLimitMin() {
+        return 1;
+    }
+
+    /**
+     * The adaptive concurrency limit never grows beyond this.
+     * @see #isAdaptiveConcurrencyLimit()
+     */
+    @Value.Default
+    default int getConcurrencyLimitMax() {
+        return 1000;
+    }
+
+    /**
+     * Retry a request this many times after a retryable failure: a transport error, or a status in
+     * {@link #getRetryableStatuses()}.  Only idempotent methods are retried, plus requests carrying the
+     * {@link JaxRsClientProperties#RETRYABLE} property.  Zero disables retries.
+     *
+     * Supported: all
+     */
+    @Value.Default
+    default int getMaxRetries() {
+        return 0;
+    }
+
+    /**
+     * Response statuses worth retrying.
+     * @see #getMaxRetries()
+     */
+    @Value.Default
+    default Set<Integer> getRetryableStatuses() {
+        return ImmutableSet.of(429, 502, 503, 504);
+    }
+
+    /**
+     * Retries may add at most this percentage to the client's requests, so that retries cannot
+     * multiply load on a struggling downstream.
+     * @see #getMaxRetries()
+     */
+    @Value.Default
+    default double getRetryBudgetPercent() {
+        return 10;
+    }
+
+    /**
+     * Backoff before the first retry; it doubles for each further one, and the actual delay is
+     * picked at random up to that ("full jitter").  A longer {@code Retry-After} is honoured.
+     * @see #getMaxRetries()
+     */
+    @Value.Default
+    default Duration getRetryBackoff() {
+        return Duration.ofMillis(50);
+    }
+
+    /**
+     * Cap on the retry backoff.  A {@code Retry-After} asking for longer is not retried at all.
+     * @see #getMaxRetries()
+     */
+    @Value.Default
+    default Duration getRetryMaxBackoff() {
+        return Duration.ofSeconds(2);
+    }
+
+    /**
+     * Fail requests fast while the host they go to mostly fails or is slow; see
+     * {@link com.opentable.jaxrs.resilience.CircuitBreakerFeature}.
+     *
+     * Supported: all
+     */
+    @Value.Default
+    default boolean isCircuitBreakerEnabled() {
+        return false;
+    }
+
+    /**
+     * Open a host's circuit breaker once this percentage of its recent calls got a 5xx response.
+     * @see #isCircuitBreakerEnabled()
+     */
+    @Value.Default
+    default double getCircuitBreakerFailureRatePercent() {
+        return 50;
+    }
+
+    /**
+     * Open a host's circuit breaker once this percentage of its recent calls took longer than
+     * {@link #getCircuitBreakerSlowCallDuration()}, including calls that failed in the transport.
+     * @see #isCircuitBreakerEnabled()
+     */
+    @Value.Default
+    default double getCircuitBreakerSlowCallRatePercent() {
+        return 80;
+    }
+
+    /**
+     * Calls taking longer than this count as slow.
+     * @see #isCircuitBreakerEnabled()
+     */
+    @Value.Default
+    default Duration getCircuitBreakerSlowCallDuration() {
+        return Duration.ofSeconds(5);
+    }
+
+    /**
+     * How long an open circuit breaker fails requests before letting a few probes through.
+     * @see #isCircuitBreakerEnabled()
+     */
+    @Value.Default
+    default Duration getCircuitBreakerOpenDuration() {
+        return Duration.ofSeconds(10);
+    }
+
+    /**
+     * A circuit breaker only opens once it has seen this many calls in its ten second window.
+     * @see #isCircuitBreakerEnabled()
+     */
+    @Value.Default
+    default int getCircuitBreakerMinimumCalls() {
+        return 20;
+    }
+
+    /**
+     * Open connections to these endpoints when the client is built, so the first requests after startup
+     * find them ready; see {@link ConnectionWarmUp}.  Each endpoint is sent {@code HEAD} requests.
+     *
+     * Supported: all
+     */
+    @Value.Default
+    default List<URI> getWarmUpEndpoints() {
+        return ImmutableList.of();
+    }
+
+    /**
+     * Connections to open to each warm-up endpoint, at most {@link #getHttpClientDefaultMaxPerRoute()}.
+     * @see #getWarmUpEndpoints()
+     */
+    @Value.Default
+    default int getWarmUpConnections() {
+        return 4;
+    }
+
+    /**
+     * Building the client waits at most this long for warm-up to finish.
+     * @see #getWarmUpEndpoints()
+     */
+    @Value.Default
+    default Duration getWarmUpTimeout() {
+        return Duration.ofSeconds(5);
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.opentable.jaxrs;
 
+import java.util.Optional;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.context.annotation.Bean;
@@ -7,6 +9,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.env.ConfigurableEnvironment;
 
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
 import com.opentable.jaxrs.referrer.ClientReferrerConfiguration;
 import com.opentable.spring.SpecializedConfigFactory;
 
@@ -20,8 +23,11 @@ public class JaxRsClientConfiguration {
     }
 
     @Bean
-    JaxRsClientFactory jaxrsClientFactory(SpecializedConfigFactory<JaxRsClientConfig> config) {
-        return new JaxRsClientFactory(config);
+    JaxRsClientFactory jaxrsClientFactory(SpecializedConfigFactory<JaxRsClientConfig> config,
+                                          Optional<ClientMetricRegistry> metricRegistry) {
+        final JaxRsClientFactory factory = new JaxRsClientFactory(config);
+        metricRegistry.ifPresent(factory::setMetricRegistry);
+        return factory;
     }
 
     @Bean
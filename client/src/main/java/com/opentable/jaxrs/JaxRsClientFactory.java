@@ -17,6 +17,7 @@ import static com.opentable.jaxrs.InternalClientFactoryHolder.factory;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,6 +44,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
+import com.opentable.jaxrs.limiter.ConcurrencyLimitFeature;
+import com.opentable.jaxrs.limiter.GradientLimit;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+import com.opentable.jaxrs.resilience.Attempts;
+import com.opentable.jaxrs.resilience.CircuitBreakerFeature;
+import com.opentable.jaxrs.resilience.RetryFeature;
+
 /**
  * Central registry for creating JAX-RS Clients.
  *
@@ -66,6 +76,15 @@ public class JaxRsClientFactory {
     public static final String CLIENT_NAME_PROPERTY = "ot.jaxrs.client-name";
     /** Client property that holds a {@code List<JaxRsFeatureGroup>}. */
     public static final String FEATURE_GROUP_PROPERTY = "ot.jaxrs.feature-groups";
+    /**
+     * Client property that holds the {@link ClientMetricRegistry} the client's features record to:
+     * the factory's, or {@link ClientMetricRegistry#NOOP} if {@link JaxRsClientConfig#isMetricsEnabled()} is off.
+     */
+    public static final String METRIC_REGISTRY_PROPERTY = "ot.jaxrs.metric-registry";
+    /** Client property that holds the {@code Map<String, String>} of tags for the client's metrics. */
+    public static final String METRIC_TAGS_PROPERTY = "ot.jaxrs.metric-tags";
+    /** Client property that holds the name of the engine that built the client, see {@link JaxRsClientConfig#getEngine()}. */
+    public static final String ENGINE_PROPERTY = "ot.jaxrs.engine";
 
     private static final Logger LOG = LoggerFactory.getLogger(JaxRsClientFactory.class);
 
@@ -76,6 +95,12 @@ public class JaxRsClientFactory {
     @GuardedBy("this")
     private final Multimap<JaxRsFeatureGroup, Class<? extends Feature>> classFeatureMap = HashMultimap.create();
 
+    @GuardedBy("this")
+    private ClientMetricRegistry metricRegistry = new InMemoryClientMetricRegistry();
+    /** Clients with the same name and groups share their metrics, so also their in-flight gauge. */
+    @GuardedBy("this")
+    private final Map<Map<String, String>, OutstandingRequests> inFlight = new HashMap<>();
+
     @GuardedBy("this")
     private boolean started;
 
@@ -117,6 +142,20 @@ public class JaxRsClientFactory {
         return this;
     }
 
+    /**
+     * Replace the registry that built-in client metrics are recorded to.
+     * Defaults to an {@link InMemoryClientMetricRegistry}.
+     */
+    public synchronized JaxRsClientFactory setMetricRegistry(ClientMetricRegistry metricRegistry) {
+        Preconditions.checkState(!started, "Already started building clients");
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry, "null metric registry");
+        return this;
+    }
+
+    public synchronized ClientMetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
     @Inject
     void injectBindings(Collection<JaxRsFeatureBinding> bindings) {
         bindings.forEach(b -> {
@@ -185,10 +224,33 @@ public class JaxRsClientFactory {
                 .addAll(featureGroupsIn)
                 .build();
 
-        final ClientBuilder builder = factory(ctx).newBuilder(clientName, jaxRsConfig, featureGroups);
+        final ClientMetricRegistry clientMetrics = jaxRsConfig.isMetricsEnabled() ? metricRegistry : ClientMetricRegistry.NOOP;
+        final Map<String, String> metricTags = ClientMetricsFeature.tags(clientName, featureGroupsIn);
+        final String engine = InternalClientFactoryHolder.engineName(jaxRsConfig.getEngine());
+        final ClientBuilder builder = factory(ctx, engine).newBuilder(clientName, jaxRsConfig, featureGroups, clientMetrics);
 
         builder.property(CLIENT_NAME_PROPERTY, clientName);
+        builder.property(ENGINE_PROPERTY, engine);
         builder.property(FEATURE_GROUP_PROPERTY, featureGroups);
+        builder.property(METRIC_REGISTRY_PROPERTY, clientMetrics);
+        builder.property(METRIC_TAGS_PROPERTY, metricTags);
+
+        if (jaxRsConfig.isMetricsEnabled()) {
+            builder.register(new ClientMetricsFeature(metricRegistry, metricTags,
+                    inFlight.computeIfAbsent(metricTags, tags -> ClientMetricsFeature.inFlight(metricRegistry, tags))));
+        }
+        if (jaxRsConfig.isAdaptiveConcurrencyLimit()) {
+            builder.register(new ConcurrencyLimitFeature(clientMetrics, clientName, metricTags,
+                    new GradientLimit(jaxRsConfig.getConcurrencyLimitInitial(),
+                            jaxRsConfig.getConcurrencyLimitMin(), jaxRsConfig.getConcurrencyLimitMax()),
+                    Attempts.attemptTimeout(jaxRsConfig)));
+        }
+        if (jaxRsConfig.getMaxRetries() > 0) {
+            builder.register(new RetryFeature(jaxRsConfig));
+        }
+        if (jaxRsConfig.isCircuitBreakerEnabled()) {
+            builder.register(new CircuitBreakerFeature(jaxRsConfig));
+        }
 
         final List<Feature> features = featureGroups.stream()
             .flatMap(g -> featureMap.get(g).stream())
@@ -237,7 +299,10 @@ public class JaxRsClientFactory {
      * You own the returned client and are responsible for managing its cleanup.
      */
     public Client newClient(String clientName, JaxRsFeatureGroup feature, JaxRsFeatureGroup... moreFeatures) {
-        return newBuilder(clientName, feature, moreFeatures).build();
+        return newClient(clientName, ImmutableList.<JaxRsFeatureGroup>builder()
+                .add(feature)
+                .addAll(Arrays.asList(moreFeatures))
+                .build());
     }
 
     /**
@@ -245,7 +310,7 @@ public class JaxRsClientFactory {
      * You own the returned client and are responsible for managing its cleanup.
      */
     public Client newClient(String clientName, Collection<JaxRsFeatureGroup> featureGroups) {
-        return newBuilder(clientName, featureGroups).build();
+        return newClient(clientName, configForClient(clientName), featureGroups);
     }
 
     /**
@@ -253,28 +318,35 @@ public class JaxRsClientFactory {
      * You own the returned client and are responsible for managing its cleanup.
      */
     public Client newClient(String clientName, JaxRsClientConfig config, JaxRsFeatureGroup feature, JaxRsFeatureGroup... moreFeatures) {
-        return newBuilder(clientName, config, feature, moreFeatures).build();
+        return newClient(clientName, config, ImmutableList.<JaxRsFeatureGroup>builder()
+                .add(feature)
+                .addAll(Arrays.asList(moreFeatures))
+                .build());
     }
 
     /**
      * Create a new {@link Client} instance with the given name and groups.
      * You own the returned client and are responsible for managing its cleanup.
+     * If the config lists {@link JaxRsClientConfig#getWarmUpEndpoints() warm-up endpoints}, connections
+     * to them are opened before this returns; see {@link ConnectionWarmUp}.
      */
     public Client newClient(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups) {
-        return newBuilder(clientName, config, featureGroups).build();
+        return ConnectionWarmUp.warmUp(newBuilder(clientName, config, featureGroups).build(), clientName, config);
     }
 
     /**
      * Create a Client proxy for the given interface type.
      * Note that different JAX-RS providers behave slightly
-     * differently for this feature.
+     * differently for this feature.  The proxy is built by the engine
+     * that built {@code baseTarget}'s client, or the default engine for other targets.
      *
      * @param proxyClass the class to implement
      * @param baseTarget the API root
      * @return a proxy implementation that executes requests
      */
     public <T> T createClientProxy(Class<T> proxyClass, WebTarget baseTarget) {
-        return factory(ctx).createClientProxy(proxyClass, baseTarget);
+        final Object engine = baseTarget.getConfiguration().getProperty(ENGINE_PROPERTY);
+        return factory(ctx, engine instanceof String ? (String) engine : null).createClientProxy(proxyClass, baseTarget);
     }
 
     /** Convenience method for making a builder with the name "test", for use in... tests! */
@@ -20,6 +20,16 @@ package com.opentable.jaxrs;
 public final class JaxRsClientProperties {
     public static final String ACTUAL_REQUEST = "ot.actual-request";
     public static final String FOLLOW_REDIRECTS = "jersey.config.client.followRedirects";
+    /**
+     * Request property holding the {@code Integer} number, from 1, of the attempt whose response a
+     * request got when it was sent with retries or hedging.  Set before the response filters run.
+     */
+    public static final String ATTEMPT = "ot.jaxrs.attempt";
+    /**
+     * Set this request property to {@code true} to let retries apply to a request whose method
+     * is not idempotent, e.g. a POST the server de-duplicates.
+     */
+    public static final String RETRYABLE = "ot.jaxrs.retryable";
 
     private JaxRsClientProperties() { }
 }
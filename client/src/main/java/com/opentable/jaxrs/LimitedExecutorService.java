@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A per-client view onto a shared {@link Executor}.
+ *
+ * <p>At most {@code maxConcurrency} tasks of this view run on the shared executor at once and at most
+ * {@code queueLimit} more wait; anything beyond that is rejected, just like the bounded
+ * {@link java.util.concurrent.ThreadPoolExecutor} a client gets when it does not share.
+ * One client can therefore not starve the others of threads.
+ *
+ * <p>Shutting the view down only stops it accepting work; the shared executor is left alone.
+ */
+class LimitedExecutorService extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(LimitedExecutorService.class);
+
+    private final String name;
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final int capacity;
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    /** Tasks accepted but not yet finished, whether queued or running. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    LimitedExecutorService(String name, Executor delegate, int maxConcurrency, int queueLimit) {
+        this.name = name;
+        this.delegate = delegate;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.capacity = this.maxConcurrency + Math.max(0, queueLimit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor for " + name + " is shut down");
+        }
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Executor for " + name + " is saturated: " + capacity + " tasks outstanding");
+        }
+        queue.add(command);
+        try {
+            maybeStartWorker();
+        } catch (RejectedExecutionException e) {
+            // if a running worker already picked the task up, it was accepted after all
+            if (queue.remove(command)) {
+                taskDone();
+                throw e;
+            }
+        }
+    }
+
+    private void maybeStartWorker() {
+        while (true) {
+            final int w = workers.get();
+            if (w >= maxConcurrency) {
+                return;
+            }
+            if (workers.compareAndSet(w, w + 1)) {
+                try {
+                    delegate.execute(this::work);
+                } catch (RuntimeException e) {
+                    workers.decrementAndGet();
+                    throw e;
+                }
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            final Runnable task = queue.poll();
+            if (task == null) {
+                workers.decrementAndGet();
+                // a task may have been queued after our poll but before the decrement
+                if (queue.isEmpty() || !reclaimWorker()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) { // NOPMD
+                LOG.error("Uncaught exception in {} task", name, e);
+            } finally {
+                taskDone();
+            }
+        }
+    }
+
+    private boolean reclaimWorker() {
+        while (true) {
+            final int w = workers.get();
+            if (w >= maxConcurrency) {
+                return false;
+            }
+            if (workers.compareAndSet(w, w + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void taskDone() {
+        if (pending.decrementAndGet() == 0 && shutdown) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /** @return tasks accepted but not yet finished */
+    int getPending() {
+        return pending.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (pending.get() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        final List<Runnable> result = new ArrayList<>();
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            result.add(task);
+            taskDone();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && pending.get() == 0;
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "LimitedExecutorService[" + name + ", pending=" + pending.get() + "/" + capacity + "]";
+    }
+}
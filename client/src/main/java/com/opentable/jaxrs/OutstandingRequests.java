@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Counts requests that have been sent but not yet answered, for features that keep score of them.
+ *
+ * <p>Most requests report back, through a response filter or {@link TransportFailures}, but one that fails
+ * before it reaches the engine never does.  So requests are also counted in a ring of {@value #BUCKETS}
+ * buckets by the time they started, and a bucket whose requests are all older than the expiry is written
+ * off whole, handing the number it still held to the {@code onExpired} callback.  Starting or finishing a
+ * request is a couple of atomic operations, and writing off expired requests looks at every bucket at most
+ * once per bucket interval, however many requests there are.
+ */
+public final class OutstandingRequests {
+    private static final int BUCKETS = 16;
+    // a bucket is a long: start interval in the high half, then a closed flag and the count of its open tickets
+    private static final long CLOSED = 1L << 31;
+    private static final long COUNT = CLOSED - 1;
+    private static final AtomicIntegerFieldUpdater<Ticket> FINISHED = AtomicIntegerFieldUpdater.newUpdater(Ticket.class, "finished");
+
+    private final long baseNanos = System.nanoTime();
+    private final long bucketNanos;
+    private final IntConsumer onExpired;
+    private final AtomicLong[] buckets = new AtomicLong[BUCKETS];
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger lastReap = new AtomicInteger();
+
+    /**
+     * @param expiry requests outstanding for longer are given up on
+     * @param onExpired called with the number of requests given up on at once
+     */
+    public OutstandingRequests(Duration expiry, IntConsumer onExpired) {
+        Preconditions.checkArgument(!expiry.isNegative() && !expiry.isZero(), "expiry must be positive");
+        this.bucketNanos = Math.max(1, expiry.toNanos() / (BUCKETS - 2));
+        this.onExpired = onExpired;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new AtomicLong(CLOSED);
+        }
+    }
+
+    public Ticket start(long nowNanos) {
+        reap(nowNanos);
+        int interval = interval(nowNanos);
+        while (true) {
+            final AtomicLong bucket = buckets[interval & (BUCKETS - 1)];
+            final long state = bucket.get();
+            final int started = started(state);
+            if (started == interval && (state & CLOSED) == 0) {
+                if (bucket.compareAndSet(state, state + 1)) {
+                    break;
+                }
+            } else if (interval - started >= 0) {
+                // the bucket last held requests a whole ring ago, or has been written off; reuse it
+                if (bucket.compareAndSet(state, (long) interval << 32)) {
+                    expire(state);
+                }
+            } else {
+                // our clock reading is a whole ring old
+                interval = interval(System.nanoTime());
+            }
+        }
+        outstanding.incrementAndGet();
+        return new Ticket(interval, nowNanos);
+    }
+
+    /** @return the number of requests outstanding, after giving up on any that expired */
+    public int get(long nowNanos) {
+        reap(nowNanos);
+        return Math.max(0, outstanding.get());
+    }
+
+    /** At most once per bucket interval, close the buckets whose requests have all expired. */
+    private void reap(long nowNanos) {
+        final int interval = interval(nowNanos);
+        final int last = lastReap.get();
+        if (interval == last || !lastReap.compareAndSet(last, interval)) {
+            return;
+        }
+        for (final AtomicLong bucket : buckets) {
+            while (true) {
+                final long state = bucket.get();
+                if ((state & CLOSED) != 0 || interval - started(state) < BUCKETS - 1) {
+                    break;
+                }
+                if (bucket.compareAndSet(state, state & ~COUNT | CLOSED)) {
+                    expire(state);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void expire(long state) {
+        final int count = (state & CLOSED) == 0 ? (int) (state & COUNT) : 0;
+        if (count > 0) {
+            outstanding.addAndGet(-count);
+            onExpired.accept(count);
+        }
+    }
+
+    private int interval(long nowNanos) {
+        return (int) ((nowNanos - baseNanos) / bucketNanos);
+    }
+
+    private static int started(long state) {
+        return (int) (state >>> 32);
+    }
+
+    /** One outstanding request. */
+    public final class Ticket {
+        private final int interval;
+        private final long startNanos;
+        private volatile int finished;
+
+        Ticket(int interval, long startNanos) {
+            this.interval = interval;
+            this.startNanos = startNanos;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /** @return true the first time this is called, false if already finished or given up on */
+        public boolean finish() {
+            if (!FINISHED.compareAndSet(this, 0, 1)) {
+                return false;
+            }
+            final AtomicLong bucket = buckets[interval & (BUCKETS - 1)];
+            while (true) {
+                final long state = bucket.get();
+                if (started(state) != interval || (state & CLOSED) != 0) {
+                    return false;
+                }
+                if (bucket.compareAndSet(state, state - 1)) {
+                    outstanding.decrementAndGet();
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.ws.rs.client.ClientRequestContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells filters about requests that failed without a response: refused or timed out connections, resets,
+ * cancelled invocations.  Response filters never see those, so a filter that keeps score of the requests it
+ * let through registers here too.  Engines built by {@link JaxRsClientFactory} report every such failure;
+ * a listener may still be called after the response filters ran, for instance when reading the entity fails,
+ * so it should ignore requests it already accounted for.
+ */
+public final class TransportFailures {
+    private static final Logger LOG = LoggerFactory.getLogger(TransportFailures.class);
+    private static final String LISTENERS_PROPERTY = TransportFailures.class.getName() + ".listeners";
+
+    private TransportFailures() {
+        /* utility class */
+    }
+
+    /** Call {@code listener} if {@code request} fails without a response. */
+    @SuppressWarnings("unchecked")
+    public static void onFailure(ClientRequestContext request, Consumer<Throwable> listener) {
+        List<Consumer<Throwable>> listeners = (List<Consumer<Throwable>>) request.getProperty(LISTENERS_PROPERTY);
+        if (listeners == null) {
+            listeners = new ArrayList<>(2);
+            request.setProperty(LISTENERS_PROPERTY, listeners);
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * For engines: report that the request with these properties failed.
+     * @param properties the request's properties, as its filters see them
+     */
+    @SuppressWarnings("unchecked")
+    public static void failed(Function<String, Object> properties, Throwable failure) {
+        final Object listeners = properties.apply(LISTENERS_PROPERTY);
+        if (!(listeners instanceof List)) {
+            return;
+        }
+        for (final Consumer<Throwable> listener : (List<Consumer<Throwable>>) listeners) {
+            try {
+                listener.accept(failure);
+            } catch (RuntimeException e) {
+                LOG.warn("Transport failure listener {} failed", listener, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Async invocation executor for {@link JaxRsClientConfig#isVirtualThreads()}: one virtual thread
+ * per task, with a semaphore capping how many may be outstanding at once.  A task that finds
+ * no permit is rejected straight away rather than queued.
+ *
+ * <p>The project still builds for Java versions without virtual threads, so they are looked up
+ * reflectively; see {@link #create}.
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    private VirtualThreadExecutor(String name, ExecutorService delegate, int maxConcurrency) {
+        this.name = name;
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * @return a virtual thread executor allowing {@code maxConcurrency} outstanding tasks,
+     * or empty (after logging a warning) if this JVM has no virtual threads
+     */
+    static Optional<ExecutorService> create(String clientName, int maxConcurrency) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, clientName + "-vt-", 0L);
+            final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            final ExecutorService delegate = (ExecutorService) perTask.invoke(null, factory);
+            return Optional.of(new VirtualThreadExecutor(clientName, delegate, Math.max(1, maxConcurrency)));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            LOG.warn("Virtual threads requested for client '{}' but this JVM ({}) has none; using platform threads",
+                    clientName, System.getProperty("java.version"));
+        } catch (InvocationTargetException e) {
+            // e.g. UnsupportedOperationException when they are a preview feature that is not enabled
+            LOG.warn("Virtual threads requested for client '{}' but unavailable; using platform threads", clientName, e.getCause());
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Client " + name + " has " + maxConcurrency + " async invocations outstanding");
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** @return tasks currently outstanding */
+    int getOutstanding() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor[" + name + ", outstanding=" + getOutstanding() + "/" + maxConcurrency + "]";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import javax.ws.rs.core.HttpHeaders;
+
+/**
+ * The parts of RFC 7234 a client cache shared by its callers needs: {@code Cache-Control} directives,
+ * freshness lifetime and what may be shared.
+ */
+final class CacheDirectives {
+    static final String AGE = "Age";
+    static final String EXPIRES = "Expires";
+    static final String ETAG = "ETag";
+    static final String VARY = "Vary";
+
+    private final Map<String, String> directives;
+
+    private CacheDirectives(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /** @param values every value of the {@code Cache-Control} header, possibly null */
+    static CacheDirectives parse(List<String> values) {
+        final Map<String, String> directives = new HashMap<>();
+        if (values != null) {
+            for (final String value : values) {
+                for (final String part : value.split(",")) {
+                    final String directive = part.trim();
+                    if (directive.isEmpty()) {
+                        continue;
+                    }
+                    final int eq = directive.indexOf('=');
+                    if (eq < 0) {
+                        directives.put(directive.toLowerCase(Locale.ROOT), "");
+                    } else {
+                        directives.put(directive.substring(0, eq).trim().toLowerCase(Locale.ROOT),
+                                directive.substring(eq + 1).trim().replace("\"", ""));
+                    }
+                }
+            }
+        }
+        return new CacheDirectives(directives);
+    }
+
+    boolean has(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    OptionalLong seconds(String directive) {
+        final String value = directives.get(directive);
+        if (value == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            return OptionalLong.of(0);
+        }
+    }
+
+    /**
+     * How long after it was received a response stays fresh: {@code max-age} less {@code Age},
+     * else {@code Expires} less {@code Date}, else zero (always revalidate).
+     */
+    static long freshnessMillis(Map<String, List<String>> headers, CacheDirectives cacheControl) {
+        if (cacheControl.has("no-cache")) {
+            return 0;
+        }
+        final long age = first(headers, AGE).map(CacheDirectives::parseSeconds).orElse(0L);
+        final OptionalLong maxAge = cacheControl.seconds("max-age");
+        if (maxAge.isPresent()) {
+            return Math.max(0, maxAge.getAsLong() - age) * 1000;
+        }
+        final Long expires = first(headers, EXPIRES).map(CacheDirectives::parseDate).orElse(null);
+        if (expires != null) {
+            final long date = first(headers, HttpHeaders.DATE).map(CacheDirectives::parseDate).orElse(System.currentTimeMillis());
+            return Math.max(0, expires - date);
+        }
+        return 0;
+    }
+
+    /**
+     * Whether a response may be stored for, and served to, every caller of the client: it is not {@code private},
+     * and if the request carried credentials the response says it may be shared anyway (RFC 7234 section 3.2).
+     */
+    static boolean isShareable(CacheDirectives cacheControl, boolean credentials) {
+        if (cacheControl.has("private")) {
+            return false;
+        }
+        return !credentials || cacheControl.has("public") || cacheControl.has("s-maxage") || cacheControl.has("must-revalidate");
+    }
+
+    static Optional<String> first(Map<String, List<String>> headers, String name) {
+        for (final Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty()) {
+                return Optional.of(e.getValue().get(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /** @return epoch millis, or 0 (already expired) for a malformed date as RFC 7234 requires */
+    private static Long parseDate(String value) {
+        try {
+            final Instant instant = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return instant.toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+/**
+ * A fully buffered response as stored by {@link ResponseCache}, plus what is needed to decide
+ * whether it may be served: when it stops being fresh, its validators, and the request header
+ * values named by its {@code Vary} header.
+ */
+final class CachedResponse {
+    private static final int FORMAT_VERSION = 1;
+    private static final Set<String> HOP_BY_HOP = ImmutableSet.of("connection", "keep-alive", "transfer-encoding");
+
+    private final String key;
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final long receivedMillis;
+    private final long freshUntilMillis;
+    private final Map<String, String> varyValues;
+
+    CachedResponse(String key, int status, Map<String, List<String>> headers, byte[] body,
+            long receivedMillis, long freshUntilMillis, Map<String, String> varyValues) {
+        this.key = key;
+        this.status = status;
+        this.headers = caseInsensitiveCopy(headers);
+        this.body = body;
+        this.receivedMillis = receivedMillis;
+        this.freshUntilMillis = freshUntilMillis;
+        this.varyValues = Collections.unmodifiableMap(new TreeMap<>(varyValues));
+    }
+
+    private static Map<String, List<String>> caseInsensitiveCopy(Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> copy.put(name, Collections.unmodifiableList(new ArrayList<>(values))));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    Map<String, String> getVaryValues() {
+        return varyValues;
+    }
+
+    boolean isFresh(long nowMillis) {
+        return nowMillis < freshUntilMillis;
+    }
+
+    String getETag() {
+        return CacheDirectives.first(headers, CacheDirectives.ETAG).orElse(null);
+    }
+
+    String getLastModified() {
+        return CacheDirectives.first(headers, HttpHeaders.LAST_MODIFIED).orElse(null);
+    }
+
+    /** Approximate heap footprint, used to bound the cache in bytes. */
+    int weight() {
+        int weight = 64 + key.length() * 2 + body.length;
+        for (final Map.Entry<String, List<String>> e : headers.entrySet()) {
+            weight += 32 + e.getKey().length() * 2;
+            for (final String v : e.getValue()) {
+                weight += 16 + v.length() * 2;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * The entry after a {@code 304 Not Modified}: the stored headers updated with those of the 304,
+     * fresh again from now.
+     */
+    CachedResponse revalidated(Map<String, List<String>> notModifiedHeaders, long freshnessMillis, long nowMillis) {
+        final Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(headers);
+        notModifiedHeaders.forEach((name, values) -> {
+            if (!ResponseCacheFeature.isEntityHeader(name)) {
+                merged.put(name, values);
+            }
+        });
+        return new CachedResponse(key, status, merged, body, nowMillis, nowMillis + freshnessMillis, varyValues);
+    }
+
+    /** @return the stored response as seen by a cache hit, with an {@code Age} header */
+    Response toResponse(long nowMillis) {
+        return builder()
+                .header(CacheDirectives.AGE, Math.max(0, (nowMillis - receivedMillis) / 1000))
+                .entity(body)
+                .build();
+    }
+
+    /** @return the stored response as it was received */
+    Response toResponse() {
+        return builder().entity(body).build();
+    }
+
+    private Response.ResponseBuilder builder() {
+        final Response.ResponseBuilder builder = Response.status(status);
+        headers.forEach((name, values) -> {
+            if (!CacheDirectives.AGE.equalsIgnoreCase(name) && !HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(v -> builder.header(name, v));
+            }
+        });
+        return builder;
+    }
+
+    /**
+     * Read a response's entity if it fits in {@code limit} bytes, leaving the response readable either way.
+     * @return the entity, or null if it was too large
+     */
+    static byte[] buffer(ClientResponseContext response, long limit) throws IOException {
+        if (!response.hasEntity()) {
+            return new byte[0];
+        }
+        if (response.getLength() > limit) {
+            return null;
+        }
+        final InputStream in = response.getEntityStream();
+        final byte[] prefix = ByteStreams.toByteArray(ByteStreams.limit(in, limit + 1));
+        if (prefix.length > limit) {
+            response.setEntityStream(new SequenceInputStream(new ByteArrayInputStream(prefix), in));
+            return null;
+        }
+        // reading to the end has released the connection; closing would close the whole response on some engines
+        response.setEntityStream(new ByteArrayInputStream(prefix));
+        return prefix;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeInt(status);
+        out.writeLong(receivedMillis);
+        out.writeLong(freshUntilMillis);
+        out.writeInt(headers.size());
+        for (final Map.Entry<String, List<String>> e : headers.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().size());
+            for (final String v : e.getValue()) {
+                out.writeUTF(v);
+            }
+        }
+        out.writeInt(varyValues.size());
+        for (final Map.Entry<String, String> e : varyValues.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    /** @return the entry, or null if it was written in a format this version does not read */
+    static CachedResponse readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        final String key = in.readUTF();
+        final int status = in.readInt();
+        final long received = in.readLong();
+        final long freshUntil = in.readLong();
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--) {
+            final String name = in.readUTF();
+            final List<String> values = new ArrayList<>();
+            for (int j = in.readInt(); j > 0; j--) {
+                values.add(in.readUTF());
+            }
+            headers.put(name, values);
+        }
+        final Map<String, String> vary = new TreeMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            vary.put(in.readUTF(), in.readUTF());
+        }
+        final byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CachedResponse(key, status, headers, body, received, freshUntil, vary);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedResponse[" + key + ", status=" + status + ", " + body.length + " bytes, fresh until " + freshUntilMillis + "]";
+    }
+}
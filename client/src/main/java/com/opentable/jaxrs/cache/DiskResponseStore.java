@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.hash.Hashing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second tier of {@link ResponseCache}: entries evicted from memory for size are written to one file
+ * each under a directory, which is itself kept under a byte budget in least recently used order.
+ * Files left by a previous run are picked up again.  I/O failures are logged and treated as misses.
+ */
+final class DiskResponseStore {
+    private static final Logger LOG = LoggerFactory.getLogger(DiskResponseStore.class);
+    private static final String SUFFIX = ".response";
+
+    private final Path directory;
+    private final long maximumBytes;
+
+    /** File name to size, in access order. */
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long totalBytes;
+
+    DiskResponseStore(Path directory, long maximumBytes) {
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        try {
+            Files.createDirectories(directory);
+            final List<Path> existing = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                files.forEach(existing::add);
+            }
+            existing.sort(Comparator.comparingLong(DiskResponseStore::lastModified));
+            synchronized (this) {
+                for (final Path file : existing) {
+                    final long size = Files.size(file);
+                    index.put(file.getFileName().toString(), size);
+                    totalBytes += size;
+                }
+                trim();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to use " + directory + " for cached responses", e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    CachedResponse get(String key) {
+        final String name = fileName(key);
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return null;
+            }
+        }
+        try (InputStream in = Files.newInputStream(directory.resolve(name))) {
+            final CachedResponse entry = CachedResponse.readFrom(new DataInputStream(new BufferedInputStream(in)));
+            // a hash collision or an older format
+            return entry != null && entry.getKey().equals(key) ? entry : null;
+        } catch (IOException e) {
+            LOG.warn("Unable to read cached response for {}", key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    void put(CachedResponse entry) {
+        final String name = fileName(entry.getKey());
+        final Path file = directory.resolve(name);
+        try {
+            final Path tmp = Files.createTempFile(directory, "tmp", ".partial");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                entry.writeTo(data);
+                data.flush();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            final long size = Files.size(file);
+            synchronized (this) {
+                final Long old = index.put(name, size);
+                totalBytes += size - (old == null ? 0 : old);
+                trim();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to write cached response for {}", entry.getKey(), e);
+        }
+    }
+
+    void remove(String key) {
+        final String name = fileName(key);
+        synchronized (this) {
+            final Long size = index.remove(name);
+            if (size == null) {
+                return;
+            }
+            totalBytes -= size;
+        }
+        delete(name);
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @GuardedBy("this")
+    private void trim() {
+        final Iterator<Map.Entry<String, Long>> iter = index.entrySet().iterator();
+        while (totalBytes > maximumBytes && iter.hasNext()) {
+            final Map.Entry<String, Long> eldest = iter.next();
+            iter.remove();
+            totalBytes -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            LOG.warn("Unable to delete cached response {}", name, e);
+        }
+    }
+
+    private static String fileName(String key) {
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + SUFFIX;
+    }
+}
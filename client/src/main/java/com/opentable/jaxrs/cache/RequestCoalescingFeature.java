@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.HttpHeaders;
+
+import com.google.common.collect.ImmutableList;
+
+import com.opentable.jaxrs.TransportFailures;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * Collapses identical GET requests that are in flight at the same time on one client into a single
+ * upstream call ("single flight").  The first request goes out; requests arriving while it is
+ * outstanding wait for its response, which is buffered and handed to each of them as their own.
+ * A response nobody waited for is passed through as it is, without buffering.
+ *
+ * <p>Requests are identical when method, URI and the values of the key headers match.  The key
+ * headers default to {@link #DEFAULT_KEY_HEADERS}; include any header that changes the response,
+ * and always those that identify the caller.  Conditional request headers are always part of the key.
+ *
+ * <p>A waiting request blocks its own thread for at most {@code maxWait}, then goes upstream itself;
+ * so does every waiter if the shared response is larger than {@code maxBufferBytes} or the first request
+ * failed in the transport.  When combined with {@link ResponseCacheFeature}, a cache hit never gets here.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #COALESCED} &ndash; requests answered with another request's response</li>
+ * <li>{@value #FALLBACKS} &ndash; requests that waited for another but then had to go upstream themselves</li>
+ * </ul>
+ */
+public class RequestCoalescingFeature implements Feature {
+    public static final String COALESCED = "jaxrs.client.coalesced";
+    public static final String FALLBACKS = "jaxrs.client.coalesced.fallbacks";
+
+    public static final List<String> DEFAULT_KEY_HEADERS = ImmutableList.of(
+            HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE, HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.AUTHORIZATION, HttpHeaders.COOKIE);
+
+    /** Runs after {@link ResponseCacheFeature} on requests, and before it on responses. */
+    static final int PRIORITY = ResponseCacheFeature.PRIORITY + 100;
+
+    private static final List<String> CONDITIONAL_HEADERS = ImmutableList.of(
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH, HttpHeaders.IF_UNMODIFIED_SINCE);
+    private static final String LEADER_PROPERTY = RequestCoalescingFeature.class.getName() + ".leader";
+    private static final String FOLLOWER_PROPERTY = RequestCoalescingFeature.class.getName() + ".follower";
+
+    private final Duration maxWait;
+    private final long maxBufferBytes;
+    private final List<String> keyHeaders;
+
+    /** Waits up to 10 seconds and shares responses up to 8 MiB, keyed by {@link #DEFAULT_KEY_HEADERS}. */
+    public RequestCoalescingFeature() {
+        this(Duration.ofSeconds(10), 8 << 20, DEFAULT_KEY_HEADERS);
+    }
+
+    public RequestCoalescingFeature(Duration maxWait, long maxBufferBytes, Collection<String> keyHeaders) {
+        this.maxWait = maxWait;
+        this.maxBufferBytes = maxBufferBytes;
+        this.keyHeaders = ImmutableList.<String>builder().addAll(keyHeaders).addAll(CONDITIONAL_HEADERS).build();
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        final ClientMetricRegistry registry = ClientMetricsFeature.registry(context.getConfiguration());
+        final Map<String, String> tags = ClientMetricsFeature.tags(context.getConfiguration());
+        context.register(new RequestCoalescingFilter(maxWait, maxBufferBytes, keyHeaders,
+                registry.counter(COALESCED, tags), registry.counter(FALLBACKS, tags)));
+        return true;
+    }
+
+    /** One filter, and so one set of flights, per client. */
+    @Priority(PRIORITY)
+    static class RequestCoalescingFilter implements ClientRequestFilter, ClientResponseFilter {
+        private final long maxWaitNanos;
+        private final long maxBufferBytes;
+        private final List<String> keyHeaders;
+        private final ClientMetricRegistry.Counter coalesced;
+        private final ClientMetricRegistry.Counter fallbacks;
+        private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+        RequestCoalescingFilter(Duration maxWait, long maxBufferBytes, List<String> keyHeaders,
+                ClientMetricRegistry.Counter coalesced, ClientMetricRegistry.Counter fallbacks) {
+            this.maxWaitNanos = maxWait.toNanos();
+            this.maxBufferBytes = maxBufferBytes;
+            this.keyHeaders = keyHeaders;
+            this.coalesced = coalesced;
+            this.fallbacks = fallbacks;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            if (!HttpMethod.GET.equals(request.getMethod())) {
+                return;
+            }
+            final String key = key(request);
+            final long now = System.nanoTime();
+            final Flight mine = new Flight(key, now);
+            while (true) {
+                final Flight leader = flights.putIfAbsent(key, mine);
+                if (leader == null) {
+                    lead(request, mine);
+                    return;
+                }
+                // a leader its engine never reported back on; take over from it
+                if (now - leader.startNanos > maxWaitNanos) {
+                    if (flights.replace(key, leader, mine)) {
+                        leader.close();
+                        leader.result.complete(null);
+                        lead(request, mine);
+                        return;
+                    }
+                    continue;
+                }
+                // a leader that just landed takes no more followers, and is already out of the map
+                if (leader.join()) {
+                    follow(request, leader, now);
+                    return;
+                }
+            }
+        }
+
+        private void lead(ClientRequestContext request, Flight flight) {
+            request.setProperty(LEADER_PROPERTY, flight);
+            // no response is coming: send the followers upstream themselves
+            TransportFailures.onFailure(request, failure -> {
+                flights.remove(flight.key, flight);
+                flight.close();
+                flight.result.complete(null);
+            });
+        }
+
+        private void follow(ClientRequestContext request, Flight leader, long now) {
+            CachedResponse shared = null;
+            try {
+                shared = leader.result.get(leader.startNanos + maxWaitNanos - now, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                flights.remove(leader.key, leader);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            if (shared == null) {
+                fallbacks.increment();
+                return;
+            }
+            coalesced.increment();
+            request.setProperty(FOLLOWER_PROPERTY, Boolean.TRUE);
+            request.abortWith(shared.toResponse());
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            final Object leader = request.getProperty(LEADER_PROPERTY);
+            if (!(leader instanceof Flight) || request.getProperty(FOLLOWER_PROPERTY) != null) {
+                return;
+            }
+            final Flight flight = (Flight) leader;
+            // requests from now on start a new flight rather than see this response
+            flights.remove(flight.key, flight);
+            if (flight.close() == 0) {
+                flight.result.complete(null);
+                return;
+            }
+            CachedResponse shared = null;
+            try {
+                final byte[] body = CachedResponse.buffer(response, maxBufferBytes);
+                if (body != null) {
+                    final long now = System.currentTimeMillis();
+                    shared = new CachedResponse(flight.key, response.getStatus(), response.getHeaders(), body,
+                            now, now, Collections.emptyMap());
+                }
+            } finally {
+                flight.result.complete(shared);
+            }
+        }
+
+        private String key(ClientRequestContext request) {
+            final StringBuilder key = new StringBuilder(request.getMethod()).append(' ').append(request.getUri());
+            for (final String header : keyHeaders) {
+                final String value = request.getHeaderString(header);
+                if (value != null) {
+                    key.append('\n').append(header).append(": ").append(value);
+                }
+            }
+            return key.toString();
+        }
+    }
+
+    static final class Flight {
+        private static final int CLOSED = -1;
+
+        final String key;
+        final long startNanos;
+        final CompletableFuture<CachedResponse> result = new CompletableFuture<>();
+        private final AtomicInteger followers = new AtomicInteger();
+
+        Flight(String key, long startNanos) {
+            this.key = key;
+            this.startNanos = startNanos;
+        }
+
+        /** @return whether the caller now waits for this flight, false once its leader has landed */
+        boolean join() {
+            while (true) {
+                final int count = followers.get();
+                if (count == CLOSED) {
+                    return false;
+                }
+                if (followers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Take no more followers. @return how many joined */
+        int close() {
+            final int count = followers.getAndSet(CLOSED);
+            return count == CLOSED ? 0 : count;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.nio.file.Path;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+/**
+ * Size-bounded store behind {@link ResponseCacheFeature}.  Entries live in memory up to
+ * {@code maximumBytes}, evicted least recently used first.  With a disk tier, evicted entries are
+ * spilled to files and brought back into memory on their next use.
+ *
+ * <p>One store may back any number of clients and feature groups; entries are keyed by absolute URI.
+ */
+public class ResponseCache {
+    private final Cache<String, CachedResponse> memory;
+    private final DiskResponseStore disk;
+    private final long maximumEntryBytes;
+
+    /** A memory only cache holding up to {@code maximumBytes} of responses. */
+    public ResponseCache(long maximumBytes) {
+        this(maximumBytes, null, 0);
+    }
+
+    /**
+     * A memory cache backed by up to {@code maximumDiskBytes} of files under {@code diskDirectory},
+     * which is created if need be.
+     */
+    public ResponseCache(long maximumBytes, Path diskDirectory, long maximumDiskBytes) {
+        Preconditions.checkArgument(maximumBytes > 0, "maximumBytes must be positive");
+        this.disk = diskDirectory == null ? null : new DiskResponseStore(diskDirectory, maximumDiskBytes);
+        // Guava splits the weight between segments; one entry may not take more than a fraction of one
+        this.maximumEntryBytes = Math.max(1, maximumBytes / 16);
+        this.memory = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .<String, CachedResponse>weigher((key, entry) -> entry.weight())
+                .removalListener(notification -> {
+                    if (disk != null && notification.getCause() == RemovalCause.SIZE) {
+                        disk.put(notification.getValue());
+                    }
+                })
+                .build();
+    }
+
+    CachedResponse get(String key) {
+        CachedResponse entry = memory.getIfPresent(key);
+        if (entry == null && disk != null) {
+            entry = disk.get(key);
+            if (entry != null) {
+                disk.remove(key);
+                memory.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    void put(CachedResponse entry) {
+        memory.put(entry.getKey(), entry);
+    }
+
+    long getMaximumEntryBytes() {
+        return maximumEntryBytes;
+    }
+
+    /** Drop any response stored for {@code uri}. */
+    public void invalidate(String uri) {
+        memory.invalidate(uri);
+        if (disk != null) {
+            disk.remove(uri);
+        }
+    }
+
+    /** @return number of entries held in memory */
+    public long getMemoryEntries() {
+        return memory.size();
+    }
+
+    /** @return bytes of spilled entries on disk, or zero without a disk tier */
+    public long getDiskBytes() {
+        return disk == null ? 0 : disk.getTotalBytes();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * HTTP cache for GET responses, honouring {@code Cache-Control}, {@code Expires}, {@code Vary}
+ * and the {@code ETag} / {@code Last-Modified} validators.  Bind it to the clients that should use it:
+ * <pre>
+ * JaxRsFeatureBinding.bind(StandardFeatureGroup.PLATFORM_INTERNAL, new ResponseCacheFeature(new ResponseCache(64 &lt;&lt; 20)))
+ * </pre>
+ *
+ * <p>A fresh entry is served without touching the network.  A stale one is revalidated with
+ * {@code If-None-Match} / {@code If-Modified-Since}, and a {@code 304} answer is replaced by the stored
+ * response.  Responses marked {@code no-store}, carrying {@code Vary: *}, or larger than the store
+ * allows for one entry are passed through untouched.  A successful non-GET request invalidates what is
+ * stored for its URI.
+ *
+ * <p>Entries are keyed by URI and served to every caller of the clients the cache is bound to, so it stores
+ * only what a shared cache may: never responses marked {@code private}, and for requests carrying
+ * {@code Authorization} or {@code Cookie} only responses marked {@code public} (or with {@code s-maxage} or
+ * {@code must-revalidate}).  Such requests are likewise only answered from entries of that kind.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #HITS} &ndash; requests answered from the cache without a round trip</li>
+ * <li>{@value #REVALIDATIONS} &ndash; stale entries confirmed by a {@code 304} and served</li>
+ * <li>{@value #MISSES} &ndash; GET requests that went to the server for a full response</li>
+ * </ul>
+ */
+public class ResponseCacheFeature implements Feature {
+    public static final String HITS = "jaxrs.client.cache.hits";
+    public static final String REVALIDATIONS = "jaxrs.client.cache.revalidations";
+    public static final String MISSES = "jaxrs.client.cache.misses";
+
+    /** Request filters that add or change headers run first, so {@code Vary} sees the final request. */
+    static final int PRIORITY = Priorities.USER + 1000;
+
+    private static final String ENTRY_PROPERTY = ResponseCacheFeature.class.getName() + ".entry";
+    private static final String HIT_PROPERTY = ResponseCacheFeature.class.getName() + ".hit";
+    private static final Set<String> ENTITY_HEADERS = ImmutableSet.of(
+            "content-length", "content-encoding", "content-type", "transfer-encoding", "connection", "keep-alive");
+    private static final Set<String> UNSAFE_METHODS = ImmutableSet.of(
+            HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE, "PATCH");
+
+    private final ResponseCache cache;
+
+    public ResponseCacheFeature(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        final ClientMetricRegistry registry = ClientMetricsFeature.registry(context.getConfiguration());
+        final Map<String, String> tags = ClientMetricsFeature.tags(context.getConfiguration());
+        context.register(new ResponseCacheFilter(cache,
+                registry.counter(HITS, tags), registry.counter(REVALIDATIONS, tags), registry.counter(MISSES, tags)));
+        return true;
+    }
+
+    static boolean isEntityHeader(String name) {
+        return ENTITY_HEADERS.contains(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Priority(PRIORITY)
+    static class ResponseCacheFilter implements ClientRequestFilter, ClientResponseFilter {
+        private final ResponseCache cache;
+        private final ClientMetricRegistry.Counter hits;
+        private final ClientMetricRegistry.Counter revalidations;
+        private final ClientMetricRegistry.Counter misses;
+
+        ResponseCacheFilter(ResponseCache cache, ClientMetricRegistry.Counter hits,
+                ClientMetricRegistry.Counter revalidations, ClientMetricRegistry.Counter misses) {
+            this.cache = cache;
+            this.hits = hits;
+            this.revalidations = revalidations;
+            this.misses = misses;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            if (!HttpMethod.GET.equals(request.getMethod())) {
+                return;
+            }
+            final CacheDirectives requestCacheControl = CacheDirectives.parse(request.getStringHeaders().get(HttpHeaders.CACHE_CONTROL));
+            if (requestCacheControl.has("no-store")) {
+                return;
+            }
+            final CachedResponse entry = cache.get(request.getUri().toString());
+            if (entry == null || !entry.getVaryValues().equals(varyValues(request, entry.getHeaders()))
+                    || !CacheDirectives.isShareable(
+                            CacheDirectives.parse(entry.getHeaders().get(HttpHeaders.CACHE_CONTROL)), hasCredentials(request))) {
+                misses.increment();
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+            final boolean mustRevalidate = requestCacheControl.has("no-cache")
+                    || requestCacheControl.seconds("max-age").orElse(Long.MAX_VALUE) == 0;
+            if (entry.isFresh(now) && !mustRevalidate) {
+                hits.increment();
+                request.setProperty(HIT_PROPERTY, Boolean.TRUE);
+                request.abortWith(entry.toResponse(now));
+                return;
+            }
+
+            // leave conditional requests made by the caller alone
+            final Map<String, List<String>> headers = request.getStringHeaders();
+            if (headers.containsKey(HttpHeaders.IF_NONE_MATCH) || headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE)) {
+                misses.increment();
+                return;
+            }
+            if (entry.getETag() == null && entry.getLastModified() == null) {
+                misses.increment();
+                return;
+            }
+            if (entry.getETag() != null) {
+                request.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, entry.getETag());
+            }
+            if (entry.getLastModified() != null) {
+                request.getHeaders().putSingle(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+            }
+            request.setProperty(ENTRY_PROPERTY, entry);
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            if (request.getProperty(HIT_PROPERTY) != null) {
+                return;
+            }
+            final String key = request.getUri().toString();
+            final String method = request.getMethod();
+            if (UNSAFE_METHODS.contains(method)) {
+                if (response.getStatus() < 400) {
+                    cache.invalidate(key);
+                }
+                return;
+            }
+            if (!HttpMethod.GET.equals(method)) {
+                return;
+            }
+
+            final Object revalidating = request.getProperty(ENTRY_PROPERTY);
+            final long now = System.currentTimeMillis();
+            if (revalidating instanceof CachedResponse && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                final CacheDirectives cacheControl = CacheDirectives.parse(response.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+                final CachedResponse stale = (CachedResponse) revalidating;
+                final CachedResponse entry = stale.revalidated(response.getHeaders(),
+                        CacheDirectives.freshnessMillis(response.getHeaders(), cacheControl), now);
+                if (cacheControl.has("no-store") || !CacheDirectives.isShareable(
+                        CacheDirectives.parse(entry.getHeaders().get(HttpHeaders.CACHE_CONTROL)), hasCredentials(request))) {
+                    cache.invalidate(key);
+                } else {
+                    cache.put(entry);
+                }
+                revalidations.increment();
+                response.setStatus(entry.getStatus());
+                response.getHeaders().clear();
+                entry.getHeaders().forEach((name, values) -> response.getHeaders().addAll(name, values));
+                response.setEntityStream(new ByteArrayInputStream(entry.getBody()));
+                return;
+            }
+
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                return;
+            }
+            final CacheDirectives cacheControl = CacheDirectives.parse(response.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+            final List<String> vary = response.getHeaders().get(CacheDirectives.VARY);
+            if (cacheControl.has("no-store") || cacheControl.has("private")
+                    || (vary != null && vary.stream().anyMatch(v -> v.contains("*")))) {
+                cache.invalidate(key);
+                return;
+            }
+            // what one caller's credentials fetched stays theirs, and leaves other callers' entry alone
+            if (!CacheDirectives.isShareable(cacheControl, hasCredentials(request))) {
+                return;
+            }
+            final long freshness = CacheDirectives.freshnessMillis(response.getHeaders(), cacheControl);
+            final boolean validator = response.getHeaders().containsKey(CacheDirectives.ETAG)
+                    || response.getHeaders().containsKey(HttpHeaders.LAST_MODIFIED);
+            if (freshness == 0 && !validator) {
+                return;
+            }
+            final byte[] body = CachedResponse.buffer(response, cache.getMaximumEntryBytes());
+            if (body != null) {
+                cache.put(new CachedResponse(key, response.getStatus(), response.getHeaders(), body,
+                        now, now + freshness, varyValues(request, response.getHeaders())));
+            }
+        }
+
+        private static boolean hasCredentials(ClientRequestContext request) {
+            return request.getHeaderString(HttpHeaders.AUTHORIZATION) != null || request.getHeaderString(HttpHeaders.COOKIE) != null;
+        }
+
+        /** @return the request's values of the headers named by {@code Vary} in the response */
+        private static Map<String, String> varyValues(ClientRequestContext request, Map<String, List<String>> responseHeaders) {
+            final List<String> vary = responseHeaders.get(CacheDirectives.VARY);
+            if (vary == null || vary.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            final Map<String, String> result = new TreeMap<>();
+            for (final String name : String.join(",", vary).split(",")) {
+                final String header = name.trim().toLowerCase(Locale.ROOT);
+                if (!header.isEmpty()) {
+                    result.put(header, String.valueOf(request.getHeaderString(header)));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.limiter;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown, before anything is sent, when a client already has as many requests in flight
+ * as its adaptive concurrency limit allows.  The request may be retried later or elsewhere.
+ */
+public class ConcurrencyLimitExceededException extends ProcessingException {
+    private static final long serialVersionUID = 1L;
+
+    private final String clientName;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String clientName, int limit) {
+        super("Client '" + clientName + "' is at its concurrency limit of " + limit);
+        this.clientName = clientName;
+        this.limit = limit;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    /** @return the limit in force when the request was rejected */
+    public int getLimit() {
+        return limit;
+    }
+}
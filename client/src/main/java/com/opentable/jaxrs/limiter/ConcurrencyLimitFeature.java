@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.limiter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Priority;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.Response;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.OutstandingRequests;
+import com.opentable.jaxrs.TransportFailures;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+
+/**
+ * Caps the requests a client has in flight at a {@link GradientLimit} learned from response times.
+ * Registered by {@link com.opentable.jaxrs.JaxRsClientFactory} when
+ * {@link com.opentable.jaxrs.JaxRsClientConfig#isAdaptiveConcurrencyLimit()} is on.
+ *
+ * <p>A request over the limit fails in the request filter with a {@link ConcurrencyLimitExceededException}
+ * and never reaches the wire.  Responses with status 429 or 503 count as overload.  A request that fails
+ * in the transport gives its permit back when the engine reports it to {@link TransportFailures}; a request
+ * that never reports back loses its permit once outstanding for longer than the permit expiry, which the
+ * factory sets to the client's connect plus socket timeout.  Neither teaches the limit anything: a refused
+ * connection says nothing about the latency of the service behind it.  Nor do responses that never came from
+ * the service, such as cache hits and coalesced responses: their permit is given back unsampled, since a round
+ * trip of microseconds would become the no-load RTT and hold the limit down for every real call.
+ *
+ * <p>Instruments, tagged like those of {@link com.opentable.jaxrs.metrics.ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #LIMIT} &ndash; gauge of the current limit</li>
+ * <li>{@value #REJECTED} &ndash; requests rejected for being over the limit</li>
+ * </ul>
+ */
+public class ConcurrencyLimitFeature implements Feature {
+    public static final String LIMIT = "jaxrs.client.concurrency-limit";
+    public static final String REJECTED = "jaxrs.client.concurrency-limit.rejected";
+
+    /** Runs before {@link com.opentable.jaxrs.metrics.ClientMetricsFeature}, so rejected requests are not counted as sent. */
+    static final int PRIORITY = 50;
+    /** After every other request filter, so only requests that go to the engine are marked as sent. */
+    static final int SENT_PRIORITY = Integer.MAX_VALUE;
+    static final Duration PERMIT_EXPIRY = Duration.ofMinutes(1);
+
+    private static final String PERMIT_PROPERTY = ConcurrencyLimitFeature.class.getName() + ".permit";
+    private static final String SENT_PROPERTY = ConcurrencyLimitFeature.class.getName() + ".sent";
+
+    private final ConcurrencyLimitFilter filter;
+
+    public ConcurrencyLimitFeature(ClientMetricRegistry registry, String clientName, Map<String, String> tags, GradientLimit limit) {
+        this(registry, clientName, tags, limit, PERMIT_EXPIRY);
+    }
+
+    /** @param permitExpiry how long to wait for a request to report back before giving its permit back */
+    public ConcurrencyLimitFeature(ClientMetricRegistry registry, String clientName, Map<String, String> tags, GradientLimit limit,
+            Duration permitExpiry) {
+        this.filter = new ConcurrencyLimitFilter(clientName, limit, permitExpiry, registry.counter(REJECTED, tags));
+        registry.gauge(LIMIT, tags, limit::getLimit);
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(filter);
+        context.register(new SentFilter());
+        return true;
+    }
+
+    @Priority(PRIORITY)
+    static class ConcurrencyLimitFilter implements ClientRequestFilter, ClientResponseFilter {
+        private final String clientName;
+        private final GradientLimit limit;
+        private final ClientMetricRegistry.Counter rejected;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final OutstandingRequests permits;
+
+        ConcurrencyLimitFilter(String clientName, GradientLimit limit, Duration expiry, ClientMetricRegistry.Counter rejected) {
+            this.clientName = clientName;
+            this.limit = limit;
+            this.rejected = rejected;
+            this.permits = new OutstandingRequests(expiry, expired -> inFlight.addAndGet(-expired));
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            if (ConnectionWarmUp.isWarmUp(request)) {
+                return;
+            }
+            final long now = System.nanoTime();
+            final int current = limit.getLimit();
+            if (!tryAcquire(current)) {
+                // give back the permits of requests that will never report back, then try again
+                permits.get(now);
+                if (!tryAcquire(current)) {
+                    rejected.increment();
+                    throw new ConcurrencyLimitExceededException(clientName, current);
+                }
+            }
+            final Permit permit = new Permit(permits.start(now), inFlight.get());
+            request.setProperty(PERMIT_PROPERTY, permit);
+            TransportFailures.onFailure(request, failure -> release(permit));
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            final Object permit = request.getProperty(PERMIT_PROPERTY);
+            if (!(permit instanceof Permit)) {
+                return;
+            }
+            final Permit p = (Permit) permit;
+            // a later request filter answered it, say from a cache
+            if (request.getProperty(SENT_PROPERTY) == null) {
+                release(p);
+                return;
+            }
+            if (release(p)) {
+                final long now = System.nanoTime();
+                final int status = response.getStatus();
+                final boolean overload = status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+                        || status == Response.Status.TOO_MANY_REQUESTS.getStatusCode();
+                limit.onSample(now, now - p.ticket.getStartNanos(), p.inFlight, overload);
+            }
+        }
+
+        private boolean tryAcquire(int max) {
+            while (true) {
+                final int n = inFlight.get();
+                if (n >= max) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean release(Permit permit) {
+            if (permit.ticket.finish()) {
+                inFlight.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        int getInFlight() {
+            return inFlight.get();
+        }
+    }
+
+    /** Marks requests no request filter aborted; those that were are answered without the service. */
+    @Priority(SENT_PRIORITY)
+    static class SentFilter implements ClientRequestFilter {
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            request.setProperty(SENT_PROPERTY, Boolean.TRUE);
+        }
+    }
+
+    static final class Permit {
+        final OutstandingRequests.Ticket ticket;
+        final int inFlight;
+
+        Permit(OutstandingRequests.Ticket ticket, int inFlight) {
+            this.ticket = ticket;
+            this.inFlight = inFlight;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Concurrency limit that follows the downstream's round trip time.
+ *
+ * <p>The no-load RTT is the minimum observed over a rolling window.  On every sample the
+ * limit moves towards {@code limit * gradient + sqrt(limit)}, where the gradient is
+ * {@code tolerance * minRtt / rtt} capped to {@code [0.5, 1]}: while latency stays within the
+ * tolerance the limit grows by about its square root, and as queueing inflates latency the
+ * limit shrinks in proportion.  Overload responses (e.g. 503) cut the limit multiplicatively.
+ * The limit only grows while the client actually uses at least half of it.
+ */
+public final class GradientLimit {
+    private static final double TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+    private static final long RTT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile int limit;
+
+    @GuardedBy("this")
+    private double estimate;
+    @GuardedBy("this")
+    private long windowStart;
+    @GuardedBy("this")
+    private long windowMinRtt = Long.MAX_VALUE;
+    @GuardedBy("this")
+    private long previousWindowMinRtt = Long.MAX_VALUE;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        Preconditions.checkArgument(minLimit >= 1 && minLimit <= maxLimit, "bad limits [%s, %s]", minLimit, maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimate = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimate;
+        this.windowStart = System.nanoTime();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param nowNanos {@link System#nanoTime()} when the response arrived
+     * @param rttNanos time from sending the request to the response
+     * @param inFlight requests in flight when this one was sent, itself included
+     * @param overload whether the downstream signalled overload
+     */
+    public synchronized void onSample(long nowNanos, long rttNanos, int inFlight, boolean overload) {
+        if (overload) {
+            estimate = Math.max(minLimit, estimate * BACKOFF);
+            limit = (int) estimate;
+            return;
+        }
+
+        if (nowNanos - windowStart > RTT_WINDOW_NANOS) {
+            previousWindowMinRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+            windowStart = nowNanos;
+        }
+        final long rtt = Math.max(1, rttNanos);
+        windowMinRtt = Math.min(windowMinRtt, rtt);
+        final long minRtt = Math.min(windowMinRtt, previousWindowMinRtt);
+
+        final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / rtt));
+        // an idle client learns nothing about how much more it could send
+        if (gradient >= 1.0 && inFlight < estimate / 2) {
+            return;
+        }
+        final double target = estimate * gradient + Math.sqrt(estimate);
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate * (1 - SMOOTHING) + target * SMOOTHING));
+        limit = (int) estimate;
+    }
+
+    @Override
+    public String toString() {
+        return "GradientLimit[" + limit + " in [" + minLimit + ", " + maxLimit + "]]";
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Minimal metrics SPI used by the built-in client features.
+ *
+ * <p>Implementations adapt this onto whatever backend the application uses.  Instruments are
+ * identified by name plus tags; asking twice for the same identity must return the same instrument.
+ * {@link InMemoryClientMetricRegistry} is the default and is also convenient for tests.
+ */
+public interface ClientMetricRegistry {
+    /** Discards everything. */
+    ClientMetricRegistry NOOP = new ClientMetricRegistry() {
+        @Override
+        public Counter counter(String name, Map<String, String> tags) {
+            return delta -> { };
+        }
+
+        @Override
+        public Histogram histogram(String name, Map<String, String> tags) {
+            return value -> { };
+        }
+
+        @Override
+        public void gauge(String name, Map<String, String> tags, LongSupplier value) {
+            /* discard */
+        }
+    };
+
+    Counter counter(String name, Map<String, String> tags);
+
+    Histogram histogram(String name, Map<String, String> tags);
+
+    /**
+     * Register a gauge.  The supplier is polled whenever the backend reports, so it
+     * must be cheap and thread safe.  Registering the same identity again replaces the gauge.
+     */
+    void gauge(String name, Map<String, String> tags, LongSupplier value);
+
+    interface Counter {
+        void increment(long delta);
+
+        default void increment() {
+            increment(1);
+        }
+    }
+
+    interface Histogram {
+        void record(long value);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Priority;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.JaxRsFeatureGroup;
+import com.opentable.jaxrs.OutstandingRequests;
+import com.opentable.jaxrs.TransportFailures;
+
+/**
+ * Records per-client request metrics.  Registered by {@link com.opentable.jaxrs.JaxRsClientFactory}
+ * on every client it builds unless {@link com.opentable.jaxrs.JaxRsClientConfig#isMetricsEnabled()} is off.
+ *
+ * <p>Every instrument is tagged with {@code client} (the client name) and {@code groups}
+ * (the feature groups the client was built with):
+ * <ul>
+ * <li>{@value #REQUESTS} &ndash; requests sent</li>
+ * <li>{@value #RESPONSES} &ndash; responses received, additionally tagged {@code status=2xx} etc.</li>
+ * <li>{@value #LATENCY} &ndash; microseconds from sending the request to receiving the response headers</li>
+ * <li>{@value #BYTES_SENT}, {@value #BYTES_RECEIVED} &ndash; entity bytes written and read</li>
+ * <li>{@value #IN_FLIGHT} &ndash; gauge of requests awaiting a response</li>
+ * <li>{@value #ABANDONED} &ndash; requests that never saw a response: transport failures, and requests
+ * given up on after {@link #IN_FLIGHT_EXPIRY}</li>
+ * </ul>
+ */
+public class ClientMetricsFeature implements Feature {
+    public static final String REQUESTS = "jaxrs.client.requests";
+    public static final String RESPONSES = "jaxrs.client.responses";
+    public static final String LATENCY = "jaxrs.client.latency";
+    public static final String BYTES_SENT = "jaxrs.client.bytes-sent";
+    public static final String BYTES_RECEIVED = "jaxrs.client.bytes-received";
+    public static final String IN_FLIGHT = "jaxrs.client.in-flight";
+    public static final String ABANDONED = "jaxrs.client.abandoned";
+
+    /** Runs before other request filters and after other response filters. */
+    static final int PRIORITY = 100;
+    static final Duration IN_FLIGHT_EXPIRY = Duration.ofMinutes(5);
+
+    private static final String TICKET_PROPERTY = ClientMetricsFeature.class.getName() + ".ticket";
+    private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    private final ClientMetricsFilter filter;
+
+    public ClientMetricsFeature(ClientMetricRegistry registry, String clientName, Collection<? extends JaxRsFeatureGroup> featureGroups) {
+        this(registry, tags(clientName, featureGroups));
+    }
+
+    private ClientMetricsFeature(ClientMetricRegistry registry, Map<String, String> tags) {
+        this(registry, tags, inFlight(registry, tags));
+    }
+
+    /**
+     * @param inFlight the requests in flight of every client with these tags, from {@link #inFlight}; the
+     * {@value #IN_FLIGHT} gauge can only report one
+     */
+    public ClientMetricsFeature(ClientMetricRegistry registry, Map<String, String> tags, OutstandingRequests inFlight) {
+        this.filter = new ClientMetricsFilter(registry, tags, inFlight);
+    }
+
+    /** @return a new tracker of requests in flight, reported as the {@value #IN_FLIGHT} gauge for these tags */
+    public static OutstandingRequests inFlight(ClientMetricRegistry registry, Map<String, String> tags) {
+        final ClientMetricRegistry.Counter abandoned = registry.counter(ABANDONED, tags);
+        final OutstandingRequests inFlight = new OutstandingRequests(IN_FLIGHT_EXPIRY, abandoned::increment);
+        registry.gauge(IN_FLIGHT, tags, () -> inFlight.get(System.nanoTime()));
+        return inFlight;
+    }
+
+    public static Map<String, String> tags(String clientName, Collection<? extends JaxRsFeatureGroup> featureGroups) {
+        return ImmutableMap.of(
+                "client", clientName,
+                "groups", featureGroups.stream().map(String::valueOf).sorted().collect(Collectors.joining(",")));
+    }
+
+    /**
+     * @return the registry a client built by {@link com.opentable.jaxrs.JaxRsClientFactory} records to,
+     * or {@link ClientMetricRegistry#NOOP} for other clients
+     */
+    public static ClientMetricRegistry registry(Configuration configuration) {
+        final Object registry = configuration.getProperty(JaxRsClientFactory.METRIC_REGISTRY_PROPERTY);
+        return registry instanceof ClientMetricRegistry ? (ClientMetricRegistry) registry : ClientMetricRegistry.NOOP;
+    }
+
+    /** @return the tags for a client's metrics, for features that add their own instruments */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> tags(Configuration configuration) {
+        final Object tags = configuration.getProperty(JaxRsClientFactory.METRIC_TAGS_PROPERTY);
+        return tags instanceof Map ? (Map<String, String>) tags : ImmutableMap.of();
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(filter);
+        return true;
+    }
+
+    @Priority(PRIORITY)
+    static class ClientMetricsFilter implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor {
+        private final ClientMetricRegistry.Counter requests;
+        private final ClientMetricRegistry.Counter[] responses = new ClientMetricRegistry.Counter[STATUS_CLASSES.length];
+        private final ClientMetricRegistry.Counter otherResponses;
+        private final ClientMetricRegistry.Histogram latency;
+        private final ClientMetricRegistry.Counter bytesSent;
+        private final ClientMetricRegistry.Counter bytesReceived;
+        private final ClientMetricRegistry.Counter abandoned;
+        private final OutstandingRequests inFlight;
+
+        ClientMetricsFilter(ClientMetricRegistry registry, Map<String, String> tags, OutstandingRequests inFlight) {
+            requests = registry.counter(REQUESTS, tags);
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                responses[i] = registry.counter(RESPONSES, withStatus(tags, STATUS_CLASSES[i]));
+            }
+            otherResponses = registry.counter(RESPONSES, withStatus(tags, "other"));
+            latency = registry.histogram(LATENCY, tags);
+            bytesSent = registry.counter(BYTES_SENT, tags);
+            bytesReceived = registry.counter(BYTES_RECEIVED, tags);
+            abandoned = registry.counter(ABANDONED, tags);
+            this.inFlight = inFlight;
+        }
+
+        private static Map<String, String> withStatus(Map<String, String> tags, String status) {
+            return ImmutableMap.<String, String>builder().putAll(tags).put("status", status).build();
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            if (ConnectionWarmUp.isWarmUp(request)) {
+                return;
+            }
+            requests.increment();
+            final OutstandingRequests.Ticket ticket = inFlight.start(System.nanoTime());
+            request.setProperty(TICKET_PROPERTY, ticket);
+            TransportFailures.onFailure(request, failure -> {
+                if (ticket.finish()) {
+                    abandoned.increment();
+                }
+            });
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            final Object ticket = request.getProperty(TICKET_PROPERTY);
+            // answered by a filter that runs before this one
+            if (!(ticket instanceof OutstandingRequests.Ticket)) {
+                return;
+            }
+            final OutstandingRequests.Ticket t = (OutstandingRequests.Ticket) ticket;
+            t.finish();
+            latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t.getStartNanos()));
+
+            final int statusClass = response.getStatus() / 100;
+            if (statusClass >= 1 && statusClass <= STATUS_CLASSES.length) {
+                responses[statusClass - 1].increment();
+            } else {
+                otherResponses.increment();
+            }
+
+            if (response.hasEntity()) {
+                response.setEntityStream(new CountingInputStream(response.getEntityStream(), bytesReceived));
+            }
+        }
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            context.setOutputStream(new CountingOutputStream(context.getOutputStream(), bytesSent));
+            context.proceed();
+        }
+    }
+
+    static class CountingInputStream extends FilterInputStream {
+        private final ClientMetricRegistry.Counter counter;
+
+        CountingInputStream(InputStream in, ClientMetricRegistry.Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.increment(n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    static class CountingOutputStream extends FilterOutputStream {
+        private final ClientMetricRegistry.Counter counter;
+
+        CountingOutputStream(OutputStream out, ClientMetricRegistry.Counter counter) {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counter.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counter.increment(len);
+        }
+    }
+}
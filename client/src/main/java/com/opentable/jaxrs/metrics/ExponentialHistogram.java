@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Lock-free, allocation-free histogram of non-negative longs.
+ *
+ * <p>Values are counted in log-linear buckets: each power of two is split into eight
+ * sub-buckets, so any reported percentile is within 12.5% of the true value.  The whole
+ * {@code long} range fits in under 500 counters, so recording never resizes anything.
+ */
+public final class ExponentialHistogram implements ClientMetricRegistry.Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * @param quantile in {@code [0, 1]}, e.g. {@code 0.99}
+     * @return the upper bound of the bucket holding the requested quantile, or 0 if empty
+     */
+    public long getValueAtQuantile(double quantile) {
+        Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "quantile %s out of range", quantile);
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        final long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        final long upper = lower + width - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.metrics;
+
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Keeps every instrument in memory.  The default registry of {@link com.opentable.jaxrs.JaxRsClientFactory};
+ * read it directly, poll it from a reporter, or replace it with an adapter onto your metrics backend.
+ */
+public class InMemoryClientMetricRegistry implements ClientMetricRegistry {
+    private final ConcurrentMap<MetricId, InMemoryCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricId, ExponentialHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricId, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public InMemoryCounter counter(String name, Map<String, String> tags) {
+        return counters.computeIfAbsent(MetricId.of(name, tags), id -> new InMemoryCounter());
+    }
+
+    @Override
+    public ExponentialHistogram histogram(String name, Map<String, String> tags) {
+        return histograms.computeIfAbsent(MetricId.of(name, tags), id -> new ExponentialHistogram());
+    }
+
+    @Override
+    public void gauge(String name, Map<String, String> tags, LongSupplier value) {
+        gauges.put(MetricId.of(name, tags), value);
+    }
+
+    /** @return the current count, or 0 if no such counter was ever created */
+    public long getCount(String name, Map<String, String> tags) {
+        final InMemoryCounter counter = counters.get(MetricId.of(name, tags));
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    /** @return the histogram, or {@code null} if no such histogram was ever created */
+    public ExponentialHistogram getHistogram(String name, Map<String, String> tags) {
+        return histograms.get(MetricId.of(name, tags));
+    }
+
+    public OptionalLong getGauge(String name, Map<String, String> tags) {
+        final LongSupplier gauge = gauges.get(MetricId.of(name, tags));
+        return gauge == null ? OptionalLong.empty() : OptionalLong.of(gauge.getAsLong());
+    }
+
+    public Set<MetricId> getMetricIds() {
+        return ImmutableSet.<MetricId>builder()
+                .addAll(counters.keySet())
+                .addAll(histograms.keySet())
+                .addAll(gauges.keySet())
+                .build();
+    }
+
+    public static final class InMemoryCounter implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void increment(long delta) {
+            count.add(delta);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Name plus tags; the identity of an instrument in a {@link ClientMetricRegistry}.
+ */
+public final class MetricId {
+    private final String name;
+    private final ImmutableSortedMap<String, String> tags;
+
+    private MetricId(String name, Map<String, String> tags) {
+        this.name = Objects.requireNonNull(name, "null name");
+        this.tags = ImmutableSortedMap.copyOf(tags);
+    }
+
+    public static MetricId of(String name, Map<String, String> tags) {
+        return new MetricId(name, tags);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MetricId)) {
+            return false;
+        }
+        final MetricId other = (MetricId) o;
+        return name.equals(other.name) && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, tags);
+    }
+
+    @Override
+    public String toString() {
+        return name + tags;
+    }
+}
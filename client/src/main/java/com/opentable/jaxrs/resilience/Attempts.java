@@ -0,0 +1,360 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Configuration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientProperties;
+
+/**
+ * Sends the attempts of a request for the client's {@link RetryFeature retries} and {@link HedgingFeature hedges}.
+ * Engines call this where they send a request, after the request filters and before the response filters, so
+ * filters see one request and one response however many attempts it took.
+ *
+ * <p>An asynchronous send never waits: each attempt is chained on the completion of the one before, and the
+ * delays between them run on a shared scheduler.  A synchronous send retries on the calling thread, and if it is
+ * hedged waits for the asynchronous send for a bounded time.  Responses that are not used are closed unread.
+ */
+public final class Attempts {
+    /** What a synchronous hedged request waits per attempt when the client has no timeouts to bound it. */
+    public static final Duration UNTIMED_ATTEMPT = Duration.ofMinutes(1);
+
+    static final String RETRY_POLICY = RetryFeature.class.getName() + ".policy";
+    static final String HEDGING_POLICY = HedgingFeature.class.getName() + ".policy";
+
+    static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    private Attempts() { }
+
+    /**
+     * A request as its engine sends it.  Attempts after the first may run while an earlier one is still
+     * outstanding, so the engine should send those on a copy of the request.
+     */
+    public interface Transport<R> {
+        /** Start attempt number {@code attempt}; cancelling the future should abort it. */
+        CompletableFuture<R> sendAsync(int attempt);
+
+        /** Send attempt number {@code attempt} on the calling thread. */
+        R send(int attempt);
+
+        int getStatus(R response);
+
+        String getHeaderString(R response, String name);
+
+        /** Release a response that will not be used, without reading its entity. */
+        void discard(R response);
+
+        Object getProperty(String name);
+
+        void setProperty(String name, Object value);
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                threadFactory("jaxrs-attempts-%s"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * @return how long one attempt of a request of a client with this configuration may take to be answered: its
+     * connect plus socket timeout, or {@link #UNTIMED_ATTEMPT} if the client has turned either off
+     */
+    public static Duration attemptTimeout(JaxRsClientConfig config) {
+        if (config.getConnectTimeout().isZero() || config.getSocketTimeout().isZero()) {
+            return UNTIMED_ATTEMPT;
+        }
+        return config.getConnectTimeout().plus(config.getSocketTimeout());
+    }
+
+    /**
+     * An executor for engines that can only send on the calling thread, to run the attempts of hedged requests.
+     * Attempts never wait for one another, so a bounded pool cannot deadlock; it need not be larger than the
+     * connection pool the attempts will wait for anyway.
+     */
+    public static ExecutorService newExecutor(String clientName, int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                threadFactory(clientName + "-attempt-%s"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // threads join the group of whoever starts them, not of whoever built the pool, which may be long gone
+    private static ThreadFactory threadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setThreadFactory(Thread::new).setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    /** @return whether requests of a client with this configuration may need more than one attempt */
+    public static boolean isEnabled(Configuration configuration) {
+        return configuration.getProperty(RETRY_POLICY) != null || configuration.getProperty(HEDGING_POLICY) != null;
+    }
+
+    /**
+     * Send a request without blocking.
+     * @param configuration the request's configuration, which holds the policies
+     */
+    public static <R> CompletableFuture<R> sendAsync(Configuration configuration, String method, Transport<R> transport) {
+        final Request<R> request = new Request<>(transport, retryPolicy(configuration, method, transport),
+                hedgingPolicy(configuration, method));
+        final CompletableFuture<R> result = new CompletableFuture<R>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                request.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        final CompletableFuture<Attempt<R>> last = request.retry != null ? request.retry.sendAsync(request) : request.sendRound();
+        last.whenComplete((attempt, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(unwrap(failure));
+                return;
+            }
+            final R response = request.finish(attempt);
+            if (response == null) {
+                result.completeExceptionally(unwrap(attempt.getFailure()));
+            } else if (!result.complete(response)) {
+                transport.discard(response);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send a request on the calling thread.  A hedged request is sent {@link #sendAsync asynchronously} and waited
+     * for at most {@code attemptTimeout} plus the hedging delay per attempt, plus the retry backoffs; after that it
+     * fails and its attempts are cancelled.
+     * @param configuration the request's configuration, which holds the policies
+     */
+    public static <R> R send(Configuration configuration, String method, Transport<R> transport, Duration attemptTimeout) {
+        final RetryFeature.Policy retry = retryPolicy(configuration, method, transport);
+        final HedgingFeature.Policy hedging = hedgingPolicy(configuration, method);
+        if (hedging != null) {
+            final int rounds = retry == null ? 1 : retry.getMaxRetries() + 1;
+            final long timeoutNanos = rounds * (attemptTimeout.toNanos() + hedging.hedgeDelayNanos())
+                    + (rounds - 1) * (retry == null ? 0 : retry.getMaxBackoffNanos());
+            final CompletableFuture<R> result = sendAsync(configuration, method, transport);
+            try {
+                return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                result.cancel(true);
+                throw new ProcessingException("No response within " + Duration.ofNanos(timeoutNanos), e);
+            } catch (InterruptedException e) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new ProcessingException(e);
+            } catch (ExecutionException e) {
+                throw asRuntimeException(e.getCause());
+            }
+        }
+        if (retry == null) {
+            return transport.send(1);
+        }
+        final Request<R> request = new Request<>(transport, retry, null);
+        final Attempt<R> last = retry.send(request);
+        final R response = request.finish(last);
+        if (response == null) {
+            throw asRuntimeException(last.getFailure());
+        }
+        return response;
+    }
+
+    private static RetryFeature.Policy retryPolicy(Configuration configuration, String method, Transport<?> transport) {
+        final Object policy = configuration.getProperty(RETRY_POLICY);
+        return policy instanceof RetryFeature.Policy && ((RetryFeature.Policy) policy).appliesTo(method, transport)
+                ? (RetryFeature.Policy) policy : null;
+    }
+
+    private static HedgingFeature.Policy hedgingPolicy(Configuration configuration, String method) {
+        final Object policy = configuration.getProperty(HEDGING_POLICY);
+        return policy instanceof HedgingFeature.Policy && ((HedgingFeature.Policy) policy).appliesTo(method)
+                ? (HedgingFeature.Policy) policy : null;
+    }
+
+    static Throwable unwrap(Throwable t) {
+        return (t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null ? t.getCause() : t;
+    }
+
+    private static RuntimeException asRuntimeException(Throwable failure) {
+        final Throwable t = unwrap(failure);
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return t instanceof RuntimeException ? (RuntimeException) t : new ProcessingException(t);
+    }
+
+    /** The attempts of one request, all of which are released unless used. */
+    static final class Request<R> {
+        final Transport<R> transport;
+        final RetryFeature.Policy retry;
+        final HedgingFeature.Policy hedging;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        // guarded by this
+        private final List<Attempt<R>> live = new ArrayList<>(2);
+        private boolean done;
+
+        Request(Transport<R> transport, RetryFeature.Policy retry, HedgingFeature.Policy hedging) {
+            this.transport = transport;
+            this.retry = retry;
+            this.hedging = hedging;
+        }
+
+        /** Send one attempt, or a hedged pair; completes once the outcome is known. */
+        CompletableFuture<Attempt<R>> sendRound() {
+            if (hedging != null) {
+                return hedging.sendAsync(this);
+            }
+            final Attempt<R> attempt = start();
+            return attempt.future.handle((r, t) -> attempt);
+        }
+
+        /** Start the next attempt. */
+        Attempt<R> start() {
+            final int number = attempts.incrementAndGet();
+            CompletableFuture<R> future;
+            try {
+                future = transport.sendAsync(number);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            return track(new Attempt<>(number, System.nanoTime(), future));
+        }
+
+        /** Send the next attempt on the calling thread. */
+        Attempt<R> startBlocking() {
+            final int number = attempts.incrementAndGet();
+            final long startNanos = System.nanoTime();
+            final CompletableFuture<R> future = new CompletableFuture<>();
+            try {
+                future.complete(transport.send(number));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return track(new Attempt<>(number, startNanos, future));
+        }
+
+        private Attempt<R> track(Attempt<R> attempt) {
+            synchronized (this) {
+                if (!done) {
+                    live.add(attempt);
+                    return attempt;
+                }
+            }
+            attempt.release(transport);
+            return attempt;
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        /** The attempt will not be used: abort it, or close its response. */
+        void release(Attempt<R> attempt) {
+            synchronized (this) {
+                live.remove(attempt);
+            }
+            attempt.release(transport);
+        }
+
+        /** Use {@code attempt}, releasing all others. @return its response, or null if it failed */
+        R finish(Attempt<R> attempt) {
+            final List<Attempt<R>> others;
+            synchronized (this) {
+                done = true;
+                others = new ArrayList<>(live);
+                live.clear();
+            }
+            others.stream().filter(a -> a != attempt).forEach(a -> a.release(transport));
+            final R response = attempt.getResponse();
+            if (response != null) {
+                transport.setProperty(JaxRsClientProperties.ATTEMPT, attempt.number);
+            }
+            return response;
+        }
+
+        void cancel() {
+            final List<Attempt<R>> all;
+            synchronized (this) {
+                done = true;
+                all = new ArrayList<>(live);
+                live.clear();
+            }
+            all.forEach(a -> a.release(transport));
+        }
+    }
+
+    static final class Attempt<R> {
+        final int number;
+        final long startNanos;
+        final CompletableFuture<R> future;
+
+        Attempt(int number, long startNanos, CompletableFuture<R> future) {
+            this.number = number;
+            this.startNanos = startNanos;
+            this.future = future;
+        }
+
+        /** @return the response, if the attempt completed with one */
+        R getResponse() {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        /** @return the failure, if the attempt completed with one */
+        Throwable getFailure() {
+            if (!future.isCompletedExceptionally()) {
+                return null;
+            }
+            try {
+                future.join();
+                return null;
+            } catch (CompletionException | CancellationException e) {
+                return unwrap(e);
+            }
+        }
+
+        /** @return whether the attempt got a response that is not a server error */
+        boolean isGood(Transport<R> transport) {
+            final R response = getResponse();
+            return response != null && transport.getStatus(response) < 500;
+        }
+
+        void release(Transport<R> transport) {
+            future.cancel(true);
+            future.thenAccept(transport::discard);
+        }
+    }
+}
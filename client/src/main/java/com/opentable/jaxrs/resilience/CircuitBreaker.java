@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.base.Preconditions;
+
+import com.opentable.jaxrs.OutstandingRequests;
+
+/**
+ * Circuit breaker for one route.
+ *
+ * <p>While {@link State#CLOSED}, outcomes are counted over a sliding window of {@link #WINDOW}; once the
+ * window holds at least {@code minimumCalls} and the failure or slow call rate reaches its threshold the
+ * breaker opens.  While {@link State#OPEN} every call is refused.  After {@code openDuration} it turns
+ * {@link State#HALF_OPEN} and lets {@link #PROBES} calls through; if they do well it closes with a fresh
+ * window, otherwise it opens again.
+ *
+ * <p>Each state is an immutable-ish phase object swapped in by CAS, so transitions take no locks and an
+ * outcome is only counted by the phase its call was admitted in.  Each phase that admits calls keeps them in
+ * {@link OutstandingRequests}, so a call that never reports back is counted as slow once it has been
+ * outstanding for about {@code slowCallDuration}.
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    static final Duration WINDOW = Duration.ofSeconds(10);
+    static final int WINDOW_BUCKETS = 10;
+    static final int PROBES = 5;
+
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int minimumCalls;
+
+    private final AtomicReference<Phase> phase;
+
+    /**
+     * @param failureRatePercent open at this percentage of failed calls (5xx responses)
+     * @param slowCallRatePercent open at this percentage of calls slower than {@code slowCallDuration}
+     */
+    public CircuitBreaker(double failureRatePercent, double slowCallRatePercent, Duration slowCallDuration,
+            Duration openDuration, int minimumCalls) {
+        Preconditions.checkArgument(minimumCalls > 0, "minimumCalls must be positive");
+        Preconditions.checkArgument(!slowCallDuration.isNegative() && !slowCallDuration.isZero(), "slowCallDuration must be positive");
+        this.failureRate = failureRatePercent / 100;
+        this.slowCallRate = slowCallRatePercent / 100;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.minimumCalls = minimumCalls;
+        this.phase = new AtomicReference<>(closed());
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /** @return a permit to report the outcome to, or null if the call must not be made */
+    public Permit tryAcquire(long nowNanos) {
+        while (true) {
+            final Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return new Permit(current, current.outstanding.start(nowNanos));
+                case HALF_OPEN:
+                    if (current.takeProbe()) {
+                        return new Permit(current, current.outstanding.start(nowNanos));
+                    }
+                    // probes that never report back must not keep the breaker half open
+                    current.outstanding.get(nowNanos);
+                    return null;
+                case OPEN:
+                    if (nowNanos - current.sinceNanos < openNanos) {
+                        return null;
+                    }
+                    phase.compareAndSet(current, halfOpen(nowNanos));
+                    break;
+                default:
+                    throw new IllegalStateException(String.valueOf(current.state));
+            }
+        }
+    }
+
+    private void onResult(Phase admitted, long nowNanos, boolean failure, boolean slow) {
+        if (phase.get() != admitted) {
+            return;
+        }
+        if (admitted.state == State.CLOSED) {
+            admitted.window.record(nowNanos, failure, slow);
+            final long[] counts = admitted.window.snapshot(nowNanos);
+            if (counts[0] >= minimumCalls && isBad(counts[0], counts[1], counts[2])) {
+                phase.compareAndSet(admitted, open(nowNanos));
+            }
+        } else if (admitted.state == State.HALF_OPEN) {
+            if (failure) {
+                admitted.failures.incrementAndGet();
+            }
+            if (slow) {
+                admitted.slow.incrementAndGet();
+            }
+            if (admitted.results.incrementAndGet() >= PROBES) {
+                final boolean bad = isBad(PROBES, admitted.failures.get(), admitted.slow.get());
+                phase.compareAndSet(admitted, bad ? open(nowNanos) : closed());
+            }
+        }
+    }
+
+    private boolean isBad(long calls, long failures, long slow) {
+        return failures >= failureRate * calls || slow >= slowCallRate * calls;
+    }
+
+    private Phase closed() {
+        return new Phase(State.CLOSED, System.nanoTime(),
+                new SlidingWindow(WINDOW_BUCKETS, WINDOW.toNanos() / WINDOW_BUCKETS), slowCallNanos);
+    }
+
+    private Phase halfOpen(long nowNanos) {
+        return new Phase(State.HALF_OPEN, nowNanos, null, slowCallNanos);
+    }
+
+    private Phase open(long nowNanos) {
+        return new Phase(State.OPEN, nowNanos, null, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + getState() + "]";
+    }
+
+    private final class Phase {
+        final State state;
+        final long sinceNanos;
+        final SlidingWindow window;
+        /** Calls admitted in this phase; null while open. */
+        final OutstandingRequests outstanding;
+        final AtomicInteger probes = new AtomicInteger();
+        final AtomicInteger results = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger slow = new AtomicInteger();
+
+        Phase(State state, long sinceNanos, SlidingWindow window, long expiryNanos) {
+            this.state = state;
+            this.sinceNanos = sinceNanos;
+            this.window = window;
+            this.outstanding = expiryNanos == 0 ? null : new OutstandingRequests(Duration.ofNanos(expiryNanos), expired -> {
+                for (int i = 0; i < expired; i++) {
+                    onResult(this, System.nanoTime(), false, true);
+                }
+            });
+        }
+
+        boolean takeProbe() {
+            while (true) {
+                final int taken = probes.get();
+                if (taken >= PROBES) {
+                    return false;
+                }
+                if (probes.compareAndSet(taken, taken + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /** One admitted call. */
+    public final class Permit {
+        private final Phase admitted;
+        private final OutstandingRequests.Ticket ticket;
+
+        Permit(Phase admitted, OutstandingRequests.Ticket ticket) {
+            this.admitted = admitted;
+            this.ticket = ticket;
+        }
+
+        /** Report the outcome; only the first report of a permit counts. */
+        public void finish(long nowNanos, boolean failure) {
+            if (ticket.finish()) {
+                onResult(admitted, nowNanos, failure, nowNanos - ticket.getStartNanos() > slowCallNanos);
+            }
+        }
+
+        /** The call was answered without reaching the host, say from a cache: it counts neither way. */
+        public void cancel() {
+            if (ticket.finish() && admitted.state == State.HALF_OPEN) {
+                admitted.probes.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Priority;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.TransportFailures;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * Fails requests fast while the host they go to is failing, with one {@link CircuitBreaker} per client
+ * and host (the URI authority as requested, so the logical service for
+ * {@link com.opentable.jaxrs.routing.LoadBalancingFeature lb://} URIs).  Configured by
+ * {@link JaxRsClientConfig#isCircuitBreakerEnabled()} and the settings next to it; registered by
+ * {@link JaxRsClientFactory} when enabled.
+ *
+ * <p>Responses with status 5xx count as failures and responses slower than
+ * {@link JaxRsClientConfig#getCircuitBreakerSlowCallDuration()} as slow.  A request that fails in the
+ * transport counts as a failure when its engine reports it through {@link TransportFailures}, and one that is
+ * never heard of again as slow once it has been outstanding about that long, so a host that refuses or times
+ * out connections opens its breaker too.  Responses that never came from the host, such as cache hits and
+ * coalesced responses, count neither way.  Retries and hedged attempts are made by the engine, below the
+ * filters, so the breaker judges each request once, by the attempt that answered it.
+ *
+ * <p>While a breaker is open, requests fail in the request filter with a {@link CircuitBreakerOpenException},
+ * before anything is sent, freeing the caller's thread straight away; the engine never sees them, so they are
+ * not retried.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature} plus {@code route} (the host):
+ * <ul>
+ * <li>{@value #STATE} &ndash; gauge of the breaker state: 0 closed, 1 half open, 2 open</li>
+ * <li>{@value #REJECTED} &ndash; requests failed fast by an open breaker</li>
+ * </ul>
+ */
+public class CircuitBreakerFeature implements Feature {
+    public static final String STATE = "jaxrs.client.circuit-breaker.state";
+    public static final String REJECTED = "jaxrs.client.circuit-breaker.rejected";
+
+    /** Before the concurrency limit and the metrics, so a request the breaker refuses takes no permit. */
+    static final int PRIORITY = 30;
+    /** After every other request filter, so only requests that go to the engine are marked as sent. */
+    static final int SENT_PRIORITY = Integer.MAX_VALUE;
+
+    private static final String PERMIT_PROPERTY = CircuitBreakerFeature.class.getName() + ".permit";
+    private static final String SENT_PROPERTY = CircuitBreakerFeature.class.getName() + ".sent";
+
+    private final JaxRsClientConfig config;
+
+    public CircuitBreakerFeature(JaxRsClientConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        final Object clientName = context.getConfiguration().getProperty(JaxRsClientFactory.CLIENT_NAME_PROPERTY);
+        context.register(new CircuitBreakerFilter(config, String.valueOf(clientName),
+                ClientMetricsFeature.registry(context.getConfiguration()),
+                ClientMetricsFeature.tags(context.getConfiguration())));
+        context.register(new SentFilter());
+        return true;
+    }
+
+    @Priority(PRIORITY)
+    static class CircuitBreakerFilter implements ClientRequestFilter, ClientResponseFilter {
+        private final JaxRsClientConfig config;
+        private final String clientName;
+        private final ClientMetricRegistry registry;
+        private final Map<String, String> tags;
+        private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+
+        CircuitBreakerFilter(JaxRsClientConfig config, String clientName, ClientMetricRegistry registry, Map<String, String> tags) {
+            this.config = config;
+            this.clientName = clientName;
+            this.registry = registry;
+            this.tags = tags;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            if (ConnectionWarmUp.isWarmUp(request)) {
+                return;
+            }
+            final String host = String.valueOf(request.getUri().getAuthority());
+            final Route route = routes.computeIfAbsent(host, this::newRoute);
+            final CircuitBreaker.Permit permit = route.breaker.tryAcquire(System.nanoTime());
+            if (permit == null) {
+                route.rejected.increment();
+                throw new CircuitBreakerOpenException(clientName, host);
+            }
+            request.setProperty(PERMIT_PROPERTY, permit);
+            TransportFailures.onFailure(request, failure -> permit.finish(System.nanoTime(), true));
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            final Object permit = request.getProperty(PERMIT_PROPERTY);
+            if (!(permit instanceof CircuitBreaker.Permit)) {
+                return;
+            }
+            // a later request filter answered it, say from a cache
+            if (request.getProperty(SENT_PROPERTY) == null) {
+                ((CircuitBreaker.Permit) permit).cancel();
+                return;
+            }
+            ((CircuitBreaker.Permit) permit).finish(System.nanoTime(), response.getStatus() >= 500);
+        }
+
+        private Route newRoute(String host) {
+            final Map<String, String> routeTags = ImmutableMap.<String, String>builder()
+                    .putAll(tags)
+                    .put("route", host)
+                    .build();
+            final CircuitBreaker breaker = new CircuitBreaker(
+                    config.getCircuitBreakerFailureRatePercent(), config.getCircuitBreakerSlowCallRatePercent(),
+                    config.getCircuitBreakerSlowCallDuration(), config.getCircuitBreakerOpenDuration(),
+                    config.getCircuitBreakerMinimumCalls());
+            registry.gauge(STATE, routeTags, () -> breaker.getState().ordinal());
+            return new Route(breaker, registry.counter(REJECTED, routeTags));
+        }
+    }
+
+    /** Marks requests no request filter aborted; those that were are answered without the host. */
+    @Priority(SENT_PRIORITY)
+    static class SentFilter implements ClientRequestFilter {
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            request.setProperty(SENT_PROPERTY, Boolean.TRUE);
+        }
+    }
+
+    private static final class Route {
+        final CircuitBreaker breaker;
+        final ClientMetricRegistry.Counter rejected;
+
+        Route(CircuitBreaker breaker, ClientMetricRegistry.Counter rejected) {
+            this.breaker = breaker;
+            this.rejected = rejected;
+        }
+    }
+}
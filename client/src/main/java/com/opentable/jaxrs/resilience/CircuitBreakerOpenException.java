@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown, before anything is sent, when the circuit breaker for a client's route is open:
+ * recent calls to that host mostly failed or were slow, so this one fails fast instead.
+ */
+public class CircuitBreakerOpenException extends ProcessingException {
+    private static final long serialVersionUID = 1L;
+
+    private final String clientName;
+    private final String route;
+
+    public CircuitBreakerOpenException(String clientName, String route) {
+        super("Circuit breaker for client '" + clientName + "' to " + route + " is open");
+        this.clientName = clientName;
+        this.route = route;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    /** @return the host (and port) the breaker guards */
+    public String getRoute() {
+        return route;
+    }
+}
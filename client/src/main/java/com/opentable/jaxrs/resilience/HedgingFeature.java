@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+import com.google.common.base.Preconditions;
+
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.ExponentialHistogram;
+
+/**
+ * Hedged requests: if a GET or HEAD has not completed after a delay, send a second attempt and use
+ * whichever answers first, cancelling the other.  Trades a little extra load for a much shorter tail
+ * when a connection or a server thread is stuck.
+ *
+ * <p>The delay is either fixed or a percentile of the client's recent attempt latencies (never below
+ * a floor), so only the slowest requests are hedged.  A {@link RequestBudget} caps hedges at a share of
+ * the traffic; once it is spent requests just wait for their first attempt.  A 5xx or a transport
+ * failure does not win: the other attempt's outcome is used if it does better.
+ *
+ * <p>The engine sends the attempts, see {@link Attempts}: filters see the request once, so both attempts
+ * go to the same URI, and an {@code async()} or {@code rx()} invocation holds no thread while they race.
+ * The losing attempt is aborted, or its response closed unread.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #HEDGES} &ndash; second attempts sent</li>
+ * <li>{@value #WINS} &ndash; requests answered by the second attempt</li>
+ * <li>{@value #BUDGET_EXHAUSTED} &ndash; hedges skipped for lack of budget</li>
+ * </ul>
+ *
+ * @see com.opentable.jaxrs.JaxRsClientProperties#ATTEMPT
+ */
+public class HedgingFeature implements Feature {
+    public static final String HEDGES = "jaxrs.client.hedging.hedges";
+    public static final String WINS = "jaxrs.client.hedging.wins";
+    public static final String BUDGET_EXHAUSTED = "jaxrs.client.hedging.budget-exhausted";
+
+    /** Latency samples a percentile is computed over before starting afresh. */
+    static final int WINDOW_SAMPLES = 1000;
+    /** Fewer samples than this, and the floor delay is used. */
+    static final int MIN_SAMPLES = 20;
+    static final int MAX_BUDGET_BALANCE = 10;
+
+    private final Duration delay;
+    private final double quantile;
+    private final double budgetRatio;
+
+    private HedgingFeature(Duration delay, double quantile, double budgetRatio) {
+        Preconditions.checkArgument(!delay.isNegative(), "negative delay %s", delay);
+        Preconditions.checkArgument(quantile >= 0 && quantile < 1, "quantile %s not in [0, 1)", quantile);
+        this.delay = delay;
+        this.quantile = quantile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * Hedge requests still outstanding after {@code delay}.
+     * @param budgetRatio most hedges per request, e.g. {@code 0.05}
+     */
+    public static HedgingFeature afterDelay(Duration delay, double budgetRatio) {
+        return new HedgingFeature(delay, 0, budgetRatio);
+    }
+
+    /**
+     * Hedge requests still outstanding after the client's recent {@code quantile} latency, e.g. {@code 0.95},
+     * or after {@code minDelay} if that is longer or too little is known yet.
+     * @param budgetRatio most hedges per request, e.g. {@code 0.05}
+     */
+    public static HedgingFeature afterPercentile(double quantile, Duration minDelay, double budgetRatio) {
+        Preconditions.checkArgument(quantile > 0, "quantile %s must be positive", quantile);
+        return new HedgingFeature(minDelay, quantile, budgetRatio);
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        final ClientMetricRegistry registry = ClientMetricsFeature.registry(context.getConfiguration());
+        final Map<String, String> tags = ClientMetricsFeature.tags(context.getConfiguration());
+        context.property(Attempts.HEDGING_POLICY, new Policy(delay.toNanos(), quantile, new RequestBudget(budgetRatio, MAX_BUDGET_BALANCE),
+                registry.counter(HEDGES, tags), registry.counter(WINS, tags), registry.counter(BUDGET_EXHAUSTED, tags)));
+        return true;
+    }
+
+    static final class Policy {
+        private final long minDelayNanos;
+        private final double quantile;
+        private final RequestBudget budget;
+        private final ClientMetricRegistry.Counter hedges;
+        private final ClientMetricRegistry.Counter wins;
+        private final ClientMetricRegistry.Counter budgetExhausted;
+        private final AtomicReference<ExponentialHistogram> latency = new AtomicReference<>(new ExponentialHistogram());
+        private volatile ExponentialHistogram previousLatency;
+
+        Policy(long minDelayNanos, double quantile, RequestBudget budget, ClientMetricRegistry.Counter hedges,
+                ClientMetricRegistry.Counter wins, ClientMetricRegistry.Counter budgetExhausted) {
+            this.minDelayNanos = minDelayNanos;
+            this.quantile = quantile;
+            this.budget = budget;
+            this.hedges = hedges;
+            this.wins = wins;
+            this.budgetExhausted = budgetExhausted;
+        }
+
+        boolean appliesTo(String method) {
+            return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method);
+        }
+
+        /** Send a first attempt, and a second if the first takes too long; completes with the one to use. */
+        <R> CompletableFuture<Attempts.Attempt<R>> sendAsync(Attempts.Request<R> request) {
+            budget.deposit();
+            final Race<R> race = new Race<>(request, request.start());
+            race.primary.future.whenComplete((r, t) -> race.completed());
+            if (!race.result.isDone()) {
+                race.timer = Attempts.SCHEDULER.schedule(race::hedge, hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            }
+            return race.result;
+        }
+
+        private void record(long nanos) {
+            final ExponentialHistogram current = latency.get();
+            current.record(nanos);
+            if (current.getCount() >= WINDOW_SAMPLES && latency.compareAndSet(current, new ExponentialHistogram())) {
+                previousLatency = current;
+            }
+        }
+
+        long hedgeDelayNanos() {
+            if (quantile == 0) {
+                return minDelayNanos;
+            }
+            final ExponentialHistogram previous = previousLatency;
+            final ExponentialHistogram window = previous != null ? previous : latency.get();
+            if (window.getCount() < MIN_SAMPLES) {
+                return minDelayNanos;
+            }
+            return Math.max(minDelayNanos, window.getValueAtQuantile(quantile));
+        }
+
+        /** A first attempt and maybe a hedge; decisions are made holding the lock, and acted on outside it. */
+        private final class Race<R> {
+            final Attempts.Request<R> request;
+            final Attempts.Attempt<R> primary;
+            final CompletableFuture<Attempts.Attempt<R>> result = new CompletableFuture<>();
+            volatile ScheduledFuture<?> timer;
+
+            // guarded by this
+            private Attempts.Attempt<R> hedge;
+            private boolean decided;
+
+            Race(Attempts.Request<R> request, Attempts.Attempt<R> primary) {
+                this.request = request;
+                this.primary = primary;
+            }
+
+            void hedge() {
+                synchronized (this) {
+                    if (decided || primary.future.isDone() || request.isDone()) {
+                        return;
+                    }
+                }
+                if (!budget.tryWithdraw()) {
+                    budgetExhausted.increment();
+                    return;
+                }
+                hedges.increment();
+                final Attempts.Attempt<R> attempt = request.start();
+                final boolean late;
+                synchronized (this) {
+                    late = decided;
+                    if (!late) {
+                        hedge = attempt;
+                    }
+                }
+                if (late) {
+                    request.release(attempt);
+                } else {
+                    attempt.future.whenComplete((r, t) -> completed());
+                }
+            }
+
+            void completed() {
+                final Attempts.Attempt<R> winner;
+                final Attempts.Attempt<R> loser;
+                synchronized (this) {
+                    winner = decided ? null : pick();
+                    if (winner == null) {
+                        return;
+                    }
+                    decided = true;
+                    loser = winner == primary ? hedge : primary;
+                }
+                final ScheduledFuture<?> pending = timer;
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+                if (loser != null) {
+                    request.release(loser);
+                }
+                if (winner != primary) {
+                    wins.increment();
+                }
+                if (winner.getResponse() != null) {
+                    record(System.nanoTime() - winner.startNanos);
+                }
+                result.complete(winner);
+            }
+
+            /** Called holding the lock. @return the attempt to use, or null until that is known */
+            private Attempts.Attempt<R> pick() {
+                final boolean primaryDone = primary.future.isDone();
+                final boolean hedgeDone = hedge != null && hedge.future.isDone();
+                if (primaryDone && primary.isGood(request.transport)) {
+                    return primary;
+                }
+                if (hedgeDone && hedge.isGood(request.transport)) {
+                    return hedge;
+                }
+                // no hedge was sent, or both failed: the first attempt's outcome stands
+                return primaryDone && (hedge == null || hedgeDone) ? primary : null;
+            }
+        }
+    }
+}
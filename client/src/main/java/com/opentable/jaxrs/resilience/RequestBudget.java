@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounds the extra load that hedged or retried requests add.  Every original request deposits
+ * {@code ratio} of a token, every extra attempt withdraws a whole one, so extra attempts stay under
+ * {@code ratio} times the original traffic over time.  The balance is capped, which limits the burst
+ * allowed after a quiet spell, and starts full so a fresh client can hedge or retry straight away.
+ */
+public final class RequestBudget {
+    private final double ratio;
+    private final double maxBalance;
+
+    // guarded by this
+    private double balance;
+
+    /**
+     * @param ratio extra attempts allowed per original request, e.g. {@code 0.1} for 10%
+     * @param maxBalance most extra attempts that may be made in a burst
+     */
+    public RequestBudget(double ratio, int maxBalance) {
+        Preconditions.checkArgument(ratio >= 0, "negative ratio %s", ratio);
+        Preconditions.checkArgument(maxBalance >= 0, "negative balance %s", maxBalance);
+        this.ratio = ratio;
+        this.maxBalance = maxBalance;
+        this.balance = maxBalance;
+    }
+
+    /** Record an original request. */
+    public synchronized void deposit() {
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    /** @return whether an extra attempt may be made; if so it has been paid for */
+    public synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    public synchronized double getBalance() {
+        return balance;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestBudget[ratio=" + ratio + ", balance=" + getBalance() + "/" + maxBalance + "]";
+    }
+}
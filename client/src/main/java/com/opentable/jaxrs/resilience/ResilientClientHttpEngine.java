@@ -0,0 +1,294 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.engines.AsyncClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+import org.jboss.resteasy.client.jaxrs.internal.ClientResponse;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.TransportFailures;
+
+/**
+ * Applies the client's {@link RetryFeature retries} and {@link HedgingFeature hedges} to what a RESTEasy engine
+ * sends, between the request and the response filters; see {@link Attempts}.  Requests of clients without either
+ * go straight to the engine.  Requests that fail without a response are reported to {@link TransportFailures}.
+ *
+ * <p>An asynchronous engine sends all attempts itself.  An engine that can only send on the calling thread sends
+ * a hedged request's attempts on a pool of the client's own, sized like its connection pool, so they never queue
+ * behind the invocation waiting for them on the async executor.
+ */
+public class ResilientClientHttpEngine implements ClientHttpEngine {
+    protected final ClientHttpEngine delegate;
+    private final String clientName;
+    private final Duration attemptTimeout;
+    private final int attemptThreads;
+
+    // guarded by this
+    private ExecutorService attemptExecutor;
+
+    ResilientClientHttpEngine(ClientHttpEngine delegate, String clientName, JaxRsClientConfig config) {
+        this.delegate = delegate;
+        this.clientName = clientName;
+        this.attemptTimeout = Attempts.attemptTimeout(config);
+        this.attemptThreads = Math.max(1, config.getConnectionPoolSize());
+    }
+
+    /** @return {@code engine}, sending attempts as the client's configuration asks */
+    public static ClientHttpEngine wrap(ClientHttpEngine engine, String clientName, JaxRsClientConfig config) {
+        return engine instanceof AsyncClientHttpEngine
+                ? new Async((AsyncClientHttpEngine) engine, clientName, config)
+                : new ResilientClientHttpEngine(engine, clientName, config);
+    }
+
+    /** @return the engine that sends each attempt */
+    public ClientHttpEngine getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return delegate.getSslContext();
+    }
+
+    @Override
+    public HostnameVerifier getHostnameVerifier() {
+        return delegate.getHostnameVerifier();
+    }
+
+    @Override
+    public Response invoke(Invocation invocation) {
+        final ClientInvocation request = (ClientInvocation) invocation;
+        try {
+            if (!isRetried(request)) {
+                return delegate.invoke(request);
+            }
+            return Attempts.send(request.getConfiguration(), request.getMethod(), new Transport(request, true), attemptTimeout);
+        } catch (RuntimeException e) {
+            TransportFailures.failed(request.getMutableProperties()::get, e);
+            throw e;
+        }
+    }
+
+    /** @return whether {@code request} may be retried or hedged; warm-up requests go out once */
+    private static boolean isRetried(ClientInvocation request) {
+        return Attempts.isEnabled(request.getConfiguration()) && !ConnectionWarmUp.isWarmUp(request.getMutableProperties()::get);
+    }
+
+    /** Send one attempt without blocking the caller. */
+    CompletableFuture<ClientResponse> sendAsync(ClientInvocation attempt, boolean buffered) {
+        final CompletableFuture<ClientResponse> result = new CompletableFuture<>();
+        try {
+            getAttemptExecutor().execute(() -> {
+                try {
+                    final ClientResponse response = (ClientResponse) delegate.invoke(attempt);
+                    if (!result.complete(response)) {
+                        response.close();
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService getAttemptExecutor() {
+        if (attemptExecutor == null) {
+            attemptExecutor = Attempts.newExecutor(clientName, attemptThreads);
+        }
+        return attemptExecutor;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (attemptExecutor != null) {
+                attemptExecutor.shutdownNow();
+            }
+        }
+        delegate.close();
+    }
+
+    /** The request as RESTEasy sends it; attempts after the first go out on copies. */
+    private final class Transport implements Attempts.Transport<ClientResponse> {
+        private final ClientInvocation request;
+        private final boolean buffered;
+
+        Transport(ClientInvocation request, boolean buffered) {
+            this.request = request;
+            this.buffered = buffered;
+        }
+
+        @Override
+        public CompletableFuture<ClientResponse> sendAsync(int attempt) {
+            return ResilientClientHttpEngine.this.sendAsync(attempt == 1 ? request : new AttemptInvocation(request), buffered);
+        }
+
+        @Override
+        public ClientResponse send(int attempt) {
+            return (ClientResponse) delegate.invoke(request);
+        }
+
+        @Override
+        public int getStatus(ClientResponse response) {
+            return response.getStatus();
+        }
+
+        @Override
+        public String getHeaderString(ClientResponse response, String name) {
+            return response.getHeaderString(name);
+        }
+
+        @Override
+        public void discard(ClientResponse response) {
+            response.close();
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return request.getMutableProperties().get(name);
+        }
+
+        @Override
+        public void setProperty(String name, Object value) {
+            request.getMutableProperties().put(name, value);
+        }
+    }
+
+    private static final class AttemptInvocation extends ClientInvocation {
+        AttemptInvocation(ClientInvocation original) {
+            super(original);
+        }
+    }
+
+    /** On an asynchronous engine, invocations of every kind chain their attempts without waiting. */
+    private static final class Async extends ResilientClientHttpEngine implements AsyncClientHttpEngine {
+        private final AsyncClientHttpEngine async;
+
+        Async(AsyncClientHttpEngine delegate, String clientName, JaxRsClientConfig config) {
+            super(delegate, clientName, config);
+            this.async = delegate;
+        }
+
+        @Override
+        CompletableFuture<ClientResponse> sendAsync(ClientInvocation attempt, boolean buffered) {
+            return async.submit(attempt, buffered, response -> response, null);
+        }
+
+        @Override
+        public <T> Future<T> submit(ClientInvocation request, boolean buffered, InvocationCallback<T> callback, ResultExtractor<T> extractor) {
+            if (!isRetried(request)) {
+                return async.submit(request, buffered, reporting(request, callback), extractor);
+            }
+            final CompletableFuture<T> result = submit(request, buffered, extractor, null);
+            if (callback != null) {
+                result.whenComplete((value, failure) -> {
+                    if (failure == null) {
+                        callback.completed(value);
+                    } else {
+                        callback.failed(Attempts.unwrap(failure));
+                    }
+                });
+            }
+            return result;
+        }
+
+        @Override
+        public <T> CompletableFuture<T> submit(ClientInvocation request, boolean buffered, ResultExtractor<T> extractor, ExecutorService executor) {
+            final CompletableFuture<T> result = attempt(request, buffered, extractor, executor);
+            result.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    TransportFailures.failed(request.getMutableProperties()::get, Attempts.unwrap(failure));
+                }
+            });
+            return result;
+        }
+
+        private <T> CompletableFuture<T> attempt(ClientInvocation request, boolean buffered, ResultExtractor<T> extractor, ExecutorService executor) {
+            if (!isRetried(request)) {
+                return async.submit(request, buffered, extractor, executor);
+            }
+            final CompletableFuture<ClientResponse> response = Attempts.sendAsync(request.getConfiguration(), request.getMethod(),
+                    new Transport(request, buffered));
+            final CompletableFuture<T> result = new CompletableFuture<T>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    response.cancel(mayInterruptIfRunning);
+                    return super.cancel(mayInterruptIfRunning);
+                }
+            };
+            response.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(Attempts.unwrap(failure));
+                    return;
+                }
+                // reading an entity that is not buffered may block
+                final Runnable extract = () -> {
+                    try {
+                        result.complete(extractor.extractResult(value));
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                };
+                if (executor == null) {
+                    extract.run();
+                } else {
+                    try {
+                        executor.execute(extract);
+                    } catch (RejectedExecutionException e) {
+                        value.close();
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+            return result;
+        }
+
+        private static <T> InvocationCallback<T> reporting(ClientInvocation request, InvocationCallback<T> callback) {
+            return new InvocationCallback<T>() {
+                @Override
+                public void completed(T response) {
+                    if (callback != null) {
+                        callback.completed(response);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable failure) {
+                    TransportFailures.failed(request.getMutableProperties()::get, failure);
+                    if (callback != null) {
+                        callback.failed(failure);
+                    }
+                }
+            };
+        }
+    }
+}
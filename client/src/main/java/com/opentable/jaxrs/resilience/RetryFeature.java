@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientProperties;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * Retries requests that failed in the transport or got a retryable status, as configured by
+ * {@link JaxRsClientConfig#getMaxRetries()} and the settings next to it.  Registered by
+ * {@link com.opentable.jaxrs.JaxRsClientFactory} when retries are configured; it may also be bound to
+ * feature groups with a config of its own.
+ *
+ * <p>Only idempotent methods are retried, plus requests with {@link JaxRsClientProperties#RETRYABLE} set.
+ * Retries wait a jittered exponential backoff, or the response's {@code Retry-After} if that is longer.
+ * Each retry is paid for from a {@link RequestBudget}, so during an outage retries add at most
+ * {@link JaxRsClientConfig#getRetryBudgetPercent()} to the load.
+ *
+ * <p>The engine sends the retries, see {@link Attempts}: filters such as the
+ * {@link com.opentable.jaxrs.limiter.ConcurrencyLimitFeature concurrency limit} and the
+ * {@link CircuitBreakerFeature circuit breaker} see the request once, and an {@code async()} or {@code rx()}
+ * invocation holds no thread while it backs off.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #RETRIES} &ndash; retries sent</li>
+ * <li>{@value #BUDGET_EXHAUSTED} &ndash; retries skipped for lack of budget</li>
+ * </ul>
+ */
+public class RetryFeature implements Feature {
+    public static final String RETRIES = "jaxrs.client.retries";
+    public static final String BUDGET_EXHAUSTED = "jaxrs.client.retries.budget-exhausted";
+
+    static final int MAX_BUDGET_BALANCE = 10;
+
+    private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE, "TRACE");
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final JaxRsClientConfig config;
+
+    public RetryFeature(JaxRsClientConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        if (config.getMaxRetries() <= 0) {
+            return false;
+        }
+        final ClientMetricRegistry registry = ClientMetricsFeature.registry(context.getConfiguration());
+        final Map<String, String> tags = ClientMetricsFeature.tags(context.getConfiguration());
+        context.property(Attempts.RETRY_POLICY, new Policy(config,
+                new RequestBudget(config.getRetryBudgetPercent() / 100, MAX_BUDGET_BALANCE),
+                registry.counter(RETRIES, tags), registry.counter(BUDGET_EXHAUSTED, tags)));
+        return true;
+    }
+
+    static final class Policy {
+        private final int maxRetries;
+        private final Set<Integer> retryableStatuses;
+        private final long baseBackoffNanos;
+        private final long maxBackoffNanos;
+        private final RequestBudget budget;
+        private final ClientMetricRegistry.Counter retries;
+        private final ClientMetricRegistry.Counter budgetExhausted;
+
+        Policy(JaxRsClientConfig config, RequestBudget budget,
+                ClientMetricRegistry.Counter retries, ClientMetricRegistry.Counter budgetExhausted) {
+            this.maxRetries = config.getMaxRetries();
+            this.retryableStatuses = ImmutableSet.copyOf(config.getRetryableStatuses());
+            this.baseBackoffNanos = config.getRetryBackoff().toNanos();
+            this.maxBackoffNanos = config.getRetryMaxBackoff().toNanos();
+            this.budget = budget;
+            this.retries = retries;
+            this.budgetExhausted = budgetExhausted;
+        }
+
+        int getMaxRetries() {
+            return maxRetries;
+        }
+
+        long getMaxBackoffNanos() {
+            return maxBackoffNanos;
+        }
+
+        boolean appliesTo(String method, Attempts.Transport<?> transport) {
+            return IDEMPOTENT_METHODS.contains(method)
+                    || Boolean.TRUE.equals(transport.getProperty(JaxRsClientProperties.RETRYABLE));
+        }
+
+        /** Send rounds of attempts, each after the one before has completed, until one is not to be retried. */
+        <R> CompletableFuture<Attempts.Attempt<R>> sendAsync(Attempts.Request<R> request) {
+            budget.deposit();
+            final CompletableFuture<Attempts.Attempt<R>> result = new CompletableFuture<>();
+            sendAsync(request, 1, result);
+            return result;
+        }
+
+        private <R> void sendAsync(Attempts.Request<R> request, int round, CompletableFuture<Attempts.Attempt<R>> result) {
+            request.sendRound().whenComplete((attempt, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                    return;
+                }
+                final long delay = nextDelayNanos(request, round, attempt);
+                if (delay < 0) {
+                    result.complete(attempt);
+                } else {
+                    request.release(attempt);
+                    Attempts.SCHEDULER.schedule(() -> sendAsync(request, round + 1, result), delay, TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+
+        /** Send attempts on the calling thread, sleeping between them. */
+        <R> Attempts.Attempt<R> send(Attempts.Request<R> request) {
+            budget.deposit();
+            for (int round = 1; ; round++) {
+                final Attempts.Attempt<R> attempt = request.startBlocking();
+                final long delay = nextDelayNanos(request, round, attempt);
+                if (delay < 0) {
+                    return attempt;
+                }
+                request.release(attempt);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessingException(e);
+                }
+            }
+        }
+
+        /** @return how long to wait before the next round, having paid for it, or -1 to use {@code attempt} */
+        private <R> long nextDelayNanos(Attempts.Request<R> request, int round, Attempts.Attempt<R> attempt) {
+            if (round > maxRetries || request.isDone()) {
+                return -1;
+            }
+            final R response = attempt.getResponse();
+            final long delay = response == null
+                    ? retryDelayNanos(round, -1, null)
+                    : retryDelayNanos(round, request.transport.getStatus(response), request.transport.getHeaderString(response, RETRY_AFTER));
+            if (delay < 0) {
+                return -1;
+            }
+            if (!budget.tryWithdraw()) {
+                budgetExhausted.increment();
+                return -1;
+            }
+            retries.increment();
+            return delay;
+        }
+
+        /**
+         * @param status the status of the response to attempt {@code number}, or -1 if it failed in the transport
+         * @return how long to wait before retrying after attempt {@code number}, or -1 not to retry
+         */
+        long retryDelayNanos(int number, int status, String retryAfterHeader) {
+            if (status < 0) {
+                return backoffNanos(number);
+            }
+            if (!retryableStatuses.contains(status)) {
+                return -1;
+            }
+            final long retryAfter = retryAfterNanos(retryAfterHeader);
+            if (retryAfter > maxBackoffNanos) {
+                return -1;
+            }
+            return Math.max(retryAfter, backoffNanos(number));
+        }
+
+        /** Full jitter: anywhere up to the exponential backoff for this attempt. */
+        private long backoffNanos(int number) {
+            final long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(number - 1, 30));
+            return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+    }
+
+    /** @return the delay a {@code Retry-After} header asks for, or 0 if absent or malformed */
+    static long retryAfterNanos(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        final String value = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                final ZonedDateTime when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(when.getZone()), when).toNanos());
+            } catch (DateTimeParseException | ArithmeticException e2) {
+                return 0;
+            }
+        }
+    }
+}
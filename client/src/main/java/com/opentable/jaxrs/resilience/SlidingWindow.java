@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.resilience;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call outcomes over the last {@code buckets} time slices, lock-free.  Each slice holds its epoch and
+ * counts of calls, failures and slow calls; a writer landing in a slice from an older epoch resets it
+ * with a CAS on the epoch.  Counts recorded concurrently with a reset may be lost, which is fine for
+ * rates computed over many calls.
+ */
+final class SlidingWindow {
+    private static final int EPOCH = 0;
+    private static final int CALLS = 1;
+    private static final int FAILURES = 2;
+    private static final int SLOW = 3;
+    private static final int FIELDS = 4;
+
+    private final int buckets;
+    private final long bucketNanos;
+    private final AtomicLongArray data;
+
+    SlidingWindow(int buckets, long bucketNanos) {
+        this.buckets = buckets;
+        this.bucketNanos = bucketNanos;
+        this.data = new AtomicLongArray(buckets * FIELDS);
+        for (int i = 0; i < buckets; i++) {
+            data.set(i * FIELDS + EPOCH, Long.MIN_VALUE);
+        }
+    }
+
+    void record(long nowNanos, boolean failure, boolean slow) {
+        final long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        final int base = (int) Math.floorMod(epoch, (long) buckets) * FIELDS;
+        final long seen = data.get(base + EPOCH);
+        if (seen != epoch && seen < epoch && data.compareAndSet(base + EPOCH, seen, epoch)) {
+            data.set(base + CALLS, 0);
+            data.set(base + FAILURES, 0);
+            data.set(base + SLOW, 0);
+        }
+        data.incrementAndGet(base + CALLS);
+        if (failure) {
+            data.incrementAndGet(base + FAILURES);
+        }
+        if (slow) {
+            data.incrementAndGet(base + SLOW);
+        }
+    }
+
+    /** @return {calls, failures, slow calls} within the window ending now */
+    long[] snapshot(long nowNanos) {
+        final long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        final long[] result = new long[3];
+        for (int i = 0; i < buckets; i++) {
+            final int base = i * FIELDS;
+            final long e = data.get(base + EPOCH);
+            if (e > epoch - buckets && e <= epoch) {
+                result[0] += data.get(base + CALLS);
+                result[1] += data.get(base + FAILURES);
+                result[2] += data.get(base + SLOW);
+            }
+        }
+        return result;
+    }
+}
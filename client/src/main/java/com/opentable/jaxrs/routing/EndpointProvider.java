@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Resolves a logical service name, the host part of a {@code lb://service/path} URI, to the
+ * endpoints currently serving it.  Called on every routed request, so it must be cheap and thread safe;
+ * implementations that talk to a registry should cache.  Return the same list instance for as long as the
+ * endpoints do not change: the balancer only rebuilds its view of a service when handed a different one.
+ */
+@FunctionalInterface
+public interface EndpointProvider {
+    /**
+     * @param serviceName the logical service
+     * @return base URIs such as {@code http://10.0.0.1:8080}, empty if the service is unknown
+     */
+    List<URI> getEndpoints(String serviceName);
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.opentable.jaxrs.OutstandingRequests;
+
+/**
+ * What the balancer knows about one endpoint: requests outstanding and a "peak" exponentially weighted
+ * moving average of latency.  A sample above the average replaces it at once, so an endpoint that slows
+ * down is avoided straight away; otherwise the average decays towards new samples with time rather than
+ * sample count.  The decay also applies while nothing is sampled, so an endpoint that was slow a while
+ * ago is tried again instead of being shunned forever.
+ *
+ * <p>Outstanding requests are counted by {@link OutstandingRequests}, like the in-flight metric.  A request
+ * that fails in the transport charges the endpoint the expiry as its latency, so an endpoint that refuses
+ * connections quickly does not look fast; one that is never heard of again is written off once older than
+ * the expiry, and charged the same.
+ */
+final class EndpointStats {
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final URI endpoint;
+    private final long expiryNanos;
+    private final OutstandingRequests outstanding;
+
+    // guarded by this
+    private double ewmaNanos;
+    private long lastSampleNanos;
+
+    EndpointStats(URI endpoint, long expiryNanos) {
+        this.endpoint = endpoint;
+        this.expiryNanos = expiryNanos;
+        this.outstanding = new OutstandingRequests(Duration.ofNanos(expiryNanos), expired -> record(System.nanoTime(), expiryNanos));
+    }
+
+    URI getEndpoint() {
+        return endpoint;
+    }
+
+    Ticket start(long nowNanos) {
+        return new Ticket(outstanding.start(nowNanos));
+    }
+
+    int getOutstanding(long nowNanos) {
+        return outstanding.get(nowNanos);
+    }
+
+    synchronized double getEwmaNanos(long nowNanos) {
+        return ewmaNanos * decay(nowNanos);
+    }
+
+    /** Lower is better: latency scaled by the queue a new request would join. */
+    double cost(long nowNanos) {
+        return (getEwmaNanos(nowNanos) + 1) * (getOutstanding(nowNanos) + 1);
+    }
+
+    synchronized void record(long nowNanos, long latencyNanos) {
+        final double weight = decay(nowNanos);
+        final double decayed = ewmaNanos * weight;
+        ewmaNanos = latencyNanos > decayed ? latencyNanos : decayed + latencyNanos * (1 - weight);
+        lastSampleNanos = nowNanos;
+    }
+
+    /** Called holding the lock. */
+    private double decay(long nowNanos) {
+        return Math.exp(-Math.max(0, nowNanos - lastSampleNanos) / DECAY_NANOS);
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointStats[" + endpoint + ", ewma=" + TimeUnit.NANOSECONDS.toMicros((long) getEwmaNanos(System.nanoTime())) + "us, outstanding=" + getOutstanding(System.nanoTime()) + "]";
+    }
+
+    final class Ticket {
+        private final OutstandingRequests.Ticket ticket;
+
+        Ticket(OutstandingRequests.Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        EndpointStats getStats() {
+            return EndpointStats.this;
+        }
+
+        /** Record the response; does nothing if the ticket already expired. */
+        void finish(long nowNanos) {
+            if (ticket.finish()) {
+                record(nowNanos, nowNanos - ticket.getStartNanos());
+            }
+        }
+
+        /** Record a failure in the transport, as though it took the whole expiry. */
+        void fail(long nowNanos) {
+            if (ticket.finish()) {
+                record(nowNanos, Math.max(expiryNanos, nowNanos - ticket.getStartNanos()));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Endpoints read from a properties file, one service per line, endpoints comma separated:
+ * <pre>
+ * menus = http://10.0.0.1:8080, http://10.0.0.2:8080
+ * </pre>
+ * The file is re-read when its modification time changes, checked at most once per
+ * {@code checkInterval}.  If it cannot be read the last good contents stay in use.
+ */
+public class FileEndpointProvider implements EndpointProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(FileEndpointProvider.class);
+    private static final Splitter SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final Path file;
+    private final long checkIntervalNanos;
+    private final AtomicLong lastCheck = new AtomicLong();
+    private volatile long lastModified = Long.MIN_VALUE;
+    private volatile Map<String, List<URI>> endpoints = ImmutableMap.of();
+
+    public FileEndpointProvider(Path file) {
+        this(file, Duration.ofSeconds(1));
+    }
+
+    public FileEndpointProvider(Path file, Duration checkInterval) {
+        this.file = file;
+        this.checkIntervalNanos = checkInterval.toNanos();
+        this.lastCheck.set(System.nanoTime() - checkIntervalNanos);
+        reloadIfChanged();
+    }
+
+    @Override
+    public List<URI> getEndpoints(String serviceName) {
+        final long now = System.nanoTime();
+        final long last = lastCheck.get();
+        if (now - last >= checkIntervalNanos && lastCheck.compareAndSet(last, now)) {
+            reloadIfChanged();
+        }
+        return endpoints.getOrDefault(serviceName, ImmutableList.of());
+    }
+
+    private void reloadIfChanged() {
+        try {
+            final long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified) {
+                return;
+            }
+            final Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            final ImmutableMap.Builder<String, List<URI>> builder = ImmutableMap.builder();
+            for (final String service : properties.stringPropertyNames()) {
+                builder.put(service, SPLITTER.splitToList(properties.getProperty(service)).stream()
+                        .map(URI::create)
+                        .collect(ImmutableList.toImmutableList()));
+            }
+            endpoints = builder.build();
+            lastModified = modified;
+            LOG.debug("Loaded endpoints {} from {}", endpoints, file);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Unable to load endpoints from {}, keeping {}", file, endpoints, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileEndpointProvider[" + file + "]";
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.TransportFailures;
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+
+/**
+ * Routes requests for logical URIs such as {@code lb://menus/v1/menu/42} to one of the endpoints
+ * an {@link EndpointProvider} lists for the service ({@code menus}), chosen by a {@link LoadBalancingStrategy}.
+ * Requests for any other scheme pass through untouched.
+ *
+ * <p>Each client keeps its own latency and outstanding request statistics per endpoint, so its
+ * connections spread according to how each endpoint is actually doing for it.  The filter runs after
+ * the other built-in request filters, so caching and coalescing see the logical URI; once the response
+ * arrives the request URI is set back to the logical one and the endpoint used is left in
+ * {@link #ENDPOINT_PROPERTY}.
+ *
+ * <p>Instruments, tagged like those of {@link ClientMetricsFeature}:
+ * <ul>
+ * <li>{@value #ROUTED} &ndash; requests sent to each endpoint, additionally tagged {@code endpoint=host:port}</li>
+ * </ul>
+ */
+public class LoadBalancingFeature implements Feature {
+    public static final String SCHEME = "lb";
+    public static final String ROUTED = "jaxrs.client.routing.requests";
+    /** Request property holding the endpoint {@link URI} a routed request was sent to. */
+    public static final String ENDPOINT_PROPERTY = "ot.jaxrs.routing.endpoint";
+
+    static final int PRIORITY = Priorities.USER + 2000;
+    static final Duration OUTSTANDING_EXPIRY = Duration.ofMinutes(1);
+
+    private static final String LOGICAL_URI_PROPERTY = LoadBalancingFeature.class.getName() + ".logical-uri";
+    private static final String TICKET_PROPERTY = LoadBalancingFeature.class.getName() + ".ticket";
+
+    private final EndpointProvider provider;
+    private final LoadBalancingStrategy strategy;
+
+    public LoadBalancingFeature(EndpointProvider provider) {
+        this(provider, LoadBalancingStrategy.POWER_OF_TWO_CHOICES);
+    }
+
+    public LoadBalancingFeature(EndpointProvider provider, LoadBalancingStrategy strategy) {
+        this.provider = provider;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(new LoadBalancingFilter(provider, strategy,
+                ClientMetricsFeature.registry(context.getConfiguration()),
+                ClientMetricsFeature.tags(context.getConfiguration())));
+        return true;
+    }
+
+    @Priority(PRIORITY)
+    static class LoadBalancingFilter implements ClientRequestFilter, ClientResponseFilter {
+        private final EndpointProvider provider;
+        private final LoadBalancingStrategy strategy;
+        private final ClientMetricRegistry registry;
+        private final Map<String, String> tags;
+        private final ConcurrentMap<String, Resolved> services = new ConcurrentHashMap<>();
+
+        LoadBalancingFilter(EndpointProvider provider, LoadBalancingStrategy strategy,
+                ClientMetricRegistry registry, Map<String, String> tags) {
+            this.provider = provider;
+            this.strategy = strategy;
+            this.registry = registry;
+            this.tags = tags;
+        }
+
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            final URI logical = request.getUri();
+            if (!SCHEME.equalsIgnoreCase(logical.getScheme())) {
+                return;
+            }
+            final String service = logical.getHost();
+            final List<URI> uris = provider.getEndpoints(service);
+            if (uris.isEmpty()) {
+                throw new ProcessingException("No endpoints for service '" + service + "' from " + provider);
+            }
+            Resolved resolved = services.get(service);
+            // providers hand out the same list until the endpoints change, so this rarely takes the lock
+            if (resolved == null || resolved.source != uris) {
+                resolved = services.compute(service, (s, previous) ->
+                        previous != null && previous.source == uris ? previous : new Resolved(uris, previous));
+            }
+
+            final long now = System.nanoTime();
+            final EndpointStats chosen = strategy.choose(resolved.stats, now);
+            request.setProperty(LOGICAL_URI_PROPERTY, logical);
+            request.setProperty(ENDPOINT_PROPERTY, chosen.getEndpoint());
+            request.setUri(rewrite(logical, chosen.getEndpoint()));
+            // still routed, so it opens a connection to a real endpoint, but kept out of the statistics
+            if (ConnectionWarmUp.isWarmUp(request)) {
+                return;
+            }
+            resolved.routed.get(chosen.getEndpoint()).increment();
+            final EndpointStats.Ticket ticket = chosen.start(now);
+            request.setProperty(TICKET_PROPERTY, ticket);
+            TransportFailures.onFailure(request, failure -> ticket.fail(System.nanoTime()));
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+            final Object ticket = request.getProperty(TICKET_PROPERTY);
+            if (ticket instanceof EndpointStats.Ticket) {
+                ((EndpointStats.Ticket) ticket).finish(System.nanoTime());
+            }
+            final Object logical = request.getProperty(LOGICAL_URI_PROPERTY);
+            if (logical instanceof URI) {
+                request.setUri((URI) logical);
+            }
+        }
+
+        /** {@code lb://service/a/b?c} on {@code http://host:port/prefix} becomes {@code http://host:port/prefix/a/b?c}. */
+        static URI rewrite(URI logical, URI endpoint) {
+            final String base = endpoint.toString();
+            final StringBuilder result = new StringBuilder(base.endsWith("/") ? base.substring(0, base.length() - 1) : base);
+            if (logical.getRawPath() != null) {
+                result.append(logical.getRawPath());
+            }
+            if (logical.getRawQuery() != null) {
+                result.append('?').append(logical.getRawQuery());
+            }
+            return URI.create(result.toString());
+        }
+
+        /** A service's current endpoints, keeping the statistics of those that were already known. */
+        private final class Resolved {
+            final List<URI> source;
+            final List<EndpointStats> stats;
+            final Map<URI, ClientMetricRegistry.Counter> routed;
+
+            Resolved(List<URI> source, Resolved previous) {
+                this.source = source;
+                final ImmutableList.Builder<EndpointStats> statsBuilder = ImmutableList.builder();
+                final Map<URI, ClientMetricRegistry.Counter> counters = new ConcurrentHashMap<>();
+                for (final URI endpoint : source) {
+                    final EndpointStats existing = previous == null ? null : previous.find(endpoint);
+                    statsBuilder.add(existing != null ? existing : new EndpointStats(endpoint, OUTSTANDING_EXPIRY.toNanos()));
+                    counters.computeIfAbsent(endpoint, e -> registry.counter(ROUTED, ImmutableMap.<String, String>builder()
+                            .putAll(tags)
+                            .put("endpoint", e.getAuthority())
+                            .build()));
+                }
+                this.stats = statsBuilder.build();
+                this.routed = counters;
+            }
+
+            EndpointStats find(URI endpoint) {
+                for (final EndpointStats s : stats) {
+                    if (s.getEndpoint().equals(endpoint)) {
+                        return s;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How {@link LoadBalancingFeature} picks among a service's endpoints.
+ */
+public enum LoadBalancingStrategy {
+    /**
+     * Pick two endpoints at random and take the cheaper, where cost is latency EWMA times
+     * outstanding requests.  Cheap, and avoids every client herding onto the same "best" endpoint.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        EndpointStats choose(List<EndpointStats> endpoints, long nowNanos) {
+            final int n = endpoints.size();
+            if (n == 1) {
+                return endpoints.get(0);
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int a = random.nextInt(n);
+            final int b = (a + 1 + random.nextInt(n - 1)) % n;
+            final EndpointStats first = endpoints.get(a);
+            final EndpointStats second = endpoints.get(b);
+            return first.cost(nowNanos) <= second.cost(nowNanos) ? first : second;
+        }
+    },
+    /**
+     * Take the endpoint with the fewest outstanding requests, breaking ties on latency EWMA.
+     * Examines every endpoint, so suits services with few instances.
+     */
+    LEAST_OUTSTANDING {
+        @Override
+        EndpointStats choose(List<EndpointStats> endpoints, long nowNanos) {
+            EndpointStats best = null;
+            int bestOutstanding = Integer.MAX_VALUE;
+            // start at a random offset so ties do not always go to the first endpoint
+            final int offset = ThreadLocalRandom.current().nextInt(endpoints.size());
+            for (int i = 0; i < endpoints.size(); i++) {
+                final EndpointStats candidate = endpoints.get((offset + i) % endpoints.size());
+                final int outstanding = candidate.getOutstanding(nowNanos);
+                if (best == null || outstanding < bestOutstanding
+                        || (outstanding == bestOutstanding && candidate.getEwmaNanos(nowNanos) < best.getEwmaNanos(nowNanos))) {
+                    best = candidate;
+                    bestOutstanding = outstanding;
+                }
+            }
+            return best;
+        }
+    };
+
+    /** @param endpoints never empty */
+    abstract EndpointStats choose(List<EndpointStats> endpoints, long nowNanos);
+}
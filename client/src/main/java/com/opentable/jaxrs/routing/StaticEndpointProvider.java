@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.routing;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A fixed set of endpoints per service, e.g. for tests or static deployments.
+ */
+public class StaticEndpointProvider implements EndpointProvider {
+    private final Map<String, List<URI>> endpoints;
+
+    public StaticEndpointProvider(Map<String, ? extends List<URI>> endpoints) {
+        final ImmutableMap.Builder<String, List<URI>> builder = ImmutableMap.builder();
+        endpoints.forEach((service, uris) -> builder.put(service, ImmutableList.copyOf(uris)));
+        this.endpoints = builder.build();
+    }
+
+    public static StaticEndpointProvider of(String serviceName, URI... endpoints) {
+        return new StaticEndpointProvider(ImmutableMap.of(serviceName, Arrays.asList(endpoints)));
+    }
+
+    @Override
+    public List<URI> getEndpoints(String serviceName) {
+        return endpoints.getOrDefault(serviceName, ImmutableList.of());
+    }
+
+    @Override
+    public String toString() {
+        return "StaticEndpointProvider" + endpoints;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LimitedExecutorServiceTest {
+    private final ExecutorService shared = Executors.newCachedThreadPool();
+
+    @After
+    public void after() {
+        shared.shutdownNow();
+    }
+
+    @Test(timeout = 10_000)
+    public void testConcurrencyAndQueueAreBounded() throws Exception {
+        final LimitedExecutorService limited = new LimitedExecutorService("test", shared, 2, 3);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            limited.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                completed.incrementAndGet();
+            });
+        }
+        try {
+            limited.execute(() -> { });
+            throw new AssertionError("expected rejection");
+        } catch (RejectedExecutionException expected) {
+            // 2 running + 3 queued
+        }
+
+        // both running tasks are in before any may finish
+        started.await();
+        release.countDown();
+        limited.shutdown();
+        assertTrue(limited.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(5, completed.get());
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, limited.getPending());
+    }
+
+    @Test(timeout = 10_000)
+    public void testShutdownLeavesSharedExecutorAlone() throws Exception {
+        final LimitedExecutorService limited = new LimitedExecutorService("test", shared, 1, 0);
+        limited.shutdown();
+        assertTrue(limited.isTerminated());
+        assertFalse(shared.isShutdown());
+        try {
+            limited.execute(() -> { });
+            throw new AssertionError("expected rejection");
+        } catch (RejectedExecutionException expected) {
+            // shut down
+        }
+        assertTrue(shared.submit(() -> true).get());
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Same as {@code org.openjdk.jmh.Main}, but always attaches the GC profiler so
+ * every run reports allocation rate ({@code gc.alloc.rate.norm} is bytes per request).
+ * All the usual JMH command line options still apply.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() { }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions cmdLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(cmdLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
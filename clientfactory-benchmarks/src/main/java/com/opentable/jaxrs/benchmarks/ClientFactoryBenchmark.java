@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.JsonClientFeature;
+import com.opentable.jaxrs.StandardFeatureGroup;
+
+/**
+ * End-to-end client benchmark.  The client is built through {@link JaxRsClientFactory#newClient}
+ * exactly as a service would, so the engine under test is whichever one the active
+ * Maven profile put on the classpath.
+ *
+ * <p>Throughput and sample-time (p50/p99) are reported for every method; run with
+ * {@code -prof gc} (the default in {@link BenchmarkMain}) for allocation rate per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+public class ClientFactoryBenchmark {
+    private static final int ASYNC_BATCH = 32;
+
+    private LoopbackServer server;
+    private Client client;
+    private WebTarget small;
+    private WebTarget echo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new LoopbackServer(16);
+        client = newFactory().newClient("benchmark", StandardFeatureGroup.PUBLIC);
+        small = client.target(server.getBaseUri()).path("small");
+        echo = client.target(server.getBaseUri()).path("echo");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public SmallPayload smallJsonGet() {
+        return small.request(MediaType.APPLICATION_JSON_TYPE).get(SmallPayload.class);
+    }
+
+    @Benchmark
+    public EchoPayload largePost(PostBody body) {
+        return echo.request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(body.bytes, MediaType.APPLICATION_OCTET_STREAM_TYPE), EchoPayload.class);
+    }
+
+    @Benchmark
+    public SmallPayload asyncGet() throws InterruptedException, ExecutionException {
+        return small.request(MediaType.APPLICATION_JSON_TYPE).async().get(SmallPayload.class).get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ASYNC_BATCH)
+    public int asyncGetBatch() throws InterruptedException, ExecutionException {
+        final List<Future<SmallPayload>> futures = new ArrayList<>(ASYNC_BATCH);
+        for (int i = 0; i < ASYNC_BATCH; i++) {
+            futures.add(small.request(MediaType.APPLICATION_JSON_TYPE).async().get(SmallPayload.class));
+        }
+        int sum = 0;
+        for (Future<SmallPayload> f : futures) {
+            sum += f.get().id;
+        }
+        return sum;
+    }
+
+    static JaxRsClientFactory newFactory() {
+        return newFactory(new BenchmarkClientConfig());
+    }
+
+    static JaxRsClientFactory newFactory(JaxRsClientConfig config) {
+        return new JaxRsClientFactory(name -> config)
+                .addFeatureToAllClients(JsonClientFeature.forMapper(new ObjectMapper()));
+    }
+
+    @State(Scope.Benchmark)
+    public static class PostBody {
+        @Param({"65536", "1048576"})
+        public int size;
+
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            bytes = new byte[size];
+            new Random(0).nextBytes(bytes);
+        }
+    }
+
+    /** Sized so the pool is never the bottleneck at the default thread count. */
+    static class BenchmarkClientConfig implements JaxRsClientConfig {
+        @Override
+        public int getConnectionPoolSize() {
+            return 256;
+        }
+
+        @Override
+        public int getHttpClientDefaultMaxPerRoute() {
+            return 256;
+        }
+
+        @Override
+        public int getAsyncQueueLimit() {
+            return 4096;
+        }
+    }
+
+    public static class SmallPayload {
+        public int id;
+        public String name;
+        public List<String> tags;
+        public boolean active;
+    }
+
+    public static class EchoPayload {
+        public long received;
+    }
+}
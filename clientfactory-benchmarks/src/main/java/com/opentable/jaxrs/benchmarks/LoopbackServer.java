@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server bound to the loopback interface.  Keeps the
+ * server side as cheap as possible so the numbers are dominated by the client.
+ *
+ * <ul>
+ * <li>{@code GET /small} returns a small, fixed JSON document</li>
+ * <li>{@code POST /echo} drains the request body and answers with its length as JSON</li>
+ * <li>{@code GET /slow/<millis>} answers like {@code /small}, but only after the given delay.
+ * The delay holds no server thread, so many slow calls can be outstanding at once.</li>
+ * <li>{@code GET /stream/<count>} returns {@code count} copies of the small document in the
+ * "standard wrapped results" style read by {@link com.opentable.jaxrs.StreamedJsonResponseConverter}</li>
+ * </ul>
+ */
+@SuppressWarnings("restriction")
+public class LoopbackServer implements Closeable {
+    static {
+        // the JDK server closes idle keep-alive connections beyond 200 (the default), which makes
+        // pooled clients with more connections than that fail on stale ones; must be set before it loads
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "4096");
+        }
+    }
+
+    static final String SMALL_JSON = "{\"id\":42,\"name\":\"benchmark\",\"tags\":[\"a\",\"b\",\"c\"],\"active\":true}";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService delayer;
+    private final Map<Integer, byte[]> streams = new ConcurrentHashMap<>();
+
+    public LoopbackServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("loopback-%d").build());
+        server.setExecutor(executor);
+        delayer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("loopback-delay-%d").build());
+
+        final byte[] small = SMALL_JSON.getBytes(StandardCharsets.UTF_8);
+        server.createContext("/small", exchange -> respond(exchange, small));
+        server.createContext("/echo", exchange -> {
+            final long read = drain(exchange.getRequestBody());
+            respond(exchange, ("{\"received\":" + read + "}").getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/slow/", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            final long delay = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+            delayer.schedule(() -> {
+                respond(exchange, small);
+                return null;
+            }, delay, TimeUnit.MILLISECONDS);
+        });
+        server.createContext("/stream/", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            final int count = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            respond(exchange, streams.computeIfAbsent(count, LoopbackServer::wrappedResults));
+        });
+        server.start();
+    }
+
+    public URI getBaseUri() {
+        final InetSocketAddress addr = server.getAddress();
+        return URI.create("http://" + addr.getHostString() + ":" + addr.getPort());
+    }
+
+    /** Serve a fixed JSON document, e.g. one too big to build per request, at {@code path}. */
+    public void addDocument(String path, byte[] json) {
+        server.createContext(path, exchange -> respond(exchange, json));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        delayer.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static byte[] wrappedResults(int count) {
+        final StringBuilder json = new StringBuilder(32 + count * (SMALL_JSON.length() + 1)).append("{\"results\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(SMALL_JSON);
+        }
+        return json.append("],\"success\":true}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        final byte[] buf = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.StreamedJsonResponseConverter;
+
+/**
+ * Reads one very large streamed "wrapped results" response of complex elements, binding on the
+ * calling thread ({@link StreamedJsonResponseConverter#read}) against binding on a pool
+ * ({@link StreamedJsonResponseConverter#readParallel}).  Each invocation reads the whole
+ * {@code megabytes} payload, so single shot time is reported; divide the size by it for throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(1)
+public class ParallelBindingBenchmark {
+    private static final TypeReference<Reservation> TYPE = new TypeReference<Reservation>() {};
+    private static final int DISTINCT_ELEMENTS = 1000;
+
+    @Param({"256"})
+    public int megabytes;
+
+    private LoopbackServer server;
+    private Client client;
+    private WebTarget document;
+    private StreamedJsonResponseConverter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        server = new LoopbackServer(2);
+        server.addDocument("/reservations", payload(mapper, megabytes * 1024L * 1024L));
+        client = ClientFactoryBenchmark.newFactory().newClient("benchmark", StandardFeatureGroup.PUBLIC);
+        document = client.target(server.getBaseUri()).path("reservations");
+        converter = new StreamedJsonResponseConverter(mapper);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void sequential(Blackhole bh) throws IOException {
+        converter.read(document.request(MediaType.APPLICATION_JSON_TYPE).get(), bh::consume, TYPE);
+    }
+
+    @Benchmark
+    public void parallel(Pool pool, Blackhole bh) throws IOException {
+        converter.readParallel(document.request(MediaType.APPLICATION_JSON_TYPE).get(), bh::consume, TYPE,
+                pool.executor, pool.threads * 64);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"2", "4", "8"})
+        public int threads;
+
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            executor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bind-%d").build());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    /** A results document of at least {@code size} bytes, cycling through a fixed set of random elements. */
+    private static byte[] payload(ObjectMapper mapper, long size) throws IOException {
+        final Random random = new Random(0);
+        final List<byte[]> elements = new ArrayList<>(DISTINCT_ELEMENTS);
+        for (int i = 0; i < DISTINCT_ELEMENTS; i++) {
+            elements.add(mapper.writeValueAsBytes(Reservation.random(i, random)));
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, size + 4096));
+        out.write("{\"results\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; out.size() < size; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(elements.get(i % DISTINCT_ELEMENTS));
+        }
+        out.write("],\"success\":true}".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    public static class Reservation {
+        public long id;
+        public String restaurant;
+        public String guest;
+        public int partySize;
+        public double total;
+        public boolean confirmed;
+        public List<Item> items;
+        public Map<String, String> attributes;
+
+        static Reservation random(long id, Random random) {
+            final Reservation r = new Reservation();
+            r.id = id;
+            r.restaurant = "restaurant-" + random.nextInt(10_000);
+            r.guest = "guest \u00e9\"" + Long.toHexString(random.nextLong());
+            r.partySize = 1 + random.nextInt(12);
+            r.total = random.nextDouble() * 500;
+            r.confirmed = random.nextBoolean();
+            r.items = new ArrayList<>();
+            for (int i = random.nextInt(20); i >= 0; i--) {
+                final Item item = new Item();
+                item.name = "item-" + random.nextInt(500);
+                item.quantity = 1 + random.nextInt(4);
+                item.price = random.nextDouble() * 60;
+                item.notes = new ArrayList<>();
+                for (int n = random.nextInt(3); n > 0; n--) {
+                    item.notes.add("note " + random.nextInt());
+                }
+                r.items.add(item);
+            }
+            r.attributes = new TreeMap<>();
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                r.attributes.put("attribute-" + i, Integer.toString(random.nextInt()));
+            }
+            return r;
+        }
+    }
+
+    public static class Item {
+        public String name;
+        public int quantity;
+        public double price;
+        public List<String> notes;
+    }
+}
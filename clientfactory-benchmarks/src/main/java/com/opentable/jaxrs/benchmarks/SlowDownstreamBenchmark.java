@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.benchmarks.ClientFactoryBenchmark.SmallPayload;
+
+/**
+ * Many concurrent async calls to a slow downstream: each invocation waits {@code delayMillis}
+ * for its response.  Compares the bounded platform thread pool with
+ * {@link com.opentable.jaxrs.JaxRsClientConfig#isVirtualThreads() virtual threads}; the GC profiler
+ * shows the memory side.  The platform pool gets a thread per concurrent call, so the comparison is
+ * of threading models rather than of a pool too small for the load.  On a JVM without virtual threads
+ * both modes use the platform pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class SlowDownstreamBenchmark {
+    private static final int CONCURRENT_CALLS = 512;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"50"})
+    public int delayMillis;
+
+    private LoopbackServer server;
+    private Client client;
+    private WebTarget slow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new LoopbackServer(4);
+        final boolean virtual = "virtual".equals(threads);
+        client = ClientFactoryBenchmark.newFactory(new ClientFactoryBenchmark.BenchmarkClientConfig() {
+            @Override
+            public int getConnectionPoolSize() {
+                return CONCURRENT_CALLS;
+            }
+
+            @Override
+            public int getHttpClientDefaultMaxPerRoute() {
+                return CONCURRENT_CALLS;
+            }
+
+            @Override
+            public int getExecutorThreads() {
+                return CONCURRENT_CALLS;
+            }
+
+            @Override
+            public boolean isVirtualThreads() {
+                return virtual;
+            }
+        }).newClient("slow-" + threads, StandardFeatureGroup.PUBLIC);
+        slow = client.target(server.getBaseUri()).path("slow").path(Integer.toString(delayMillis));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_CALLS)
+    public int concurrentSlowCalls() throws InterruptedException, ExecutionException {
+        final List<Future<SmallPayload>> futures = new ArrayList<>(CONCURRENT_CALLS);
+        for (int i = 0; i < CONCURRENT_CALLS; i++) {
+            futures.add(slow.request(MediaType.APPLICATION_JSON_TYPE).async().get(SmallPayload.class));
+        }
+        int sum = 0;
+        for (Future<SmallPayload> f : futures) {
+            sum += f.get().id;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.StreamedJsonResponseConverter;
+import com.opentable.jaxrs.benchmarks.ClientFactoryBenchmark.SmallPayload;
+
+/**
+ * Streamed "wrapped results" responses read with {@link StreamedJsonResponseConverter}, delivered
+ * one element per callback against in batches.  Scores are per element.
+ *
+ * <p>Each callback pays {@link #CALL_COST} tokens of {@link Blackhole#consumeCPU} on top of touching its
+ * elements, standing in for the fixed cost of a downstream write such as a database round trip;
+ * batching amortises it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(4)
+public class StreamedJsonBenchmark {
+    static final int ELEMENTS = 10_000;
+    static final long CALL_COST = 200;
+    private static final TypeReference<SmallPayload> TYPE = new TypeReference<SmallPayload>() {};
+
+    private LoopbackServer server;
+    private Client client;
+    private WebTarget stream;
+    private StreamedJsonResponseConverter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new LoopbackServer(8);
+        client = ClientFactoryBenchmark.newFactory().newClient("benchmark", StandardFeatureGroup.PUBLIC);
+        stream = client.target(server.getBaseUri()).path("stream").path(String.valueOf(ELEMENTS));
+        converter = new StreamedJsonResponseConverter(new ObjectMapper());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void perItem(Blackhole bh) throws IOException {
+        converter.read(stream.request(MediaType.APPLICATION_JSON_TYPE).get(), item -> {
+            Blackhole.consumeCPU(CALL_COST);
+            bh.consume(item);
+        }, TYPE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void batched(Batch batch, Blackhole bh) throws IOException {
+        converter.readBatches(stream.request(MediaType.APPLICATION_JSON_TYPE).get(), (List<SmallPayload> items) -> {
+            Blackhole.consumeCPU(CALL_COST);
+            for (SmallPayload item : items) {
+                bh.consume(item);
+            }
+        }, TYPE, batch.size, Long.MAX_VALUE);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+        @Param({"64", "1024"})
+        public int size;
+    }
+}
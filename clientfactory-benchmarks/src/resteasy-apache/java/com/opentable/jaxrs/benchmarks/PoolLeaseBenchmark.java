@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.MonitoredPoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+/**
+ * Cost of a single checkout and release against a warm pool, with no I/O.
+ * {@code plain} is the stock Apache pool; the difference to {@code monitored}
+ * is what the monitoring adds to every request.  Compare {@code gc.alloc.rate.norm}
+ * as well as the time per operation.
+ *
+ * <p>Only built with the {@code resteasy-apache} profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(4)
+public class PoolLeaseBenchmark {
+    private static final int POOL_SIZE = 16;
+
+    @Param({"plain", "monitored"})
+    public String manager;
+
+    private LoopbackServer server;
+    private PoolingHttpClientConnectionManager pool;
+    private HttpRoute route;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new LoopbackServer(1);
+        if ("monitored".equals(manager)) {
+            final MonitoredPoolingHttpClientConnectionManager monitored = new MonitoredPoolingHttpClientConnectionManager("benchmark");
+            monitored.setCheckoutWarnTime(Duration.ofSeconds(1));
+            monitored.bindMetrics(new InMemoryClientMetricRegistry());
+            pool = monitored;
+        } else {
+            pool = new PoolingHttpClientConnectionManager();
+        }
+        pool.setMaxTotal(POOL_SIZE);
+        pool.setDefaultMaxPerRoute(POOL_SIZE);
+
+        final URI uri = server.getBaseUri();
+        route = new HttpRoute(new HttpHost(uri.getHost(), uri.getPort()));
+
+        // open every connection up front so the measured loop only ever reuses them
+        final List<HttpClientConnection> warm = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            final HttpClientConnection conn = pool.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+            pool.connect(conn, route, 1000, new BasicHttpContext());
+            pool.routeComplete(conn, route, new BasicHttpContext());
+            warm.add(conn);
+        }
+        warm.forEach(conn -> pool.releaseConnection(conn, null, 1, TimeUnit.HOURS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public HttpClientConnection leaseAndRelease() throws Exception {
+        final HttpClientConnection conn = pool.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        pool.releaseConnection(conn, null, 1, TimeUnit.HOURS);
+        return conn;
+    }
+}
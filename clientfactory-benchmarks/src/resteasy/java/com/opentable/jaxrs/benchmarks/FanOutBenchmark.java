@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opentable.jaxrs.HttpProtocol;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.benchmarks.ClientFactoryBenchmark.SmallPayload;
+
+/**
+ * Fan-out to a single host: each invocation sends {@code FAN_OUT} concurrent async calls that each take
+ * {@code delayMillis} to answer.  Compares the HTTP/1.1 connection pool, which needs a connection per
+ * outstanding call, with {@link HttpProtocol#HTTP_2}, which multiplexes them over a few.  The server is
+ * an in-process Jetty accepting both HTTP/1.1 and cleartext HTTP/2 on one port.
+ *
+ * <p>Only built with the {@code resteasy} profile, the only engine with HTTP/2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class FanOutBenchmark {
+    private static final int FAN_OUT = 256;
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    public HttpProtocol protocol;
+
+    @Param({"0", "20"})
+    public int delayMillis;
+
+    private Server server;
+    private ScheduledExecutorService delayer;
+    private Client client;
+    private WebTarget small;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        delayer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("fan-out-delay-%d").build());
+        server = new Server();
+        final ServerConnector connector = new ServerConnector(server,
+                new HttpConnectionFactory(), new HTTP2CServerConnectionFactory(new HttpConfiguration()));
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        server.setHandler(new DelayedJsonHandler());
+        server.start();
+
+        client = ClientFactoryBenchmark.newFactory(new ClientFactoryBenchmark.BenchmarkClientConfig() {
+            @Override
+            public int getConnectionPoolSize() {
+                return FAN_OUT;
+            }
+
+            @Override
+            public int getHttpClientDefaultMaxPerRoute() {
+                return FAN_OUT;
+            }
+
+            @Override
+            public HttpProtocol getHttpProtocol() {
+                return protocol;
+            }
+        }).newClient("fan-out-" + protocol, StandardFeatureGroup.PUBLIC);
+        small = client.target("http://127.0.0.1:" + connector.getLocalPort()).path("small");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+        delayer.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FAN_OUT)
+    public int fanOut() throws InterruptedException, ExecutionException {
+        final List<Future<SmallPayload>> futures = new ArrayList<>(FAN_OUT);
+        for (int i = 0; i < FAN_OUT; i++) {
+            futures.add(small.request(MediaType.APPLICATION_JSON_TYPE).async().get(SmallPayload.class));
+        }
+        int sum = 0;
+        for (Future<SmallPayload> f : futures) {
+            sum += f.get().id;
+        }
+        return sum;
+    }
+
+    /** Answers like {@link LoopbackServer}'s {@code /small}, after {@code delayMillis} and without holding a thread. */
+    private class DelayedJsonHandler extends AbstractHandler {
+        private final byte[] body = LoopbackServer.SMALL_JSON.getBytes(StandardCharsets.UTF_8);
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+            baseRequest.setHandled(true);
+            final AsyncContext async = request.startAsync();
+            delayer.schedule(() -> {
+                response.setContentType(MediaType.APPLICATION_JSON);
+                response.setContentLength(body.length);
+                try {
+                    response.getOutputStream().write(body);
+                } catch (IOException e) {
+                    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+                async.complete();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
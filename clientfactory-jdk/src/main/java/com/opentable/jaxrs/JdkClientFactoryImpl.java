@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.net.CookieManager;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLParameters;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.jboss.resteasy.client.jaxrs.ProxyBuilder;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.ApplicationContext;
+
+import com.opentable.jaxrs.resilience.ResilientClientHttpEngine;
+
+/**
+ * The JDK implementation of ClientFactory: RESTEasy on {@link java.net.http.HttpClient}.
+ * No third party HTTP stack: each client has the JDK client's selector thread and its async
+ * executor, which may run on virtual threads or be a bounded view of a pool shared across clients.
+ * The JDK clients' own
+ * short, non-blocking tasks run on one small pool for the whole factory; they must not share the
+ * async executor, whose threads block reading entities the JDK client is still delivering.
+ *
+ * <p>Platform internal clients take their keys from the application's {@link TlsProvider}, if it has one,
+ * as with the Jetty engine.
+ */
+public class JdkClientFactoryImpl implements InternalClientFactory
+{
+    private static final Logger LOG = LoggerFactory.getLogger(JdkClientFactoryImpl.class);
+
+    private final Supplier<TlsProvider> tlsProvider;
+
+    /** Created on first use, guarded by {@code this}. */
+    private ThreadPoolExecutor sharedExecutor;
+    /** Created on first use, guarded by {@code this}. */
+    private ExecutorService transportExecutor;
+
+    public JdkClientFactoryImpl(ApplicationContext ctx) {
+        tlsProvider = ctx == null ? () -> null : () -> {
+            try {
+                return ctx.getBean(TlsProvider.class);
+            } catch (NoSuchBeanDefinitionException e) {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups) {
+        final Optional<ExecutorService> virtualThreads = config.isVirtualThreads()
+                ? VirtualThreadExecutor.create(clientName, config.getAsyncQueueLimit())
+                : Optional.empty();
+        final boolean shared = !virtualThreads.isPresent() && config.isSharedEventLoop();
+        final ExecutorService executor = virtualThreads
+                .orElseGet(() -> shared ? newSharedClientExecutor(clientName, config) : configureThreadPool(clientName, config));
+
+        final HttpClient.Builder httpClient = HttpClient.newBuilder()
+                .executor(getTransportExecutor())
+                .connectTimeout(config.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .version(config.getHttpProtocol() == HttpProtocol.HTTP_2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        if (config.isCookieHandlingEnabled()) {
+            httpClient.cookieHandler(new CookieManager());
+        }
+        if (!Strings.isNullOrEmpty(config.getProxyHost()) && config.getProxyPort() > 0) {
+            httpClient.proxy(ProxySelector.of(new InetSocketAddress(config.getProxyHost(), config.getProxyPort())));
+        }
+        if (config.isDisableTLS13()) {
+            httpClient.sslParameters(new SSLParameters(null, new String[] { "TLSv1.2" }));
+        }
+        final String userAgent = config.isRemoveUserAgent() || !config.isReplaceUserAgent() ? null : config.getUserAgent();
+        LOG.info("Setting User-Agent for the {} HTTP client to {}", clientName, userAgent);
+
+        final TlsProvider tls = featureGroups.contains(StandardFeatureGroup.PLATFORM_INTERNAL) ? tlsProvider.get() : null;
+        final ResteasyClientBuilderImpl builder = new JdkResteasyClientBuilder(httpClient, tls, client -> ResilientClientHttpEngine.wrap(
+                new JdkClientHttpEngine(client, config.getSocketTimeout(), userAgent), clientName, config));
+        // shutting down a view of the shared executor leaves the shared executor alone
+        builder.asyncExecutor(executor, true);
+        return builder;
+    }
+
+    @Override
+    public <T> T createClientProxy(Class<T> proxyType, WebTarget baseTarget) {
+        return ProxyBuilder.builder(proxyType, baseTarget).build();
+    }
+
+    /**
+     * @return a view of the shared executor that runs at most {@link JaxRsClientConfig#getExecutorThreads()}
+     * of this client's tasks at once and queues up to {@link JaxRsClientConfig#getAsyncQueueLimit()} more
+     */
+    private ExecutorService newSharedClientExecutor(String clientName, JaxRsClientConfig config) {
+        final int threads = CalculateThreads.calculateThreads(config.getExecutorThreads(), clientName);
+        return new LimitedExecutorService(clientName, getSharedExecutor(config), threads, config.getAsyncQueueLimit());
+    }
+
+    /**
+     * The shared executor grows to the largest {@link JaxRsClientConfig#getSharedEventLoopMaxThreads()} of
+     * its clients.  Its queue only ever holds the workers of the per-client views, so no more than the sum
+     * of their bounds.
+     */
+    private synchronized ThreadPoolExecutor getSharedExecutor(JaxRsClientConfig config) {
+        final int threads = config.getSharedEventLoopMaxThreads();
+        if (threads < 1) {
+            throw new IllegalArgumentException("Shared event loop needs at least one thread, got " + threads);
+        }
+        if (sharedExecutor == null) {
+            sharedExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat("jaxrs-jdk-shared-%s").setDaemon(true).build());
+            sharedExecutor.allowCoreThreadTimeOut(true);
+        } else if (threads > sharedExecutor.getMaximumPoolSize()) {
+            sharedExecutor.setMaximumPoolSize(threads);
+            sharedExecutor.setCorePoolSize(threads);
+        }
+        return sharedExecutor;
+    }
+
+    private synchronized ExecutorService getTransportExecutor() {
+        if (transportExecutor == null) {
+            transportExecutor = Executors.newCachedThreadPool(
+                    new ThreadFactoryBuilder().setNameFormat("jaxrs-jdk-transport-%s").setDaemon(true).build());
+        }
+        return transportExecutor;
+    }
+
+    private ExecutorService configureThreadPool(String clientName, JaxRsClientConfig config) {
+        final int threads = CalculateThreads.calculateThreads(config.getExecutorThreads(), clientName);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.HOURS,
+                requestQueue(config.getAsyncQueueLimit()),
+                new ThreadFactoryBuilder().setNameFormat(clientName + "-worker-%s").build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private BlockingQueue<Runnable> requestQueue(int size) {
+        return size == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(size);
+    }
+
+    /** Makes this engine available as "jdk"; listed in {@code META-INF/services}. */
+    public static final class Engine implements InternalClientEngine {
+        @Override
+        public String getName() {
+            return "jdk";
+        }
+
+        @Override
+        public InternalClientFactory newFactory(ApplicationContext ctx) {
+            return new JdkClientFactoryImpl(ctx);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.jboss.resteasy.client.jaxrs.engines.AsyncClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+import org.jboss.resteasy.client.jaxrs.internal.ClientResponse;
+import org.jboss.resteasy.util.CaseInsensitiveMap;
+
+/**
+ * RESTEasy engine on the JDK {@link HttpClient}.  Like the Jetty engine it is asynchronous: an
+ * {@code async()} or {@code rx()} invocation holds no thread until the response headers are in, after
+ * which the entity is read on the client's async executor.
+ *
+ * <p>Request entities are written to memory first, so filters and interceptors see the usual RESTEasy
+ * flow and the JDK client gets a known length.  Redirects are not followed, as with the Jetty engine.
+ *
+ * <p>The timeout bounds the wait for the response headers, and then each read of the entity; see
+ * {@link ReadTimeoutBodySubscriber}.
+ */
+class JdkClientHttpEngine implements AsyncClientHttpEngine {
+    /** Headers the JDK client sets itself and refuses to take from callers. */
+    private static final Set<String> RESTRICTED_HEADERS = ImmutableSet.of(
+            "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning");
+
+    private final HttpClient client;
+    private final Duration timeout;
+    private final String userAgent;
+    private final HttpResponse.BodyHandler<InputStream> bodyHandler;
+
+    /**
+     * @param timeout for the response headers, and then for each read of the entity
+     * @param userAgent sent when a request has none of its own, or null for none
+     */
+    JdkClientHttpEngine(HttpClient client, Duration timeout, String userAgent) {
+        this.client = client;
+        this.timeout = timeout;
+        this.userAgent = userAgent;
+        this.bodyHandler = info -> new ReadTimeoutBodySubscriber(timeout);
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return client.sslContext();
+    }
+
+    /**
+     * The JDK client always checks the host name itself and takes no verifier; {@link JdkResteasyClientBuilder}
+     * refuses to build a client that asks for one.
+     */
+    @Override
+    public HostnameVerifier getHostnameVerifier() {
+        return null;
+    }
+
+    @Override
+    public ClientResponse invoke(Invocation invocation) {
+        final ClientInvocation request = (ClientInvocation) invocation;
+        try {
+            return toClientResponse(request, client.send(toHttpRequest(request), bodyHandler));
+        } catch (IOException e) {
+            throw new ProcessingException("Unable to invoke request: " + e, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while invoking request", e);
+        }
+    }
+
+    @Override
+    public <T> Future<T> submit(ClientInvocation request, boolean buffered, InvocationCallback<T> callback, ResultExtractor<T> extractor) {
+        final CompletableFuture<T> result = submit(request, buffered, extractor, null);
+        if (callback != null) {
+            result.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    callback.completed(value);
+                } else {
+                    callback.failed(unwrap(failure));
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(ClientInvocation request, boolean buffered, ResultExtractor<T> extractor, ExecutorService executor) {
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final CompletableFuture<HttpResponse<InputStream>> response = client.sendAsync(httpRequest, bodyHandler);
+        // reading the entity may block, so keep it off the JDK client's own threads where there is an executor for it
+        final CompletableFuture<T> result = executor == null
+                ? response.thenApply(r -> extract(request, r, buffered, extractor))
+                : response.thenApplyAsync(r -> extract(request, r, buffered, extractor), executor);
+        final CompletableFuture<T> mapped = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                response.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        result.whenComplete((value, failure) -> {
+            if (failure == null) {
+                // cancelled meanwhile: nobody will close it
+                if (!mapped.complete(value) && value instanceof Response) {
+                    ((Response) value).close();
+                }
+            } else {
+                mapped.completeExceptionally(toProcessingException(unwrap(failure)));
+            }
+        });
+        return mapped;
+    }
+
+    private <T> T extract(ClientInvocation request, HttpResponse<InputStream> httpResponse, boolean buffered, ResultExtractor<T> extractor) {
+        final ClientResponse response = toClientResponse(request, httpResponse);
+        if (buffered) {
+            response.bufferEntity();
+        }
+        return extractor.extractResult(response);
+    }
+
+    @Override
+    public void close() {
+        // HttpClient is only closeable from Java 21; before that it goes when it is unreachable
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                throw new ProcessingException(e);
+            }
+        }
+    }
+
+    private HttpRequest toHttpRequest(ClientInvocation request) {
+        // write the entity first: writers and interceptors may still add headers
+        final HttpRequest.BodyPublisher body = request.getEntity() == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(requestContent(request));
+
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri())
+                .method(request.getMethod(), body);
+        if (timeout != null && !timeout.isZero()) {
+            builder.timeout(timeout);
+        }
+        final MultivaluedMap<String, String> headers = request.getHeaders().asMap();
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                header.getValue().forEach(value -> builder.header(header.getKey(), value));
+            }
+        }
+        if (userAgent != null && !headers.containsKey(HttpHeaders.USER_AGENT)) {
+            builder.header(HttpHeaders.USER_AGENT, userAgent);
+        }
+        final HttpRequest result = builder.build();
+        request.getMutableProperties().put(JaxRsClientProperties.ACTUAL_REQUEST, result);
+        return result;
+    }
+
+    private static byte[] requestContent(ClientInvocation request) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        request.getDelegatingOutputStream().setDelegate(buffer);
+        try {
+            request.writeRequestBody(request.getEntityStream());
+            request.getDelegatingOutputStream().close();
+        } catch (IOException e) {
+            throw new ProcessingException("Unable to write request entity", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static ClientResponse toClientResponse(ClientInvocation request, HttpResponse<InputStream> httpResponse) {
+        final JdkClientResponse response = new JdkClientResponse(request.getClientConfiguration(), httpResponse.body());
+        response.setProperties(request.getMutableProperties());
+        response.setStatus(httpResponse.statusCode());
+        final CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<>();
+        httpResponse.headers().map().forEach((name, values) -> {
+            // HTTP/2 pseudo headers such as :status
+            if (!name.startsWith(":")) {
+                headers.addAll(name, values);
+            }
+        });
+        response.setHeaders(headers);
+        return response;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return (t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null ? t.getCause() : t;
+    }
+
+    /** Transport failures become {@link ProcessingException}s; anything thrown while extracting the result is kept. */
+    private static RuntimeException toProcessingException(Throwable t) {
+        return t instanceof RuntimeException ? (RuntimeException) t : new ProcessingException("Unable to invoke request: " + t, t);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jboss.resteasy.client.jaxrs.internal.ClientConfiguration;
+import org.jboss.resteasy.client.jaxrs.internal.FinalizedClientResponse;
+import org.jboss.resteasy.tracing.RESTEasyTracingLogger;
+
+/**
+ * A response whose entity streams from a {@link java.net.http.HttpResponse} body.
+ */
+class JdkClientResponse extends FinalizedClientResponse {
+    private InputStream stream;
+
+    JdkClientResponse(ClientConfiguration configuration, InputStream stream) {
+        super(configuration, RESTEasyTracingLogger.empty());
+        this.stream = stream;
+    }
+
+    @Override
+    protected InputStream getInputStream() {
+        return stream;
+    }
+
+    @Override
+    protected void setInputStream(InputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void releaseConnection() throws IOException {
+        releaseConnection(true);
+    }
+
+    /**
+     * Closes the body without reading the rest of it, however large or slow it is.  A body read to the end
+     * leaves its HTTP/1.1 connection to the pool; one closed early makes the JDK client drop the connection,
+     * which is cheaper than draining an unknown amount of data.
+     */
+    @Override
+    public void releaseConnection(boolean consumeInputStream) throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
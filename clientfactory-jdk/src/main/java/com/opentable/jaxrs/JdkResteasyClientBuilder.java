@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.net.http.HttpClient;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.function.Function;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+
+/**
+ * Builds RESTEasy clients on the JDK {@link HttpClient}, creating the client only in {@link #build()} so
+ * that the TLS settings of the builder apply: an {@link SSLContext}, or else a key and trust store.
+ * A {@link TlsProvider}, for platform internal clients, takes precedence over both.
+ *
+ * <p>The JDK client always verifies host names and certificates itself, so a client asking for a
+ * {@link javax.net.ssl.HostnameVerifier}, a hostname verification policy or no trust manager is refused
+ * rather than silently built without it.
+ */
+class JdkResteasyClientBuilder extends ResteasyClientBuilderImpl {
+    private final HttpClient.Builder httpClient;
+    private final TlsProvider tlsProvider;
+    private final Function<HttpClient, ClientHttpEngine> engine;
+
+    /**
+     * @param tlsProvider keys to use and rotate, or null
+     * @param engine wraps the finished HTTP client
+     */
+    JdkResteasyClientBuilder(HttpClient.Builder httpClient, TlsProvider tlsProvider, Function<HttpClient, ClientHttpEngine> engine) {
+        this.httpClient = httpClient;
+        this.tlsProvider = tlsProvider;
+        this.engine = engine;
+    }
+
+    @Override
+    public ResteasyClient build() {
+        if (verifier != null || policy != HostnameVerificationPolicy.WILDCARD || disableTrustManager) {
+            throw new IllegalStateException("The jdk engine always verifies host names and certificates; "
+                    + "it takes no HostnameVerifier, hostname verification policy or disabled trust manager");
+        }
+        final SSLContext ssl = sslContext();
+        if (ssl != null) {
+            httpClient.sslContext(ssl);
+        }
+        httpEngine(engine.apply(httpClient.build()));
+        return super.build();
+    }
+
+    private SSLContext sslContext() {
+        if (tlsProvider != null) {
+            return RotatingTls.sslContext(tlsProvider);
+        }
+        if (sslContext != null) {
+            return sslContext;
+        }
+        if (clientKeyStore == null && truststore == null) {
+            return null;
+        }
+        try {
+            return sslContext(clientKeyStore, clientPrivateKeyPassword, truststore);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to set up TLS from the key and trust stores", e);
+        }
+    }
+
+    /** @param keyStore or null for no client certificate; @param trustStore or null for the JDK's */
+    static SSLContext sslContext(KeyStore keyStore, String password, KeyStore trustStore) throws GeneralSecurityException {
+        final SSLContext result = SSLContext.getInstance("TLS");
+        result.init(keyManagers(keyStore, password), trustManagers(trustStore), null);
+        return result;
+    }
+
+    static KeyManager[] keyManagers(KeyStore keyStore, String password) throws GeneralSecurityException {
+        if (keyStore == null) {
+            return null;
+        }
+        final KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        factory.init(keyStore, password == null ? new char[0] : password.toCharArray());
+        return factory.getKeyManagers();
+    }
+
+    static TrustManager[] trustManagers(KeyStore trustStore) throws GeneralSecurityException {
+        final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(trustStore);
+        return factory.getTrustManagers();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a response body like {@link HttpResponse.BodySubscribers#ofInputStream()}, but gives up on a read
+ * that gets no data for the read timeout.  The JDK client's own request timeout only covers waiting for the
+ * response headers, so without this a server that stalls mid-body would block the reader forever.
+ *
+ * <p>Closing the stream before the end cancels the body, and with it the connection.
+ */
+final class ReadTimeoutBodySubscriber implements HttpResponse.BodySubscriber<InputStream> {
+    private static final Object END = new Object();
+
+    /** Lists of buffers, {@link #END}, or the failure. */
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+    private final long readTimeoutNanos;
+    private final Body body = new Body();
+    private volatile Flow.Subscription subscription;
+
+    /** @param readTimeout zero or null for none */
+    ReadTimeoutBodySubscriber(Duration readTimeout) {
+        this.readTimeoutNanos = readTimeout == null ? 0 : readTimeout.toNanos();
+    }
+
+    @Override
+    public CompletionStage<InputStream> getBody() {
+        return CompletableFuture.completedFuture(body);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        subscription = s;
+        if (body.closed) {
+            s.cancel();
+        } else {
+            s.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        received.add(buffers);
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        received.add(failure);
+    }
+
+    @Override
+    public void onComplete() {
+        received.add(END);
+    }
+
+    private final class Body extends InputStream {
+        private volatile boolean closed;
+        private boolean ended;
+        private Iterator<ByteBuffer> batch = Collections.emptyIterator();
+        private ByteBuffer current;
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer buffer = current();
+            return buffer == null ? -1 : buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer buffer = current();
+            if (buffer == null) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return current == null ? 0 : current.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            final Flow.Subscription s = subscription;
+            if (s != null && !ended) {
+                s.cancel();
+            }
+        }
+
+        /** @return a buffer with data left, or null at the end of the body */
+        private ByteBuffer current() throws IOException {
+            if (closed) {
+                throw new IOException("Response body is closed");
+            }
+            while (current == null || !current.hasRemaining()) {
+                if (batch.hasNext()) {
+                    current = batch.next();
+                    continue;
+                }
+                if (ended) {
+                    return null;
+                }
+                final Object next = take();
+                if (next == END) {
+                    ended = true;
+                } else if (next instanceof Throwable) {
+                    ended = true;
+                    throw new IOException("Unable to read response body: " + next, (Throwable) next);
+                } else {
+                    @SuppressWarnings("unchecked")
+                    final List<ByteBuffer> buffers = (List<ByteBuffer>) next;
+                    batch = buffers.iterator();
+                    subscription.request(1);
+                }
+            }
+            return current;
+        }
+
+        private Object take() throws IOException {
+            try {
+                if (readTimeoutNanos <= 0) {
+                    return received.take();
+                }
+                final Object next = received.poll(readTimeoutNanos, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    close();
+                    throw new SocketTimeoutException("Read timed out after " + Duration.ofNanos(readTimeoutNanos));
+                }
+                return next;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new InterruptedIOException("Interrupted reading response body");
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link SSLContext} on the keys a {@link TlsProvider} hands out, following its rotations.  The JDK
+ * client fixes its context when it is built, so the context's key and trust managers delegate to the
+ * latest ones installed instead; handshakes from then on use the new keys.
+ */
+final class RotatingTls {
+    private static final Logger LOG = LoggerFactory.getLogger(RotatingTls.class);
+
+    private volatile X509ExtendedKeyManager keyManager;
+    private volatile X509ExtendedTrustManager trustManager;
+
+    private RotatingTls() { }
+
+    static SSLContext sslContext(TlsProvider provider) {
+        final RotatingTls tls = new RotatingTls();
+        try {
+            // the JDK's defaults until the provider installs its keys
+            tls.install(null, null);
+            provider.init((trustStore, keyStore) -> {
+                try {
+                    tls.install(trustStore, keyStore);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+                LOG.debug("Rotated client TLS keys to {}", keyStore);
+            });
+            final SSLContext result = SSLContext.getInstance("TLS");
+            result.init(new KeyManager[] { tls.new Keys() }, new TrustManager[] { tls.new Trust() }, null);
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void install(KeyStore trustStore, KeyStore keyStore) throws GeneralSecurityException {
+        final KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(keyStore, new char[0]);
+        final X509ExtendedKeyManager newKeyManager = only(X509ExtendedKeyManager.class, keys.getKeyManagers());
+        trustManager = only(X509ExtendedTrustManager.class, JdkResteasyClientBuilder.trustManagers(trustStore));
+        keyManager = newKeyManager;
+    }
+
+    private static <T> T only(Class<T> type, Object[] managers) {
+        if (managers != null) {
+            for (final Object manager : managers) {
+                if (type.isInstance(manager)) {
+                    return type.cast(manager);
+                }
+            }
+        }
+        throw new IllegalStateException("No " + type.getSimpleName() + " for the installed keys");
+    }
+
+    private final class Keys extends X509ExtendedKeyManager {
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return keyManager.getClientAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+            return keyManager.chooseClientAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+            return keyManager.chooseEngineClientAlias(keyType, issuers, engine);
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return keyManager.getServerAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            return keyManager.chooseServerAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+            return keyManager.chooseEngineServerAlias(keyType, issuers, engine);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return keyManager.getCertificateChain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            return keyManager.getPrivateKey(alias);
+        }
+    }
+
+    private final class Trust extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            trustManager.checkClientTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            trustManager.checkClientTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            trustManager.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return trustManager.getAcceptedIssuers();
+        }
+    }
+}
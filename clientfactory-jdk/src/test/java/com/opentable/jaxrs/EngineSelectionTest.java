@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.client.Client;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.junit.Test;
+
+import com.opentable.jaxrs.resilience.ResilientClientHttpEngine;
+
+/**
+ * The resteasy (Jetty) engine is a test dependency, so two engines are on the classpath here.
+ */
+public class EngineSelectionTest {
+    private final JaxRsClientFactory factory = new JaxRsClientFactory();
+
+    @Test
+    public void testClientsChooseTheirEngine() {
+        final Client jdk = factory.newClient("jdk", engine("jdk"), StandardFeatureGroup.PUBLIC);
+        final Client jetty = factory.newClient("jetty", engine("resteasy"), StandardFeatureGroup.PUBLIC);
+        try {
+            assertTrue(engine(jdk) instanceof JdkClientHttpEngine);
+            assertEquals("jdk", jdk.getConfiguration().getProperty(JaxRsClientFactory.ENGINE_PROPERTY));
+            assertEquals("JettyClientEngine", engine(jetty).getClass().getSimpleName());
+            assertEquals("resteasy", jetty.getConfiguration().getProperty(JaxRsClientFactory.ENGINE_PROPERTY));
+        } finally {
+            jdk.close();
+            jetty.close();
+        }
+    }
+
+    @Test
+    public void testDefaultEngineWhenSeveralArePresent() {
+        final Client client = factory.newClient("default", StandardFeatureGroup.PUBLIC);
+        try {
+            assertEquals(InternalClientFactoryHolder.DEFAULT_ENGINE, client.getConfiguration().getProperty(JaxRsClientFactory.ENGINE_PROPERTY));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testFactoriesAreReused() {
+        assertSame(InternalClientFactoryHolder.factory(null, "jdk"), InternalClientFactoryHolder.factory(null, "jdk"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEngine() {
+        factory.newClient("unknown", engine("netty"), StandardFeatureGroup.PUBLIC);
+    }
+
+    /** @return the engine under the retries and hedging every client's engine is wrapped in */
+    private static ClientHttpEngine engine(Client client) {
+        return ((ResilientClientHttpEngine) ((ResteasyClient) client).httpEngine()).getDelegate();
+    }
+
+    private static JaxRsClientConfig engine(String name) {
+        return new JaxRsClientConfig() {
+            @Override
+            public String getEngine() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpServer;
+
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("restriction")
+public class JdkClientHttpEngineTest {
+    private static final String BAD_URI = "http://example.invalid";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private Client client;
+    private WebTarget target;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/redirect", h -> {
+            h.getResponseHeaders().add(HttpHeaders.LOCATION, BAD_URI);
+            h.sendResponseHeaders(301, -1);
+            h.close();
+        });
+        server.createContext("/echo", h -> {
+            final byte[] body;
+            try (InputStream in = h.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            h.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+            h.getResponseHeaders().add("X-Agent", h.getRequestHeaders().getFirst(HttpHeaders.USER_AGENT));
+            h.getResponseHeaders().add("X-Custom", String.valueOf(h.getRequestHeaders().getFirst("X-Custom")));
+            h.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            h.getResponseBody().write(body);
+            h.close();
+        });
+        server.createContext("/stall", h -> {
+            h.sendResponseHeaders(200, 10);
+            h.getResponseBody().write("half".getBytes());
+            h.getResponseBody().flush();
+            try {
+                release.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            h.close();
+        });
+        server.start();
+
+        client = new JdkClientFactoryImpl(null).newBuilder("jdk", new JaxRsClientConfig() {}, ImmutableList.of()).build();
+        target = client.target("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        client.close();
+        server.stop(0);
+    }
+
+    @Test(timeout = 30000)
+    public void testNoRedirect() {
+        final Response r = target.path("redirect").request().get();
+        assertEquals(301, r.getStatus());
+        assertEquals(BAD_URI, r.getHeaderString(HttpHeaders.LOCATION));
+        r.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testHeadersAndEntity() {
+        final Response r = target.path("echo").request()
+                .header("X-Custom", "abc")
+                .post(Entity.entity("ping", MediaType.TEXT_PLAIN_TYPE));
+        assertEquals(200, r.getStatus());
+        assertEquals("abc", r.getHeaderString("x-custom"));
+        assertEquals("OT-HTTP-Client", r.getHeaderString("X-Agent"));
+        assertEquals("ping", r.readEntity(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testAsync() throws Exception {
+        final String result = target.path("echo").request().rx()
+                .post(Entity.entity("pong", MediaType.TEXT_PLAIN_TYPE), String.class)
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("pong", result);
+    }
+
+    @Test(timeout = 30000)
+    public void testStalledEntityTimesOut() {
+        final Client timed = new JdkClientFactoryImpl(null).newBuilder("jdk", new JaxRsClientConfig() {
+            @Override
+            public Duration getSocketTimeout() {
+                return Duration.ofMillis(500);
+            }
+        }, ImmutableList.of()).build();
+        try (Response r = timed.target(target.getUri()).path("stall").request().get()) {
+            assertEquals(200, r.getStatus());
+            r.readEntity(String.class);
+            fail("expected the read to time out");
+        } catch (ProcessingException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof SocketTimeoutException)) {
+                cause = cause.getCause();
+            }
+            assertTrue(String.valueOf(cause), cause instanceof SocketTimeoutException);
+        } finally {
+            timed.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testBuilderSslContextIsUsed() throws Exception {
+        final SSLContext ssl = SSLContext.getInstance("TLS");
+        ssl.init(null, null, null);
+        final Client withSsl = new JdkClientFactoryImpl(null).newBuilder("jdk", new JaxRsClientConfig() {}, ImmutableList.of())
+                .sslContext(ssl)
+                .build();
+        try {
+            assertSame(ssl, ((ResteasyClient) withSsl).httpEngine().getSslContext());
+        } finally {
+            withSsl.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    @SuppressWarnings("deprecation")
+    public void testSharedExecutorIsBoundedPerClient() throws Exception {
+        final JaxRsClientConfig shared = new JaxRsClientConfig() {
+            @Override
+            public boolean isSharedEventLoop() {
+                return true;
+            }
+
+            @Override
+            public int getAsyncQueueLimit() {
+                return 0;
+            }
+        };
+        final JdkClientFactoryImpl factory = new JdkClientFactoryImpl(null);
+        final ResteasyClient busy = (ResteasyClient) factory.newBuilder("busy", shared, ImmutableList.of()).build();
+        final ResteasyClient idle = (ResteasyClient) factory.newBuilder("idle", shared, ImmutableList.of()).build();
+        try {
+            final ExecutorService busyExecutor = busy.asyncInvocationExecutor();
+            final ExecutorService idleExecutor = idle.asyncInvocationExecutor();
+            assertNotSame(busyExecutor, idleExecutor);
+
+            final int threads = CalculateThreads.calculateThreads(shared.getExecutorThreads(), "busy");
+            for (int i = 0; i < threads; i++) {
+                busyExecutor.execute(() -> {
+                    try {
+                        release.await(20, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            try {
+                busyExecutor.execute(() -> { });
+                fail("expected the busy client's executor to be saturated");
+            } catch (RejectedExecutionException expected) {
+                // its share of the pool is used up
+            }
+            // but the other client still has its own
+            assertEquals("idle", idleExecutor.submit(() -> "idle").get(10, TimeUnit.SECONDS));
+
+            // closing a client only shuts down its view
+            busy.close();
+            assertTrue(busyExecutor.isShutdown());
+            assertFalse(idleExecutor.isShutdown());
+            assertEquals("pong", idle.target(target.getUri()).path("echo").request().rx()
+                    .post(Entity.entity("pong", MediaType.TEXT_PLAIN_TYPE), String.class)
+                    .toCompletableFuture()
+                    .get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            busy.close();
+            idle.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHostnameVerifierIsRefused() {
+        new JdkClientFactoryImpl(null).newBuilder("jdk", new JaxRsClientConfig() {}, ImmutableList.of())
+                .hostnameVerifier((host, session) -> true)
+                .build();
+    }
+
+    @Test(timeout = 30000, expected = ProcessingException.class)
+    public void testConnectionFailureIsProcessingException() {
+        final int port = server.getAddress().getPort();
+        server.stop(0);
+        client.target("http://127.0.0.1:" + port).request().get();
+    }
+}
@@ -34,16 +34,16 @@ import org.springframework.context.ApplicationContext;
 /**
  * Jersey implementation of InternalClientFactory
  */
-public class JaxRsClientFactoryImpl implements InternalClientFactory
+public class JerseyClientFactoryImpl implements InternalClientFactory
 {
-    private static final Logger LOG = LoggerFactory.getLogger(JaxRsClientFactoryImpl.class);
-    public JaxRsClientFactoryImpl(ApplicationContext ctx) {
+    private static final Logger LOG = LoggerFactory.getLogger(JerseyClientFactoryImpl.class);
+    public JerseyClientFactoryImpl(ApplicationContext ctx) {
     }
 
     @Override
     public ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups) {
         final JerseyClientBuilder builder = new JerseyClientBuilder();
-        builder.withConfig(createClientConfig(config));
+        builder.withConfig(createClientConfig(clientName, config));
         return builder.register(GZipEncoder.class);
     }
 
@@ -52,7 +52,7 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
         throw new UnsupportedOperationException("Jersey support for this feature is TODO");
     }
 
-    private ClientConfig createClientConfig(JaxRsClientConfig config)
+    private ClientConfig createClientConfig(String clientName, JaxRsClientConfig config)
     {
         if (config.isDisableTLS13()) {
             LOG.warn(("This implementation (jersey) doesn't support disabling TLSv13, and that could cause issues on Java 11!"));
@@ -66,7 +66,7 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
 
         final ClientConfig clientConfig = new ClientConfig();
         clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
-        clientConfig.connectorProvider(new ApacheConnectorProvider());
+        clientConfig.connectorProvider(new ResilientConnectorProvider(new ApacheConnectorProvider(), clientName, config));
         clientConfig.property(ClientProperties.CONNECT_TIMEOUT, (int) config.getConnectTimeout().toMillis());
         clientConfig.property(ClientProperties.READ_TIMEOUT, (int) config.getSocketTimeout().toMillis());
         return clientConfig;
@@ -81,4 +81,17 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
             super.shutdown();
         }
     }
+
+    /** Makes this engine available as "jersey"; listed in {@code META-INF/services}. */
+    public static final class Engine implements InternalClientEngine {
+        @Override
+        public String getName() {
+            return "jersey";
+        }
+
+        @Override
+        public InternalClientFactory newFactory(ApplicationContext ctx) {
+            return new JerseyClientFactoryImpl(ctx);
+        }
+    }
 }
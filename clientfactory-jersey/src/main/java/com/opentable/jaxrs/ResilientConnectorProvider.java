@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Configuration;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import com.opentable.jaxrs.resilience.Attempts;
+
+/**
+ * Applies the client's retries and hedges to what its connector sends, between the request and the response
+ * filters; see {@link Attempts}.  The connector only sends on the calling thread, so a hedged request's attempts
+ * run on a pool of the client's own, sized like its connection pool.  Requests that fail without a response are
+ * reported to {@link TransportFailures}.
+ */
+class ResilientConnectorProvider implements ConnectorProvider {
+    private final ConnectorProvider delegate;
+    private final String clientName;
+    private final Duration attemptTimeout;
+    private final int attemptThreads;
+
+    ResilientConnectorProvider(ConnectorProvider delegate, String clientName, JaxRsClientConfig config) {
+        this.delegate = delegate;
+        this.clientName = clientName;
+        this.attemptTimeout = Attempts.attemptTimeout(config);
+        this.attemptThreads = Math.max(1, config.getConnectionPoolSize());
+    }
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        return new ResilientConnector(delegate.getConnector(client, runtimeConfig));
+    }
+
+    /** @return whether {@code request} may be retried or hedged; warm-up requests go out once */
+    private static boolean isRetried(ClientRequest request) {
+        return Attempts.isEnabled(request.getConfiguration()) && !ConnectionWarmUp.isWarmUp(request);
+    }
+
+    private final class ResilientConnector implements Connector {
+        private final Connector connector;
+
+        // guarded by this
+        private ExecutorService attemptExecutor;
+
+        ResilientConnector(Connector connector) {
+            this.connector = connector;
+        }
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            try {
+                if (!isRetried(request)) {
+                    return connector.apply(request);
+                }
+                return Attempts.send(request.getConfiguration(), request.getMethod(), new Transport(request), attemptTimeout);
+            } catch (RuntimeException e) {
+                TransportFailures.failed(request::getProperty, e);
+                throw e;
+            }
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            if (!isRetried(request)) {
+                return connector.apply(request, new AsyncConnectorCallback() {
+                    @Override
+                    public void response(ClientResponse response) {
+                        callback.response(response);
+                    }
+
+                    @Override
+                    public void failure(Throwable failure) {
+                        TransportFailures.failed(request::getProperty, failure);
+                        callback.failure(failure);
+                    }
+                });
+            }
+            // like the Apache connector, answer on the thread Jersey runs the asynchronous invocation on
+            try {
+                callback.response(apply(request));
+            } catch (RuntimeException e) {
+                callback.failure(e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        private synchronized ExecutorService getAttemptExecutor() {
+            if (attemptExecutor == null) {
+                attemptExecutor = Attempts.newExecutor(clientName, attemptThreads);
+            }
+            return attemptExecutor;
+        }
+
+        @Override
+        public String getName() {
+            return connector.getName();
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (attemptExecutor != null) {
+                    attemptExecutor.shutdownNow();
+                }
+            }
+            connector.close();
+        }
+
+        /** The request as Jersey sends it; attempts after the first go out on copies. */
+        private final class Transport implements Attempts.Transport<ClientResponse> {
+            private final ClientRequest request;
+
+            Transport(ClientRequest request) {
+                this.request = request;
+            }
+
+            @Override
+            public CompletableFuture<ClientResponse> sendAsync(int attempt) {
+                final ClientRequest copy = attempt(attempt);
+                final CompletableFuture<ClientResponse> result = new CompletableFuture<>();
+                try {
+                    getAttemptExecutor().execute(() -> {
+                        try {
+                            final ClientResponse response = connector.apply(copy);
+                            if (!result.complete(response)) {
+                                response.close();
+                            }
+                        } catch (RuntimeException e) {
+                            result.completeExceptionally(e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                }
+                return result;
+            }
+
+            @Override
+            public ClientResponse send(int attempt) {
+                return connector.apply(attempt(attempt));
+            }
+
+            // a sent request has committed its entity stream
+            private ClientRequest attempt(int attempt) {
+                return attempt == 1 ? request : new ClientRequest(request);
+            }
+
+            @Override
+            public int getStatus(ClientResponse response) {
+                return response.getStatus();
+            }
+
+            @Override
+            public String getHeaderString(ClientResponse response, String name) {
+                return response.getHeaderString(name);
+            }
+
+            @Override
+            public void discard(ClientResponse response) {
+                response.close();
+            }
+
+            @Override
+            public Object getProperty(String name) {
+                return request.getProperty(name);
+            }
+
+            @Override
+            public void setProperty(String name, Object value) {
+                request.setProperty(name, value);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ package com.opentable.jaxrs;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.Collection;
+import java.util.Optional;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -48,35 +49,49 @@ import org.slf4j.LoggerFactory;
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
 import org.springframework.context.ApplicationContext;
 
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.resilience.ResilientClientHttpEngine;
+
 /**
  * The RESTEasy implementation of ClientFactory. Hides RESTEasy specific stuff
  * behind a common facade.
  */
-public class JaxRsClientFactoryImpl implements InternalClientFactory
+public class ResteasyApacheClientFactoryImpl implements InternalClientFactory
 {
-    private static final Logger LOG = LoggerFactory.getLogger(JaxRsClientFactoryImpl.class);
+    private static final Logger LOG = LoggerFactory.getLogger(ResteasyApacheClientFactoryImpl.class);
 
-    public JaxRsClientFactoryImpl(ApplicationContext ctx) {
+    public ResteasyApacheClientFactoryImpl(ApplicationContext ctx) {
        /* unused */
     }
 
     public ClientBuilder newBuilder(String clientName, JaxRsClientConfig config) {
-        final ExecutorService executorService = configureThreadPool(clientName, config);
+        return newBuilder(clientName, config, ClientMetricRegistry.NOOP);
+    }
+
+    private ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, ClientMetricRegistry metricRegistry) {
         final ResteasyClientBuilderImpl builder = new ResteasyClientBuilderImpl();
-        builder.asyncExecutor(executorService, true);
-        configureHttpEngine(clientName, builder, config);
+        configureHttpEngine(clientName, builder, config, metricRegistry);
         configureAuthenticationIfNeeded(clientName, builder, config);
-        final ExecutorService executor = configureThreadPool(clientName, config);
+        final ExecutorService executor = (config.isVirtualThreads()
+                ? VirtualThreadExecutor.create(clientName, config.getAsyncQueueLimit())
+                : Optional.<ExecutorService>empty())
+            .orElseGet(() -> configureThreadPool(clientName, config));
         builder.asyncExecutor(executor, true);
         return builder;
     }
 
     @Override
     public ClientBuilder newBuilder(final String clientName, final JaxRsClientConfig config, final Collection<JaxRsFeatureGroup> featureGroups) {
+        return newBuilder(clientName, config, featureGroups, ClientMetricRegistry.NOOP);
+    }
+
+    @Override
+    public ClientBuilder newBuilder(final String clientName, final JaxRsClientConfig config, final Collection<JaxRsFeatureGroup> featureGroups,
+                                    final ClientMetricRegistry metricRegistry) {
         if (config.isDisableTLS13()) {
             LOG.warn(("This implementation (resteasy-apache) doesn't support disabling TLSv13, and that could cause issues on Java 11!"));
         }
-        return newBuilder(clientName, config);
+        return newBuilder(clientName, config, metricRegistry);
     }
 
     @Override
@@ -86,12 +101,27 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
 
     public static void configureHttpEngine(String clientName, ResteasyClientBuilder clientBuilder, JaxRsClientConfig config)
     {
-        final HttpClient client = prepareHttpClientBuilder(clientName, config).build();
+        configureHttpEngine(clientName, clientBuilder, config, ClientMetricRegistry.NOOP);
+    }
+
+    public static void configureHttpEngine(String clientName, ResteasyClientBuilder clientBuilder, JaxRsClientConfig config,
+                                           ClientMetricRegistry metricRegistry)
+    {
+        final HttpClient client = prepareHttpClientBuilder(clientName, config, metricRegistry).build();
         final ApacheHttpClient43Engine engine = new HackedApacheHttpClient4Engine(config, client);
-        clientBuilder.httpEngine(engine);
+        clientBuilder.httpEngine(ResilientClientHttpEngine.wrap(engine, clientName, config));
     }
 
     public static HttpClientBuilder prepareHttpClientBuilder(String clientName, JaxRsClientConfig config)
+    {
+        return prepareHttpClientBuilder(clientName, config, ClientMetricRegistry.NOOP);
+    }
+
+    /**
+     * As {@link #prepareHttpClientBuilder(String, JaxRsClientConfig)}, additionally publishing
+     * connection pool gauges and checkout latency to the given registry.
+     */
+    public static HttpClientBuilder prepareHttpClientBuilder(String clientName, JaxRsClientConfig config, ClientMetricRegistry metricRegistry)
     {
         final HttpClientBuilder builder = HttpClientBuilder.create();
         /*
@@ -109,6 +139,7 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
         connectionManager.setCheckoutWarnTime(Duration.ofMillis(config.getConnectionPoolWarnTime().toMillis()));
         connectionManager.setMaxTotal(config.getConnectionPoolSize());
         connectionManager.setDefaultMaxPerRoute(config.getHttpClientDefaultMaxPerRoute());
+        connectionManager.bindMetrics(metricRegistry);
 
         LOG.info("Setting User-Agent for the {} HTTP client to {}", clientName, config.getUserAgent());
 
@@ -146,10 +177,15 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
     }
 
     private ExecutorService configureThreadPool(String clientName, JaxRsClientConfig config) {
-        return new ThreadPoolExecutor(1, CalculateThreads.calculateThreads(config.getExecutorThreads(), clientName), 1, TimeUnit.HOURS,
+        // a pool only grows past its core size once the queue is full, so size the core to the maximum
+        // and let idle threads go instead; otherwise async invocations run one at a time
+        final int threads = CalculateThreads.calculateThreads(config.getExecutorThreads(), clientName);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.HOURS,
                 requestQueue(config.getAsyncQueueLimit()),
                 new ThreadFactoryBuilder().setNameFormat(clientName + "-worker-%s").build(),
                 new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
        // clientBuilder.asyncExecutor(executor, true);
     }
 
@@ -197,4 +233,17 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
             }
         }
     }
+
+    /** Makes this engine available as "resteasy-apache"; listed in {@code META-INF/services}. */
+    public static final class Engine implements InternalClientEngine {
+        @Override
+        public String getName() {
+            return "resteasy-apache";
+        }
+
+        @Override
+        public InternalClientFactory newFactory(ApplicationContext ctx) {
+            return new ResteasyApacheClientFactoryImpl(ctx);
+        }
+    }
 }
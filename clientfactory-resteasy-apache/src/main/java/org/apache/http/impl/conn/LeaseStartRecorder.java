@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, allocation-free record of when in-progress checkouts started.
+ *
+ * <p>A leasing thread claims a slot with a single CAS, starting from a stripe chosen by
+ * its thread id, and clears it when the checkout completes.  The pool monitor scans
+ * the slots periodically to find checkouts that are <em>still</em> blocked.  If every
+ * probed slot is taken the lease simply goes untracked; the waiter count is kept elsewhere.
+ */
+final class LeaseStartRecorder {
+    /** Returned by {@link #start} when no slot could be claimed. */
+    static final int UNTRACKED = -1;
+    private static final int MAX_PROBES = 4;
+
+    private final AtomicLongArray starts;
+    private final int mask;
+
+    LeaseStartRecorder(int minSlots) {
+        final int slots = Integer.highestOneBit(Math.max(minSlots, MAX_PROBES) - 1) << 1;
+        this.starts = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+    }
+
+    /**
+     * @param nowNanos {@link System#nanoTime()} at the start of the checkout
+     * @return the slot to pass to {@link #finish}, or {@link #UNTRACKED}
+     */
+    int start(long nowNanos) {
+        // 0 marks a free slot
+        final long stamp = nowNanos == 0 ? 1 : nowNanos;
+        final int home = (int) Thread.currentThread().getId() & mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final int slot = (home + i) & mask;
+            if (starts.get(slot) == 0 && starts.compareAndSet(slot, 0, stamp)) {
+                return slot;
+            }
+        }
+        return UNTRACKED;
+    }
+
+    void finish(int slot) {
+        if (slot != UNTRACKED) {
+            starts.lazySet(slot, 0);
+        }
+    }
+
+    /** @return how many tracked checkouts have been in progress for longer than {@code thresholdNanos} */
+    int countOlderThan(long nowNanos, long thresholdNanos) {
+        int result = 0;
+        for (int i = 0; i < starts.length(); i++) {
+            final long start = starts.get(i);
+            if (start != 0 && nowNanos - start > thresholdNanos) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
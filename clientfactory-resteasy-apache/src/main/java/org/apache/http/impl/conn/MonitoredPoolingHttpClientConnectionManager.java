@@ -16,16 +16,18 @@ package org.apache.http.impl.conn;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
@@ -36,21 +38,45 @@ import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opentable.jaxrs.metrics.ClientMetricRegistry;
+import com.opentable.jaxrs.metrics.ExponentialHistogram;
+
 /**
  * A pooling connection manager that overrides
  * {@link PoolingHttpClientConnectionManager} with some simple monitoring that
  * connections aren't starved.
+ *
+ * <p>Pool occupancy and checkout latency are readable at any time through {@link #getTotalStats()},
+ * {@link #getRouteStats()} and {@link #getCheckoutLatency()}, and may be published as gauges
+ * with {@link #bindMetrics(ClientMetricRegistry)}.
  */
 public class MonitoredPoolingHttpClientConnectionManager extends PoolingHttpClientConnectionManager {
+    public static final String LEASED = "jaxrs.client.pool.leased";
+    public static final String PENDING = "jaxrs.client.pool.pending";
+    public static final String AVAILABLE = "jaxrs.client.pool.available";
+    public static final String MAX = "jaxrs.client.pool.max";
+    public static final String WAITERS = "jaxrs.client.pool.waiters";
+    public static final String CHECKOUT_LATENCY = "jaxrs.client.pool.checkout-latency";
+
     private static final Logger LOG = LoggerFactory.getLogger(MonitoredPoolingHttpClientConnectionManager.class);
     private static final long WARN_INTERVAL_SECONDS = 5;
+    private static final int LEASE_SLOTS = Math.max(64, 4 * Runtime.getRuntime().availableProcessors());
 
     private final String clientName;
     /** Time that we last noticed a blocked connection. */
-    private volatile Instant lastBlockedAt = Instant.now();
-    private volatile long warnTimeMs = -1;
+    private volatile Instant lastBlockedAt = Instant.EPOCH;
+    private volatile long warnTimeNanos = -1;
 
-    private final ScheduledThreadPoolExecutor scheduler;
+    private final ScheduledExecutorService scheduler;
+
+    /** Threads currently inside {@link #leaseConnection}. */
+    private final AtomicInteger waiters = new AtomicInteger();
+    /** Start times of checkouts in progress, scanned by the monitor to spot checkouts that are still blocked. */
+    private final LeaseStartRecorder leaseStarts = new LeaseStartRecorder(LEASE_SLOTS);
+    /** Checkout latency in microseconds. */
+    private final ExponentialHistogram checkoutLatency = new ExponentialHistogram();
+    private volatile ClientMetricRegistry.Histogram publishedCheckoutLatency = value -> { };
+    private volatile ClientMetricRegistry metricRegistry = ClientMetricRegistry.NOOP;
 
     private final Set<HttpRoute> knownRoutes = Sets.newConcurrentHashSet();
     /** Store the stack trace of connection allocation. */
@@ -59,37 +85,54 @@ public class MonitoredPoolingHttpClientConnectionManager extends PoolingHttpClie
     public MonitoredPoolingHttpClientConnectionManager(String clientName) {
         this.clientName = clientName;
 
-        scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1,
+        scheduler = Executors.newSingleThreadScheduledExecutor(
                 new ThreadFactoryBuilder()
                     .setDaemon(true)
                     .setNameFormat("jaxrs-client-" + clientName + "-monitor-%d")
                     .build());
-        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
         scheduler.scheduleAtFixedRate(this::warnIfStalling, WARN_INTERVAL_SECONDS, WARN_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
+    /**
+     * Publish pool gauges and the checkout latency histogram, tagged with {@code client}
+     * and, for per-route gauges, {@code route}.  Per-route gauges are registered the first
+     * time a route is leased from.
+     */
+    public void bindMetrics(ClientMetricRegistry registry) {
+        final Map<String, String> tags = ImmutableMap.of("client", clientName);
+        metricRegistry = registry;
+        publishedCheckoutLatency = registry.histogram(CHECKOUT_LATENCY, tags);
+        registerPoolGauges(registry, tags, this::getTotalStats);
+        registry.gauge(WAITERS, tags, waiters::get);
+        knownRoutes.forEach(this::registerRouteGauges);
+    }
+
     @Override
     protected HttpClientConnection leaseConnection(Future<CPoolEntry> future, long timeout, TimeUnit tunit)
     throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
-        final Optional<ScheduledFuture<?>> warnFuture;
-
-        if (warnTimeMs > 0 && warnTimeMs < timeout) {
-            final Runnable warnCommand = () -> lastBlockedAt = Instant.now();
-            warnFuture = Optional.of(scheduler.schedule(warnCommand, warnTimeMs, TimeUnit.MILLISECONDS));
-        } else {
-            warnFuture = Optional.empty();
+        final long start = System.nanoTime();
+        final HttpClientConnection result;
+        waiters.incrementAndGet();
+        final int slot = leaseStarts.start(start);
+        try {
+            result = super.leaseConnection(future, timeout, tunit);
+        } finally {
+            leaseStarts.finish(slot);
+            waiters.decrementAndGet();
         }
-
-        final Instant start = Instant.now();
-        final HttpClientConnection result = super.leaseConnection(future, timeout, tunit);
-        final Duration time = Duration.between(start, Instant.now());
+        final long time = System.nanoTime() - start;
+        final long micros = TimeUnit.NANOSECONDS.toMicros(time);
+        checkoutLatency.record(micros);
+        publishedCheckoutLatency.record(micros);
 
         if (future.isDone()) {
-            knownRoutes.add(future.get().getRoute());
+            final HttpRoute route = future.get().getRoute();
+            // contains() is a plain read; add() would lock the bin on every lease
+            if (!knownRoutes.contains(route) && knownRoutes.add(route)) {
+                registerRouteGauges(route);
+            }
         }
 
-        warnFuture.ifPresent(f -> f.cancel(false));
-
         Throwable t = null;
         // Log stack trace only if TRACE enabled
         if (LOG.isTraceEnabled()) {
@@ -97,8 +140,10 @@ public class MonitoredPoolingHttpClientConnectionManager extends PoolingHttpClie
             t.fillInStackTrace();
             allocationSites.put(result, t);
         }
-        if (warnTimeMs > 0 && time.toMillis() > warnTimeMs) {
-            LOG.warn("Checkout from pool \"{}\" took {}", clientName, time, t);
+        final long warnNanos = warnTimeNanos;
+        if (warnNanos > 0 && time > warnNanos) {
+            lastBlockedAt = Instant.now();
+            LOG.warn("Checkout from pool \"{}\" took {}", clientName, Duration.ofNanos(time), t);
         }
 
         return result;
@@ -110,10 +155,50 @@ public class MonitoredPoolingHttpClientConnectionManager extends PoolingHttpClie
         super.releaseConnection(managedConn, state, keepalive, tunit);
     }
 
+    /** @return a snapshot of the stats of every route that has been leased from recently */
+    public Map<HttpRoute, PoolStats> getRouteStats() {
+        final ImmutableMap.Builder<HttpRoute, PoolStats> result = ImmutableMap.builder();
+        knownRoutes.forEach(r -> result.put(r, getStats(r)));
+        return result.build();
+    }
+
+    /** @return the number of threads currently waiting to check out a connection */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    /** @return checkout latency, in microseconds, since this pool was created */
+    public ExponentialHistogram getCheckoutLatency() {
+        return checkoutLatency;
+    }
+
+    private void registerRouteGauges(HttpRoute route) {
+        final ClientMetricRegistry registry = metricRegistry;
+        if (registry != ClientMetricRegistry.NOOP) {
+            registerPoolGauges(registry, ImmutableMap.of("client", clientName, "route", String.valueOf(route.getTargetHost())),
+                    () -> getStats(route));
+        }
+    }
+
+    private static void registerPoolGauges(ClientMetricRegistry registry, Map<String, String> tags, Supplier<PoolStats> stats) {
+        gauge(registry, LEASED, tags, stats, PoolStats::getLeased);
+        gauge(registry, PENDING, tags, stats, PoolStats::getPending);
+        gauge(registry, AVAILABLE, tags, stats, PoolStats::getAvailable);
+        gauge(registry, MAX, tags, stats, PoolStats::getMax);
+    }
+
+    private static void gauge(ClientMetricRegistry registry, String name, Map<String, String> tags,
+                              Supplier<PoolStats> stats, ToIntFunction<PoolStats> field) {
+        registry.gauge(name, tags, () -> field.applyAsInt(stats.get()));
+    }
+
     private void warnIfStalling() {
+        final long warnNanos = warnTimeNanos;
+        if (warnNanos > 0 && leaseStarts.countOlderThan(System.nanoTime(), warnNanos) > 0) {
+            lastBlockedAt = Instant.now();
+        }
         if (lastBlockedAt.isAfter(Instant.now().minusSeconds(WARN_INTERVAL_SECONDS))) {
-            final int nBlockedThreads = scheduler.getQueue().size() - 1; // don't count the notification task itself
-            LOG.warn("Pool \"{}\" is stalling!  {} threads currently awaiting checkout.  Pool stats {}", clientName, nBlockedThreads, getTotalStats());
+            LOG.warn("Pool \"{}\" is stalling!  {} threads currently awaiting checkout.  Pool stats {}", clientName, waiters.get(), getTotalStats());
             knownRoutes.forEach(r ->
                 LOG.warn("Pool \"{}\" route \"{}\" stats {}", clientName, r, getStats(r)));
             allocationSites.forEach((c, t) -> LOG.warn("Connection {} allocation site", c, t));
@@ -133,6 +218,6 @@ public class MonitoredPoolingHttpClientConnectionManager extends PoolingHttpClie
     }
 
     public void setCheckoutWarnTime(Duration warnTime) {
-        this.warnTimeMs = warnTime.toMillis();
+        this.warnTimeNanos = warnTime.toNanos();
     }
 }
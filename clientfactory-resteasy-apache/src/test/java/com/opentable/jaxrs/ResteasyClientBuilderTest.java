@@ -17,17 +17,23 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Map;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import org.apache.http.impl.conn.MonitoredPoolingHttpClientConnectionManager;
 import org.junit.Test;
 
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
 @SuppressWarnings("restriction")
 public class ResteasyClientBuilderTest {
     private static final String BAD_URI = "http://example.invalid";
@@ -41,7 +47,7 @@ public class ResteasyClientBuilderTest {
             server.start();
 
             final InetSocketAddress addr = server.getAddress();
-            Client client = new JaxRsClientFactoryImpl(null).newBuilder("test", config).build();
+            Client client = new ResteasyApacheClientFactoryImpl(null).newBuilder("test", config).build();
             try {
                 Response r = client.target("http://" + addr.getHostString() + ":" + addr.getPort()).request()
                         .property(JaxRsClientProperties.FOLLOW_REDIRECTS, false)
@@ -56,6 +62,37 @@ public class ResteasyClientBuilderTest {
         }
     }
 
+    @Test
+    public void testPoolMetrics() throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1);
+        final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+        final Map<String, String> tags = ImmutableMap.of("client", "pooled");
+        try {
+            server.createContext("/", h -> {
+                h.sendResponseHeaders(200, 2);
+                h.getResponseBody().write(new byte[2]);
+                h.close();
+            });
+            server.start();
+
+            final InetSocketAddress addr = server.getAddress();
+            Client client = new ResteasyApacheClientFactoryImpl(null).newBuilder("pooled", config, ImmutableList.of(), registry).build();
+            try {
+                Response r = client.target("http://" + addr.getHostString() + ":" + addr.getPort()).request().get();
+                assertEquals(1, registry.getGauge(MonitoredPoolingHttpClientConnectionManager.LEASED, tags).getAsLong());
+                r.close();
+                assertEquals(0, registry.getGauge(MonitoredPoolingHttpClientConnectionManager.LEASED, tags).getAsLong());
+                assertEquals(config.getConnectionPoolSize(), registry.getGauge(MonitoredPoolingHttpClientConnectionManager.MAX, tags).getAsLong());
+                assertEquals(0, registry.getGauge(MonitoredPoolingHttpClientConnectionManager.WAITERS, tags).getAsLong());
+                assertEquals(1, registry.getHistogram(MonitoredPoolingHttpClientConnectionManager.CHECKOUT_LATENCY, tags).getCount());
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
     private static class RedirectHandler implements HttpHandler
     {
         @Override
@@ -9,6 +9,7 @@ import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import com.opentable.http.common.HttpClientBuilder;
@@ -20,6 +21,12 @@ import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.Configuration;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
 import org.jboss.resteasy.client.jaxrs.engines.jetty.JettyClientEngine;
@@ -29,8 +36,23 @@ import org.jboss.resteasy.client.jaxrs.internal.LocalResteasyProviderFactory;
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientImpl;
 import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opentable.jaxrs.resilience.ResilientClientHttpEngine;
+
+/**
+ * Builds RESTEasy clients on the Jetty {@link HttpClient}.
+ *
+ * <p>{@link JettyClientEngine} is an asynchronous engine: {@code async()} and {@code rx()} invocations
+ * are completed, entity included, from Jetty's response listeners, so an in-flight request holds no
+ * thread.  The async executor only runs Jetty's own tasks and user callbacks.
+ *
+ * <p>With {@link HttpProtocol#HTTP_2} the Jetty client runs on an HTTP/2 transport instead, multiplexing
+ * concurrent requests over as few connections as the servers' stream limits allow.
+ */
 public class JettyResteasyClientBuilder extends ClientBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(JettyResteasyClientBuilder.class);
 
     // Supported both via builder
     // and TLSProvider injection concept of Steven's
@@ -56,6 +78,10 @@ public class JettyResteasyClientBuilder extends ClientBuilder {
     private final  boolean cleanupExecutor;
     private final HttpClientCommonConfiguration httpClientCommonConfiguration;
     private final HttpClientBuilder httpClientBuilder;
+    private SharedJettyResources sharedResources;
+    private HttpProtocol httpProtocol = HttpProtocol.HTTP_1_1;
+    private String clientName;
+    private JaxRsClientConfig clientConfig;
 
     public JettyResteasyClientBuilder(boolean cleanupExecutor, HttpClientCommonConfiguration httpClientCommonConfiguration, List<Consumer<SslContextFactory>> sslContextFactoryCustomizers) {
         this.httpClientCommonConfiguration = httpClientCommonConfiguration;
@@ -66,13 +92,25 @@ public class JettyResteasyClientBuilder extends ClientBuilder {
 
     @Override
     public Client build() {
-        final HttpClient client = createHttpClient(
-                httpClientCommonConfiguration,
-                sslContextFactoryCustomizers == null ? new ArrayList<>() : sslContextFactoryCustomizers
-        );
-        final ClientConfiguration cc = new ClientConfiguration(getProviderFactory());
-        final ClientHttpEngine clientHttpEngine = new JettyClientEngine(client);
-        return new JettyRestEasyClient(clientHttpEngine, asyncExecutor, cleanupExecutor, scheduledExecutorService, cc);
+        if (sharedResources != null) {
+            // before the client starts, so it finds the shared pool running and leaves it alone
+            sharedResources.retain(clientConfig == null ? JaxRsClientConfig.DEFAULT : clientConfig);
+        }
+        try {
+            final HttpClient client = createHttpClient(
+                    httpClientCommonConfiguration,
+                    sslContextFactoryCustomizers == null ? new ArrayList<>() : sslContextFactoryCustomizers
+            );
+            final ClientConfiguration cc = new ClientConfiguration(getProviderFactory());
+            final ClientHttpEngine jettyEngine = new JettyClientEngine(client);
+            final ClientHttpEngine clientHttpEngine = clientConfig == null ? jettyEngine : ResilientClientHttpEngine.wrap(jettyEngine, clientName, clientConfig);
+            return new JettyRestEasyClient(clientHttpEngine, asyncExecutor, cleanupExecutor, scheduledExecutorService, cc, sharedResources);
+        } catch (RuntimeException e) {
+            if (sharedResources != null) {
+                sharedResources.release();
+            }
+            throw e;
+        }
     }
 
     private SslContextFactory createSslFactory(SslContextFactory factory, List<Consumer<SslContextFactory>> factoryCustomizers) {
@@ -89,15 +127,58 @@ public class JettyResteasyClientBuilder extends ClientBuilder {
     }
 
     private HttpClient createHttpClient(HttpClientCommonConfiguration httpClientCommonConfiguration, List<Consumer<SslContextFactory>> sslContextFactoryCustomizers) {
-        final HttpClient hc = httpClientBuilder.build(httpClientCommonConfiguration, httpClientCommonConfiguration.getThreadPoolName());
+        final HttpClient hc = httpProtocol == HttpProtocol.HTTP_2
+                ? createHttp2Client(httpClientCommonConfiguration)
+                : httpClientBuilder.build(httpClientCommonConfiguration, httpClientCommonConfiguration.getThreadPoolName());
         // These may be dynamically reconfigured in RestEasyBuilder, so we must always reapply.
         createSslFactory(hc.getSslContextFactory(), sslContextFactoryCustomizers);
-        hc.setExecutor(asyncExecutor);
+        if (sharedResources != null) {
+            sharedResources.apply(hc);
+        } else {
+            hc.setExecutor(asyncExecutor);
+        }
         hc.setConnectTimeout(connectTimeout.toMillis());
         hc.setAddressResolutionTimeout(connectTimeout.toMillis());
         return hc;
     }
 
+    /**
+     * The HTTP/2 counterpart of {@link HttpClientBuilder#build}, which only knows HTTP/1.1.
+     * Connections are only added once the existing ones have no streams left, so the per host
+     * maximum is rarely reached. The connection pool tweak ({@code isLimitConnectionPool},
+     * {@code maxUsages}) retires HTTP/1.1 connections and has no HTTP/2 equivalent, so it is
+     * reported rather than silently dropped.
+     */
+    private static HttpClient createHttp2Client(HttpClientCommonConfiguration config) {
+        final SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+        if (config.isDisableTLS13()) {
+            sslContextFactory.addExcludeProtocols("TLSv1.3");
+        }
+        if (config.isLimitConnectionPool()) {
+            LOG.warn("HTTP/2 client '{}' multiplexes requests and ignores the connection pool limit (maxUsages {}); "
+                    + "set limitConnectionPool to false to silence this", config.getThreadPoolName(), config.getMaxUsages());
+        }
+        final HttpClient hc = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), sslContextFactory);
+        hc.setMaxConnectionsPerDestination(config.getMaxConnectionsPerHost());
+        hc.setIdleTimeout(config.getIdleTimeout().toMillis());
+        hc.setFollowRedirects(config.isFollowRedirect());
+        if (config.isRemoveUserAgent()) {
+            hc.setUserAgentField(null);
+        } else if (config.isReplaceUserAgent()) {
+            hc.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, config.getUserAgent()));
+        }
+        if (!config.isCookieHandlingEnabled()) {
+            hc.setCookieStore(new HttpCookieStore.Empty());
+        }
+        if (config.isDisableCompression()) {
+            hc.getContentDecoderFactories().clear();
+        }
+        config.getProxyHost()
+                .filter(host -> !host.isEmpty() && config.getProxyPort() > 0)
+                .ifPresent(host -> hc.getProxyConfiguration().getProxies().add(new HttpProxy(host, config.getProxyPort())));
+        return hc;
+    }
+
     private ResteasyProviderFactory getProviderFactory() {
         if (providerFactory == null)
         {
@@ -244,9 +325,51 @@ public class JettyResteasyClientBuilder extends ClientBuilder {
         return this;
     }
 
+    /**
+     * Run the Jetty client on shared resources rather than on the async executor.
+     */
+    JettyResteasyClientBuilder sharedResources(SharedJettyResources sharedResources) {
+        this.sharedResources = sharedResources;
+        return this;
+    }
+
+    /**
+     * Speak the given HTTP version; see {@link JaxRsClientConfig#getHttpProtocol()}.
+     */
+    JettyResteasyClientBuilder httpProtocol(HttpProtocol httpProtocol) {
+        this.httpProtocol = httpProtocol;
+        return this;
+    }
+
+    /**
+     * Send requests with the retries and hedging the client's features ask for; see {@link ResilientClientHttpEngine}.
+     */
+    JettyResteasyClientBuilder clientConfig(String clientName, JaxRsClientConfig clientConfig) {
+        this.clientName = clientName;
+        this.clientConfig = clientConfig;
+        return this;
+    }
+
     public static class JettyRestEasyClient extends ResteasyClientImpl {
+        private final SharedJettyResources sharedResources;
+        private final AtomicBoolean released = new AtomicBoolean();
+
         protected JettyRestEasyClient(final ClientHttpEngine httpEngine, final ExecutorService asyncInvocationExecutor, final boolean cleanupExecutor, final ScheduledExecutorService scheduledExecutorService, final ClientConfiguration configuration) {
+            this(httpEngine, asyncInvocationExecutor, cleanupExecutor, scheduledExecutorService, configuration, null);
+        }
+
+        JettyRestEasyClient(final ClientHttpEngine httpEngine, final ExecutorService asyncInvocationExecutor, final boolean cleanupExecutor, final ScheduledExecutorService scheduledExecutorService, final ClientConfiguration configuration, final SharedJettyResources sharedResources) {
             super(httpEngine, asyncInvocationExecutor, cleanupExecutor, scheduledExecutorService, configuration);
+            this.sharedResources = sharedResources;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            // once the Jetty client has stopped using them
+            if (sharedResources != null && released.compareAndSet(false, true)) {
+                sharedResources.release();
+            }
         }
     }
 }
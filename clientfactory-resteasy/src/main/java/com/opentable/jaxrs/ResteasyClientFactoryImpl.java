@@ -45,12 +45,14 @@ import com.opentable.http.common.ImmutableHttpClientCommonConfiguration;
  * The RESTEasy implementation of ClientFactory. Hides RESTEasy specific stuff
  * behind a common facade.  Uses Jetty-Client.
  */
-public class JaxRsClientFactoryImpl implements InternalClientFactory
+public class ResteasyClientFactoryImpl implements InternalClientFactory
 {
-    private static final Logger LOG = LoggerFactory.getLogger(JaxRsClientFactoryImpl.class);
+    private static final Logger LOG = LoggerFactory.getLogger(ResteasyClientFactoryImpl.class);
     private Supplier<TlsProvider> provider;
+    /** Created on first use, guarded by {@code this}. */
+    private SharedJettyResources sharedResources;
 
-    public JaxRsClientFactoryImpl(ApplicationContext ctx) {
+    public ResteasyClientFactoryImpl(ApplicationContext ctx) {
 //        if (ctx != null && ClassUtils.isPresent("org.eclipse.jetty.server.Server", null)) {
             // TODO: figure out how to wire up thread pool
 //        }
@@ -69,6 +71,20 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
 
     @Override
     public ClientBuilder newBuilder(String clientName, JaxRsClientConfig config, Collection<JaxRsFeatureGroup> featureGroups) {
+        final Optional<ExecutorService> virtualThreads = config.isVirtualThreads()
+                ? VirtualThreadExecutor.create(clientName, config.getAsyncQueueLimit())
+                : Optional.empty();
+        // Jetty's selectors and callbacks stay on platform threads: the shared pool if asked for, or
+        // if the async executor is virtual
+        final SharedJettyResources shared = config.isSharedEventLoop() || virtualThreads.isPresent() ? getSharedResources() : null;
+        final ExecutorService executor;
+        if (virtualThreads.isPresent()) {
+            executor = virtualThreads.get();
+        } else if (shared != null) {
+            executor = shared.newClientExecutor(clientName, calculateThreads(clientName, config), config.getAsyncQueueLimit());
+        } else {
+            executor = configureThreadPool(clientName, config);
+        }
         HttpClientCommonConfiguration httpClientCommonConfiguration =
                 ImmutableHttpClientCommonConfiguration.builder()
                 .connectTimeout(config.getConnectTimeout())
@@ -86,7 +102,7 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
                 .threadPoolName(clientName)
                 .threadsPerPool(config.getExecutorThreads())
                  // Deviation 2: For complicated reasons (RestEasy api) we can't use the default QTP.
-                .executor(configureThreadPool(clientName, config))
+                .executor(executor)
                  // none of the others wire these up...
                 .proxyHost(Optional.ofNullable(config.getProxyHost()))
                 .proxyPort(config.getProxyPort())
@@ -97,6 +113,9 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
 
         final List<Consumer<SslContextFactory>> sslFactoryContextCustomizers = getSSlFactoryContextCustomizers(config, featureGroups);
         return new JettyResteasyClientBuilder(true, httpClientCommonConfiguration, sslFactoryContextCustomizers)
+                .sharedResources(shared)
+                .httpProtocol(config.getHttpProtocol())
+                .clientConfig(clientName, config)
                 .connectTimeout(config.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
                 .executorService((ExecutorService) httpClientCommonConfiguration.getExecutor().get());
     }
@@ -116,9 +135,20 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
         return ProxyBuilder.builder(proxyType, baseTarget).build();
     }
 
-    private ExecutorService configureThreadPool(String clientName, JaxRsClientConfig config) {
-        final int threads = new com.opentable.http.common.
+    synchronized SharedJettyResources getSharedResources() {
+        if (sharedResources == null) {
+            sharedResources = new SharedJettyResources();
+        }
+        return sharedResources;
+    }
+
+    private int calculateThreads(String clientName, JaxRsClientConfig config) {
+        return new com.opentable.http.common.
                 CalculateThreads().calculateThreads(config.getExecutorThreads(), clientName);
+    }
+
+    private ExecutorService configureThreadPool(String clientName, JaxRsClientConfig config) {
+        final int threads = calculateThreads(clientName, config);
         // We used a fixed thread pool here instead of a QueuedThreadPool (which would lead to lower memory)
         // Primarily because resteasy wants an ExecutorService not an Executor
         // Reexamine in future
@@ -150,4 +180,17 @@ public class JaxRsClientFactoryImpl implements InternalClientFactory
             }
         }));
     }
+
+    /** Makes this engine available as "resteasy"; listed in {@code META-INF/services}. */
+    public static final class Engine implements InternalClientEngine {
+        @Override
+        public String getName() {
+            return "resteasy";
+        }
+
+        @Override
+        public InternalClientFactory newFactory(ApplicationContext ctx) {
+            return new ResteasyClientFactoryImpl(ctx);
+        }
+    }
 }
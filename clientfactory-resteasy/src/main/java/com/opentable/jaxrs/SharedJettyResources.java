@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.util.concurrent.ExecutorService;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread pool, scheduler and buffer pool shared by every Jetty {@link HttpClient} built with
+ * {@link JaxRsClientConfig#isSharedEventLoop()}.
+ *
+ * <p>Everything is started before it is handed to a client, so Jetty treats it as an unmanaged
+ * bean and stopping one client never stops it.  Instead each client {@link #retain retains} it when
+ * built and {@link #release releases} it when closed; the pool and scheduler stop with the last
+ * client and start again with the next.  The pool grows on demand up to the largest
+ * {@link JaxRsClientConfig#getSharedEventLoopMaxThreads()} of its clients and retires idle threads
+ * down to {@link JaxRsClientConfig#getSharedEventLoopMinThreads()}.  Each client still gets its own
+ * selectors (Jetty does not share a {@code SelectorManager} between clients), but they run on this
+ * pool rather than on dedicated threads.
+ */
+class SharedJettyResources {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedJettyResources.class);
+    private static final int IDLE_TIMEOUT_MS = 60_000;
+
+    private final QueuedThreadPool executor;
+    private final Scheduler scheduler;
+    private final ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+
+    // guarded by this
+    private int clients;
+
+    SharedJettyResources() {
+        executor = new QueuedThreadPool();
+        executor.setIdleTimeout(IDLE_TIMEOUT_MS);
+        executor.setName("jaxrs-client-shared");
+        executor.setDaemon(true);
+        scheduler = new ScheduledExecutorScheduler("jaxrs-client-shared-scheduler", true);
+    }
+
+    /**
+     * Start sharing with a client built from {@code config}, starting the pool and scheduler for the
+     * first one.  Must come before {@link #apply}.
+     */
+    synchronized void retain(JaxRsClientConfig config) {
+        final int maxThreads = config.getSharedEventLoopMaxThreads();
+        final int minThreads = config.getSharedEventLoopMinThreads();
+        if (maxThreads < 1 || minThreads < 0 || minThreads > maxThreads) {
+            throw new IllegalArgumentException("Shared event loop needs 0 <= min threads <= max threads and at least one thread, got "
+                    + minThreads + " and " + maxThreads);
+        }
+        if (clients == 0) {
+            executor.setMaxThreads(maxThreads);
+            executor.setMinThreads(minThreads);
+            try {
+                executor.start();
+                scheduler.start();
+            } catch (Exception e) {
+                stop();
+                throw new IllegalStateException("Unable to start shared Jetty client resources", e);
+            }
+        } else {
+            executor.setMaxThreads(Math.max(executor.getMaxThreads(), maxThreads));
+            executor.setMinThreads(Math.max(executor.getMinThreads(), minThreads));
+        }
+        clients++;
+    }
+
+    /** Stop sharing with a closed client; the last one stops the pool and scheduler. */
+    synchronized void release() {
+        if (--clients == 0) {
+            stop();
+        }
+    }
+
+    private void stop() {
+        try {
+            scheduler.stop();
+            executor.stop();
+        } catch (Exception e) {
+            LOG.warn("Unable to stop shared Jetty client resources", e);
+        }
+    }
+
+    /** Share the thread pool, scheduler and buffers with the given, not yet started, client. */
+    void apply(HttpClient client) {
+        client.setExecutor(executor);
+        client.setScheduler(scheduler);
+        client.setByteBufferPool(byteBufferPool);
+    }
+
+    /**
+     * @return a view of the shared pool that runs at most {@code maxConcurrency} of this client's
+     * tasks at once, queues up to {@code queueLimit} more and rejects the rest
+     */
+    ExecutorService newClientExecutor(String clientName, int maxConcurrency, int queueLimit) {
+        return new LimitedExecutorService(clientName, executor, maxConcurrency, queueLimit);
+    }
+
+    QueuedThreadPool getExecutor() {
+        return executor;
+    }
+}
@@ -18,17 +18,34 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.junit.Test;
 
@@ -45,7 +62,7 @@ public class ResteasyClientBuilderTest {
             server.start();
 
             final InetSocketAddress addr = server.getAddress();
-            Client client = new JaxRsClientFactoryImpl(null).newBuilder("test", config, Collections.emptyList()).build();
+            Client client = new ResteasyClientFactoryImpl(null).newBuilder("test", config, Collections.emptyList()).build();
             final ExecutorService executor = ((ResteasyClient) client).asyncInvocationExecutor();
             try {
                 Response r = client.target("http://" + addr.getHostString() + ":" + addr.getPort()).request()
@@ -62,6 +79,164 @@ public class ResteasyClientBuilderTest {
         }
     }
 
+    /**
+     * The server answers nothing until every request has arrived, so this only passes if the
+     * client has far more requests in flight than it has threads.
+     */
+    @Test(timeout=30_000)
+    public void testAsyncInvocationsDoNotHoldThreads() throws Exception {
+        final int requests = 200;
+        final List<HttpExchange> held = new ArrayList<>();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), requests);
+        try {
+            server.createContext("/", h -> {
+                synchronized (held) {
+                    held.add(h);
+                    if (held.size() == requests) {
+                        for (HttpExchange e : held) {
+                            e.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+                            e.sendResponseHeaders(200, 2);
+                            e.getResponseBody().write("ok".getBytes());
+                            e.close();
+                        }
+                    }
+                }
+            });
+            server.start();
+
+            final InetSocketAddress addr = server.getAddress();
+            final JaxRsClientConfig wide = new JaxRsClientConfig() {
+                @Override
+                public int getHttpClientDefaultMaxPerRoute() {
+                    return requests;
+                }
+            };
+            Client client = new ResteasyClientFactoryImpl(null).newBuilder("test", wide, Collections.emptyList()).build();
+            try {
+                final List<CompletableFuture<String>> responses = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    responses.add(client.target("http://" + addr.getHostString() + ":" + addr.getPort()).request()
+                            .rx().get(String.class).toCompletableFuture());
+                }
+                CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).get(20, TimeUnit.SECONDS);
+                for (CompletableFuture<String> r : responses) {
+                    assertEquals("ok", r.get());
+                }
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test(timeout=30_000)
+    public void testHttp2MultiplexesConcurrentRequests() throws Exception {
+        final int requests = 50;
+        final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        final Server server = new Server();
+        final ServerConnector connector = new ServerConnector(server,
+                new HttpConnectionFactory(), new HTTP2CServerConnectionFactory(new HttpConfiguration()));
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                clientPorts.add(request.getRemotePort());
+                response.setContentType(MediaType.TEXT_PLAIN);
+                response.getWriter().write(request.getProtocol());
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        try {
+            final JaxRsClientConfig h2 = new JaxRsClientConfig() {
+                @Override
+                public HttpProtocol getHttpProtocol() {
+                    return HttpProtocol.HTTP_2;
+                }
+            };
+            Client client = new ResteasyClientFactoryImpl(null).newBuilder("test", h2, Collections.emptyList()).build();
+            try {
+                final List<CompletableFuture<String>> responses = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    responses.add(client.target("http://127.0.0.1:" + connector.getLocalPort()).request()
+                            .rx().get(String.class).toCompletableFuture());
+                }
+                for (CompletableFuture<String> r : responses) {
+                    assertEquals("HTTP/2.0", r.get(20, TimeUnit.SECONDS));
+                }
+                assertEquals(1, clientPorts.size());
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(timeout=30_000)
+    public void testSharedPoolStopsWithTheLastClient() throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1);
+        try {
+            server.createContext("/", h -> {
+                h.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+                h.sendResponseHeaders(200, 2);
+                h.getResponseBody().write("ok".getBytes());
+                h.close();
+            });
+            server.start();
+            final String uri = "http://127.0.0.1:" + server.getAddress().getPort();
+
+            final ResteasyClientFactoryImpl factory = new ResteasyClientFactoryImpl(null);
+            final QueuedThreadPool pool = factory.getSharedResources().getExecutor();
+            final Client small = factory.newBuilder("small", shared(2, 20), Collections.emptyList()).build();
+            final Client large = factory.newBuilder("large", shared(4, 40), Collections.emptyList()).build();
+            assertTrue(pool.isRunning());
+            assertEquals(40, pool.getMaxThreads());
+            assertEquals(4, pool.getMinThreads());
+            assertEquals("ok", small.target(uri).request().get(String.class));
+
+            large.close();
+            assertTrue(pool.isRunning());
+            assertEquals("ok", small.target(uri).request().get(String.class));
+            small.close();
+            assertTrue(pool.isStopped());
+
+            // the next client starts it again, sized afresh
+            final Client next = factory.newBuilder("next", shared(2, 20), Collections.emptyList()).build();
+            try {
+                assertTrue(pool.isRunning());
+                assertEquals(20, pool.getMaxThreads());
+                assertEquals("ok", next.target(uri).request().get(String.class));
+            } finally {
+                next.close();
+            }
+            assertTrue(pool.isStopped());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static JaxRsClientConfig shared(int minThreads, int maxThreads) {
+        return new JaxRsClientConfig() {
+            @Override
+            public boolean isSharedEventLoop() {
+                return true;
+            }
+
+            @Override
+            public int getSharedEventLoopMinThreads() {
+                return minThreads;
+            }
+
+            @Override
+            public int getSharedEventLoopMaxThreads() {
+                return maxThreads;
+            }
+        };
+    }
+
     private static class RedirectHandler implements HttpHandler
     {
         @Override
@@ -0,0 +1,237 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.cache.ResponseCache;
+import com.opentable.jaxrs.cache.ResponseCacheFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+import com.opentable.jaxrs.resilience.CircuitBreaker;
+import com.opentable.jaxrs.resilience.CircuitBreakerFeature;
+import com.opentable.jaxrs.resilience.CircuitBreakerOpenException;
+
+public class CircuitBreakerTest {
+    private static final byte[] HELLO = "Hello!\n".getBytes();
+    private static final Duration SLOW = Duration.ofMillis(200);
+    private static final Duration OPEN = Duration.ofMillis(300);
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final AtomicInteger status = new AtomicInteger(HttpURLConnection.HTTP_INTERNAL_ERROR);
+    private final AtomicInteger hits = new AtomicInteger();
+    private Client client;
+    private WebTarget target;
+    private Map<String, String> tags;
+
+    @Before
+    public void setup() {
+        server.handle("/hello", exchange -> {
+            hits.incrementAndGet();
+            TestServer.respond(exchange, status.get(), HELLO);
+        });
+        server.handle("/slow", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(SLOW.toMillis() * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+        server.handle("/cached", exchange -> {
+            hits.incrementAndGet();
+            exchange.getResponseHeaders().add(HttpHeaders.CACHE_CONTROL, "max-age=60");
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+
+        client = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, new ResponseCacheFeature(new ResponseCache(1 << 20)))
+                .newClient("guarded", new JaxRsClientConfig() {
+                    @Override
+                    public boolean isCircuitBreakerEnabled() {
+                        return true;
+                    }
+
+                    @Override
+                    public Duration getCircuitBreakerSlowCallDuration() {
+                        return SLOW;
+                    }
+
+                    @Override
+                    public Duration getCircuitBreakerOpenDuration() {
+                        return OPEN;
+                    }
+
+                    @Override
+                    public int getCircuitBreakerMinimumCalls() {
+                        return 4;
+                    }
+                }, StandardFeatureGroup.PUBLIC);
+        final String route = "127.0.0.1:" + server.getPort();
+        target = server.target(client);
+        tags = ImmutableMap.of("client", "guarded", "groups", "PUBLIC", "route", route);
+    }
+
+    @Test(timeout = 30000)
+    public void testFailuresOpenTheBreakerAndProbesCloseIt() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            try (Response response = target.path("hello").request().get()) {
+                assertEquals(500, response.getStatus());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), registry.getGauge(CircuitBreakerFeature.STATE, tags).getAsLong());
+
+        assertRejected();
+        assertEquals(4, hits.get());
+        assertEquals(1, registry.getCount(CircuitBreakerFeature.REJECTED, tags));
+
+        status.set(HttpURLConnection.HTTP_OK);
+        Thread.sleep(OPEN.toMillis() + 50);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Hello!\n", target.path("hello").request().get(String.class));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), registry.getGauge(CircuitBreakerFeature.STATE, tags).getAsLong());
+        assertEquals("Hello!\n", target.path("hello").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowCallsOpenTheBreaker() {
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Hello!\n", target.path("slow").request().get(String.class));
+        }
+        assertRejected();
+        assertEquals(4, hits.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testTransportFailuresOpenTheBreaker() throws Exception {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        final WebTarget refused = client.target("http://127.0.0.1:" + closedPort);
+        for (int i = 0; i < 4; i++) {
+            try {
+                refused.request().get(String.class);
+                fail("expected the connection to be refused");
+            } catch (ProcessingException expected) {
+                // counted as a failure, without waiting for it to count as slow
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), registry.getGauge(CircuitBreakerFeature.STATE,
+                ImmutableMap.of("client", "guarded", "groups", "PUBLIC", "route", "127.0.0.1:" + closedPort)).getAsLong());
+    }
+
+    @Test(timeout = 30000)
+    public void testCachedResponsesAreNotCounted() {
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Hello!\n", target.path("cached").request().get(String.class));
+        }
+        assertEquals(1, hits.get());
+        // three failures in four calls, not in twenty-three
+        for (int i = 0; i < 3; i++) {
+            try (Response response = target.path("hello").request().get()) {
+                assertEquals(500, response.getStatus());
+            }
+        }
+        assertRejected();
+    }
+
+    @Test
+    public void testCancelledProbesAreGivenBack() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final CircuitBreaker breaker = new CircuitBreaker(50, 100, Duration.ofSeconds(1), Duration.ofSeconds(5), 1);
+        long now = System.nanoTime();
+        breaker.tryAcquire(now).finish(now, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now += 6 * second;
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire(now).cancel();
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        for (int i = 0; i < 5; i++) {
+            breaker.tryAcquire(now).finish(now, false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenFailureReopens() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final CircuitBreaker breaker = new CircuitBreaker(50, 100, Duration.ofSeconds(1), Duration.ofSeconds(5), 2);
+        long now = System.nanoTime();
+        breaker.tryAcquire(now).finish(now, true);
+        breaker.tryAcquire(now).finish(now, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire(now + second));
+
+        now += 6 * second;
+        final CircuitBreaker.Permit probe = breaker.tryAcquire(now);
+        assertNotNull(probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        for (int i = 1; i < 5; i++) {
+            breaker.tryAcquire(now).finish(now, false);
+        }
+        assertNull("probes are limited", breaker.tryAcquire(now));
+        probe.finish(now, true);
+        probe.finish(now, true);
+        assertEquals("one failed probe in five is below the threshold",
+                CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void assertRejected() {
+        try {
+            target.path("hello").request().get(String.class);
+            fail("expected the breaker to be open");
+        } catch (ProcessingException e) {
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof CircuitBreakerOpenException) {
+                    return;
+                }
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.ExponentialHistogram;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+public class ClientMetricsTest {
+    private static final byte[] HELLO = "Hello!\n".getBytes();
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "metered", "groups", "PUBLIC");
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private Client client;
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        server.handle("/hello", exchange -> TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO));
+        server.handle("/drain", exchange -> {
+            TestServer.drain(exchange);
+            TestServer.respond(exchange, HttpURLConnection.HTTP_NO_CONTENT, new byte[0]);
+        });
+
+        client = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .newClient("metered", StandardFeatureGroup.PUBLIC);
+        target = server.target(client);
+    }
+
+    @Test(timeout = 30000)
+    public void testRequestsAreRecorded() {
+        assertEquals("Hello!\n", target.path("hello").request().get(String.class));
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), target.path("drain").request()
+                .post(Entity.entity(new byte[1000], MediaType.APPLICATION_OCTET_STREAM_TYPE))
+                .getStatus());
+        target.path("missing").request().get().close();
+
+        assertEquals(3, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+        assertEquals(2, registry.getCount(ClientMetricsFeature.RESPONSES, status("2xx")));
+        assertEquals(1, registry.getCount(ClientMetricsFeature.RESPONSES, status("4xx")));
+        assertTrue(registry.getCount(ClientMetricsFeature.BYTES_RECEIVED, TAGS) >= HELLO.length);
+        assertEquals(1000, registry.getCount(ClientMetricsFeature.BYTES_SENT, TAGS));
+        assertEquals(0, registry.getGauge(ClientMetricsFeature.IN_FLIGHT, TAGS).getAsLong());
+
+        final ExponentialHistogram latency = registry.getHistogram(ClientMetricsFeature.LATENCY, TAGS);
+        assertNotNull(latency);
+        assertEquals(3, latency.getCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testTransportFailuresAreNotLeftInFlight() throws Exception {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        final WebTarget refused = client.target("http://127.0.0.1:" + closedPort);
+        try {
+            refused.request().get(String.class);
+            fail("expected the connection to be refused");
+        } catch (ProcessingException expected) {
+            // counted as abandoned
+        }
+        try {
+            refused.request().async().get(String.class).get(10, TimeUnit.SECONDS);
+            fail("expected the connection to be refused");
+        } catch (ExecutionException expected) {
+            // counted as abandoned
+        }
+
+        // the failure may reach the metrics just after the caller
+        while (registry.getCount(ClientMetricsFeature.ABANDONED, TAGS) < 2) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+        assertEquals(0, registry.getGauge(ClientMetricsFeature.IN_FLIGHT, TAGS).getAsLong());
+    }
+
+    @Test(timeout = 30000)
+    public void testMetricsCanBeDisabled() {
+        final Client unmetered = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .newClient("unmetered", new JaxRsClientConfig() {
+                    @Override
+                    public boolean isMetricsEnabled() {
+                        return false;
+                    }
+                }, StandardFeatureGroup.PUBLIC);
+        try {
+            unmetered.target(target.getUri()).path("hello").request().get(String.class);
+        } finally {
+            unmetered.close();
+        }
+        assertFalse(registry.getMetricIds().stream().anyMatch(id -> "unmetered".equals(id.getTags().get("client"))));
+    }
+
+    private static Map<String, String> status(String status) {
+        return ImmutableMap.<String, String>builder().putAll(TAGS).put("status", status).build();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.cache.ResponseCache;
+import com.opentable.jaxrs.cache.ResponseCacheFeature;
+import com.opentable.jaxrs.limiter.ConcurrencyLimitExceededException;
+import com.opentable.jaxrs.limiter.ConcurrencyLimitFeature;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+public class ConcurrencyLimitTest {
+    private static final byte[] HELLO = "Hello!\n".getBytes();
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "limited", "groups", "PUBLIC");
+    private static final Map<String, String> CACHED_TAGS = ImmutableMap.of("client", "cached", "groups", "PUBLIC");
+    private static final long SLOW_MILLIS = 50;
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch arrived = new CountDownLatch(2);
+    private Client client;
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        server.handle("/hello", exchange -> TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO));
+        server.handle("/wait", exchange -> {
+            arrived.countDown();
+            try {
+                release.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+        server.handle("/slow", exchange -> {
+            try {
+                Thread.sleep(SLOW_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add(HttpHeaders.CACHE_CONTROL, "max-age=60");
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+        server.handle("/busy", exchange -> TestServer.respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, new byte[0]));
+
+        client = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .newClient("limited", new JaxRsClientConfig() {
+                    @Override
+                    public boolean isAdaptiveConcurrencyLimit() {
+                        return true;
+                    }
+
+                    @Override
+                    public int getConcurrencyLimitInitial() {
+                        return 2;
+                    }
+
+                    @Override
+                    public int getConcurrencyLimitMax() {
+                        return 2;
+                    }
+                }, StandardFeatureGroup.PUBLIC);
+        target = server.target(client);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+    }
+
+    @Test(timeout = 30000)
+    public void testRequestsOverTheLimitAreRejected() throws Exception {
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        final List<Future<String>> waiting = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            waiting.add(callers.submit(() -> target.path("wait").request().get(String.class)));
+        }
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+
+        try {
+            target.path("hello").request().get(String.class);
+            fail("expected rejection");
+        } catch (ProcessingException e) {
+            assertTrue(String.valueOf(e), rejection(e) != null);
+            assertEquals(2, rejection(e).getLimit());
+        }
+        assertEquals(1, registry.getCount(ConcurrencyLimitFeature.REJECTED, TAGS));
+        assertEquals(2, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+
+        release.countDown();
+        for (final Future<String> f : waiting) {
+            assertEquals("Hello!\n", f.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals("Hello!\n", target.path("hello").request().get(String.class));
+        callers.shutdown();
+    }
+
+    @Test(timeout = 30000)
+    public void testOverloadShrinksTheLimit() {
+        assertEquals(2, registry.getGauge(ConcurrencyLimitFeature.LIMIT, TAGS).getAsLong());
+        try (Response response = target.path("busy").request().get()) {
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        }
+        assertEquals(1, registry.getGauge(ConcurrencyLimitFeature.LIMIT, TAGS).getAsLong());
+    }
+
+    @Test(timeout = 30000)
+    public void testTransportFailuresGiveTheirPermitsBack() throws Exception {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.target("http://127.0.0.1:" + closedPort).request().get(String.class);
+                fail("expected the connection to be refused");
+            } catch (ProcessingException e) {
+                assertNull(String.valueOf(e), rejection(e));
+            }
+        }
+        assertEquals(0, registry.getCount(ConcurrencyLimitFeature.REJECTED, TAGS));
+        assertEquals("Hello!\n", target.path("hello").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testCacheHitsDoNotTeachTheLimit() {
+        final Client cached = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, new ResponseCacheFeature(new ResponseCache(1 << 20)))
+                .newClient("cached", new JaxRsClientConfig() {
+                    @Override
+                    public boolean isAdaptiveConcurrencyLimit() {
+                        return true;
+                    }
+
+                    @Override
+                    public int getConcurrencyLimitInitial() {
+                        return 20;
+                    }
+
+                    @Override
+                    public int getConcurrencyLimitMax() {
+                        return 20;
+                    }
+                }, StandardFeatureGroup.PUBLIC);
+        final WebTarget slow = server.target(cached).path("slow");
+        assertEquals("Hello!\n", slow.path("a").request().get(String.class));
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Hello!\n", slow.path("a").request().get(String.class));
+        }
+        assertEquals(20, registry.getCount(ResponseCacheFeature.HITS, CACHED_TAGS));
+
+        // as slow as the first call: were the hits sampled, their microseconds would make these look congested
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Hello!\n", slow.path("b" + i).request().get(String.class));
+        }
+        assertEquals(20, registry.getGauge(ConcurrencyLimitFeature.LIMIT, CACHED_TAGS).getAsLong());
+    }
+
+    private static ConcurrencyLimitExceededException rejection(Throwable t) {
+        for (Throwable e = t; e != null; e = e.getCause()) {
+            if (e instanceof ConcurrencyLimitExceededException) {
+                return (ConcurrencyLimitExceededException) e;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.ConnectionWarmUp;
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+public class ConnectionWarmUpTest {
+    private static final byte[] HELLO = "Hello!\n".getBytes();
+    private static final int CONNECTIONS = 3;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "warm", "groups", "PUBLIC");
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final Set<Integer> warmUpPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch arrived = new CountDownLatch(CONNECTIONS);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setup() {
+        server.handle("/", exchange -> {
+            warmUpPorts.add(exchange.getRemoteAddress().getPort());
+            // hold every warm-up request until all have arrived, so each needs its own connection
+            arrived.countDown();
+            try {
+                arrived.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+        server.handle("/broken", exchange -> TestServer.respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, HELLO));
+        server.handle("/stuck", exchange -> {
+            try {
+                released.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO);
+        });
+        server.handle("/hello", exchange -> TestServer.respond(exchange, HttpURLConnection.HTTP_OK, HELLO));
+    }
+
+    @Test(timeout = 30000)
+    public void testConnectionsAreOpenedWhenTheClientIsBuilt() {
+        final Client client = newClient(new WarmUpConfig(server.getUri().resolve("/")));
+        assertEquals(CONNECTIONS, warmUpPorts.size());
+        assertEquals(CONNECTIONS, registry.getHistogram(ConnectionWarmUp.LATENCY, TAGS).getCount());
+        // warm-up requests are not the client's traffic
+        assertEquals(0, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+
+        // the JDK server closes connections after a HEAD, so reuse cannot be observed here
+        assertEquals("Hello!\n", server.target(client).path("hello").request().get(String.class));
+        assertEquals(1, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testWarmUpFailuresDoNotOpenTheCircuitBreaker() {
+        final Client client = newClient(new WarmUpConfig(server.getUri().resolve("/broken")) {
+            @Override
+            public boolean isCircuitBreakerEnabled() {
+                return true;
+            }
+
+            @Override
+            public int getCircuitBreakerMinimumCalls() {
+                return 1;
+            }
+        });
+        assertEquals("Hello!\n", server.target(client).path("hello").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testBuildingWaitsNoLongerThanTheTimeout() {
+        final Duration timeout = Duration.ofMillis(300);
+        final long start = System.nanoTime();
+        final Client client = newClient(new WarmUpConfig(server.getUri().resolve("/stuck")) {
+            @Override
+            public Duration getWarmUpTimeout() {
+                return timeout;
+            }
+        });
+        try {
+            assertTrue(System.nanoTime() - start < TIMEOUT.toNanos() / 2);
+            assertEquals(0, registry.getHistogram(ConnectionWarmUp.LATENCY, TAGS).getCount());
+        } finally {
+            released.countDown();
+        }
+        assertEquals("Hello!\n", server.target(client).path("hello").request().get(String.class));
+    }
+
+    private Client newClient(JaxRsClientConfig config) {
+        final Client client = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .newClient("warm", config, StandardFeatureGroup.PUBLIC);
+        // closed after the test
+        server.target(client);
+        return client;
+    }
+
+    private static class WarmUpConfig implements JaxRsClientConfig {
+        private final URI endpoint;
+
+        WarmUpConfig(URI endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public List<URI> getWarmUpEndpoints() {
+            return ImmutableList.of(endpoint);
+        }
+
+        @Override
+        public int getWarmUpConnections() {
+            return CONNECTIONS;
+        }
+
+        @Override
+        public Duration getWarmUpTimeout() {
+            return TIMEOUT;
+        }
+    }
+}
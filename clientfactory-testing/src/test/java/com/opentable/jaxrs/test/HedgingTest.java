@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.metrics.ClientMetricsFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+import com.opentable.jaxrs.resilience.HedgingFeature;
+
+public class HedgingTest {
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "hedged", "groups", "PUBLIC");
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        // the first call hangs, as if it hit a bad instance
+        server.handle("/", exchange -> {
+            TestServer.drain(exchange);
+            final int call = calls.incrementAndGet();
+            if (call == 1 && !exchange.getRequestURI().getPath().equals("/fast")) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, "call " + call);
+        });
+
+        target = server.target(new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, HedgingFeature.afterDelay(Duration.ofMillis(200), 0.1))
+                .newClient("hedged", StandardFeatureGroup.PUBLIC));
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowRequestIsHedged() {
+        final long start = System.nanoTime();
+        assertEquals("call 2", target.path("slow").request().get(String.class));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+
+        assertEquals(1, registry.getCount(HedgingFeature.HEDGES, TAGS));
+        assertEquals(1, registry.getCount(HedgingFeature.WINS, TAGS));
+        // the filters see the one request, whichever attempt answered it
+        assertEquals(1, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testAsyncHedgeDoesNotBlockCaller() throws Exception {
+        final long start = System.nanoTime();
+        final Future<String> result = target.path("slow").request().async().get(String.class);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals("call 2", result.get(4, TimeUnit.SECONDS));
+        assertEquals(1, registry.getCount(HedgingFeature.WINS, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testFastAndUnsafeRequestsAreNotHedged() {
+        assertEquals("call 1", target.path("fast").request().get(String.class));
+        assertEquals(HttpURLConnection.HTTP_OK, target.path("fast").request().head().getStatus());
+        assertEquals("call 3", target.path("fast").request().post(Entity.text("x"), String.class));
+        assertEquals(0, registry.getCount(HedgingFeature.HEDGES, TAGS));
+        assertEquals(3, registry.getCount(ClientMetricsFeature.REQUESTS, TAGS));
+    }
+}
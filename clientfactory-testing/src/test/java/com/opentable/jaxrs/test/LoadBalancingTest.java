@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+import com.opentable.jaxrs.routing.EndpointProvider;
+import com.opentable.jaxrs.routing.FileEndpointProvider;
+import com.opentable.jaxrs.routing.LoadBalancingFeature;
+import com.opentable.jaxrs.routing.StaticEndpointProvider;
+
+public class LoadBalancingTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public final TestServer fast = new TestServer();
+    @Rule
+    public final TestServer slow = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final AtomicInteger fastHits = new AtomicInteger();
+    private final AtomicInteger slowHits = new AtomicInteger();
+    private Client client;
+
+    @Before
+    public void setup() {
+        serve(fast, "fast", 0, fastHits);
+        serve(slow, "slow", 50, slowHits);
+    }
+
+    @After
+    public void after() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private static void serve(TestServer server, String name, long delayMillis, AtomicInteger hits) {
+        server.handle("/", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, name + " " + exchange.getRequestURI());
+        });
+    }
+
+    private void createClient(EndpointProvider provider) {
+        client = new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, new LoadBalancingFeature(provider))
+                .newClient("balanced", StandardFeatureGroup.PUBLIC);
+    }
+
+    @Test(timeout = 30000)
+    public void testLogicalUriIsRewritten() {
+        createClient(StaticEndpointProvider.of("menus", fast.getUri()));
+        assertEquals("fast /v1/menu?id=42", client.target("lb://menus/v1/menu?id=42").request().get(String.class));
+        assertEquals(1, registry.getCount(LoadBalancingFeature.ROUTED,
+                ImmutableMap.of("client", "balanced", "groups", "PUBLIC", "endpoint", fast.getUri().getAuthority())));
+        assertEquals("fast /plain", client.target(fast.getUri()).path("plain").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowEndpointGetsLessTraffic() {
+        createClient(StaticEndpointProvider.of("menus", fast.getUri(), slow.getUri()));
+        // the first request of a client is slowed by class loading and connection setup
+        client.target(fast.getUri()).request().get(String.class);
+        fastHits.set(0);
+        for (int i = 0; i < 60; i++) {
+            client.target("lb://menus/x").request().get(String.class);
+        }
+        assertTrue("slow got " + slowHits, slowHits.get() < 10);
+        assertTrue("fast got " + fastHits, fastHits.get() > 50);
+    }
+
+    @Test(timeout = 30000)
+    public void testRefusingEndpointIsAvoided() throws IOException {
+        final URI refused;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            refused = URI.create("http://127.0.0.1:" + socket.getLocalPort());
+        }
+        createClient(StaticEndpointProvider.of("menus", fast.getUri(), refused));
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.target("lb://menus/x").request().get(String.class);
+            } catch (ProcessingException e) {
+                failures++;
+            }
+        }
+        // a refused connection is charged as a very slow response, not left looking idle
+        assertTrue("failures " + failures, failures <= 1);
+        assertEquals(20 - failures, fastHits.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testFileProviderFollowsChanges() throws IOException {
+        final Path file = folder.newFile("endpoints.properties").toPath();
+        Files.write(file, ("menus = " + fast.getUri() + "\n").getBytes(StandardCharsets.UTF_8));
+        createClient(new FileEndpointProvider(file, Duration.ZERO));
+        assertEquals("fast /a", client.target("lb://menus/a").request().get(String.class));
+
+        Files.write(file, ("menus = " + slow.getUri() + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertEquals("slow /b", client.target("lb://menus/b").request().get(String.class));
+    }
+
+    @Test(timeout = 30000, expected = ProcessingException.class)
+    public void testUnknownService() {
+        createClient(StaticEndpointProvider.of("menus", fast.getUri()));
+        client.target("lb://nobody/a").request().get(String.class);
+    }
+}
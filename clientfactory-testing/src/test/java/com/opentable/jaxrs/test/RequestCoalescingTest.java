@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.cache.RequestCoalescingFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+public class RequestCoalescingTest {
+    private static final int CALLERS = 20;
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "coalescing", "groups", "PUBLIC");
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final CountDownLatch arrived = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger served = new AtomicInteger();
+    private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        server.handle("/config", exchange -> {
+            final String body = "config " + served.incrementAndGet();
+            arrived.countDown();
+            try {
+                release.await(20, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, body);
+        });
+        // X-Fail is not a key header, so these requests share a flight with the others
+        server.handle("/fail", exchange -> {
+            if (exchange.getRequestHeaders().containsKey("X-Fail")) {
+                arrived.countDown();
+                try {
+                    release.await(20, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // hang up without a response
+                exchange.close();
+                return;
+            }
+            TestServer.respond(exchange, HttpURLConnection.HTTP_OK, "recovered " + served.incrementAndGet());
+        });
+
+        target = server.target(new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, new RequestCoalescingFeature())
+                .newClient("coalescing", StandardFeatureGroup.PUBLIC));
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentIdenticalRequestsShareOneCall() throws Exception {
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(() -> target.path("config").request().get(String.class)));
+        }
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+        // give the other callers time to join the flight
+        Thread.sleep(500);
+        release.countDown();
+
+        for (final Future<String> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).startsWith("config "));
+        }
+        final long coalesced = registry.getCount(RequestCoalescingFeature.COALESCED, TAGS);
+        assertTrue("coalesced " + coalesced, coalesced > 0);
+        assertEquals(CALLERS, served.get() + coalesced);
+        assertEquals(0, registry.getCount(RequestCoalescingFeature.FALLBACKS, TAGS));
+
+        // a later request is a new flight
+        assertEquals("config " + (served.get() + 1), target.path("config").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testFollowersGoUpstreamWhenTheLeaderFails() throws Exception {
+        final Future<String> leader = callers.submit(() -> target.path("fail").request().header("X-Fail", "true").get(String.class));
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+        final List<Future<String>> followers = new ArrayList<>();
+        for (int i = 1; i < CALLERS; i++) {
+            followers.add(callers.submit(() -> target.path("fail").request().get(String.class)));
+        }
+        Thread.sleep(500);
+        final long released = System.nanoTime();
+        release.countDown();
+
+        try {
+            leader.get(10, TimeUnit.SECONDS);
+            fail("expected the leader to fail");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof ProcessingException);
+        }
+        for (final Future<String> follower : followers) {
+            assertTrue(follower.get(10, TimeUnit.SECONDS).startsWith("recovered "));
+        }
+        // well within the 10 second wait for a leader that never reports back
+        assertTrue(System.nanoTime() - released < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(CALLERS - 1, served.get());
+        assertEquals(CALLERS - 1, registry.getCount(RequestCoalescingFeature.FALLBACKS, TAGS));
+        assertEquals(0, registry.getCount(RequestCoalescingFeature.COALESCED, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testDifferentCallersAreNotCoalesced() throws Exception {
+        final Future<String> alice = callers.submit(() -> target.path("config").request().header(HttpHeaders.AUTHORIZATION, "alice").get(String.class));
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+        final Future<String> bob = callers.submit(() -> target.path("config").request().header(HttpHeaders.AUTHORIZATION, "bob").get(String.class));
+        while (served.get() < 2) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        assertTrue(alice.get(10, TimeUnit.SECONDS).startsWith("config "));
+        assertTrue(bob.get(10, TimeUnit.SECONDS).startsWith("config "));
+        assertEquals(0, registry.getCount(RequestCoalescingFeature.COALESCED, TAGS));
+    }
+}
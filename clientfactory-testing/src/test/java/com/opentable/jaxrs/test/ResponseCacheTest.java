@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.cache.ResponseCache;
+import com.opentable.jaxrs.cache.ResponseCacheFeature;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+
+@SuppressWarnings("restriction")
+public class ResponseCacheTest {
+    private static final String ETAG = "\"v1\"";
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "cached", "groups", "PUBLIC");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final Map<String, AtomicInteger> served = new ConcurrentHashMap<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        server.handle("/fresh", exchange -> respond(exchange, "max-age=60"));
+        server.handle("/validated", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                notModified.incrementAndGet();
+                exchange.getResponseHeaders().add(HttpHeaders.ETAG, ETAG);
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add(HttpHeaders.ETAG, ETAG);
+            respond(exchange, "no-cache");
+        });
+        server.handle("/private", exchange -> respond(exchange, "no-store"));
+        server.handle("/big", exchange -> respond(exchange, "max-age=60"));
+        server.handle("/shared", exchange -> respond(exchange, "public, max-age=60"));
+        server.handle("/personal", exchange -> respond(exchange, "private, max-age=60"));
+    }
+
+    private void respond(HttpExchange exchange, String cacheControl) throws IOException {
+        TestServer.drain(exchange);
+        final String path = exchange.getRequestURI().getPath();
+        final int count = served.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        exchange.getResponseHeaders().add(HttpHeaders.CACHE_CONTROL, cacheControl);
+        TestServer.respond(exchange, HttpURLConnection.HTTP_OK, path.startsWith("/big") ? Strings.repeat("x", 600) : path + " " + count);
+    }
+
+    private void createClient(ResponseCache cache) {
+        target = server.target(new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .addFeatureToGroup(StandardFeatureGroup.PUBLIC, new ResponseCacheFeature(cache))
+                .newClient("cached", StandardFeatureGroup.PUBLIC));
+    }
+
+    @Test(timeout = 30000)
+    public void testFreshResponsesAreServedFromCache() {
+        createClient(new ResponseCache(1 << 20));
+        assertEquals("/fresh 1", target.path("fresh").request().get(String.class));
+        try (Response response = target.path("fresh").request().get()) {
+            assertEquals("/fresh 1", response.readEntity(String.class));
+            assertNotNull(response.getHeaderString("Age"));
+        }
+        assertEquals(1, served.get("/fresh").get());
+        assertEquals(1, registry.getCount(ResponseCacheFeature.HITS, TAGS));
+        assertEquals(1, registry.getCount(ResponseCacheFeature.MISSES, TAGS));
+
+        assertEquals("/fresh 2", target.path("fresh").request().header(HttpHeaders.CACHE_CONTROL, "no-store").get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testStaleResponsesAreRevalidated() {
+        createClient(new ResponseCache(1 << 20));
+        assertEquals("/validated 1", target.path("validated").request().get(String.class));
+        try (Response response = target.path("validated").request().get()) {
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            assertEquals("/validated 1", response.readEntity(String.class));
+        }
+        assertEquals(1, notModified.get());
+        assertEquals(1, registry.getCount(ResponseCacheFeature.REVALIDATIONS, TAGS));
+        assertEquals(0, registry.getCount(ResponseCacheFeature.HITS, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testNoStoreAndUnsafeMethods() {
+        createClient(new ResponseCache(1 << 20));
+        assertEquals("/private 1", target.path("private").request().get(String.class));
+        assertEquals("/private 2", target.path("private").request().get(String.class));
+
+        assertEquals("/fresh 1", target.path("fresh").request().get(String.class));
+        target.path("fresh").request().post(Entity.text("update")).close();
+        assertEquals("/fresh 3", target.path("fresh").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testCredentialedResponsesAreNotShared() {
+        createClient(new ResponseCache(1 << 20));
+        assertEquals("/fresh 1", target.path("fresh").request().header(HttpHeaders.AUTHORIZATION, "Bearer alice").get(String.class));
+        assertEquals("/fresh 2", target.path("fresh").request().header(HttpHeaders.AUTHORIZATION, "Bearer bob").get(String.class));
+        assertEquals("/fresh 3", target.path("fresh").request().get(String.class));
+        assertEquals("/fresh 4", target.path("fresh").request().header(HttpHeaders.COOKIE, "session=carol").get(String.class));
+        assertEquals("/fresh 3", target.path("fresh").request().get(String.class));
+
+        assertEquals("/shared 1", target.path("shared").request().header(HttpHeaders.AUTHORIZATION, "Bearer alice").get(String.class));
+        assertEquals("/shared 1", target.path("shared").request().header(HttpHeaders.AUTHORIZATION, "Bearer bob").get(String.class));
+
+        assertEquals("/personal 1", target.path("personal").request().get(String.class));
+        assertEquals("/personal 2", target.path("personal").request().get(String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testEvictedEntriesSpillToDisk() throws IOException {
+        final ResponseCache cache = new ResponseCache(16 << 10, folder.newFolder().toPath(), 1 << 20);
+        createClient(cache);
+        for (int i = 0; i < 100; i++) {
+            target.path("big/" + i).request().get(String.class);
+        }
+        assertTrue(cache.getDiskBytes() > 0);
+        assertTrue(cache.getMemoryEntries() < 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(600, target.path("big/" + i).request().get(String.class).length());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, served.get("/big/" + i).get());
+        }
+        assertNull(served.get("/fresh"));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.opentable.jaxrs.JaxRsClientConfig;
+import com.opentable.jaxrs.JaxRsClientFactory;
+import com.opentable.jaxrs.JaxRsClientProperties;
+import com.opentable.jaxrs.StandardFeatureGroup;
+import com.opentable.jaxrs.metrics.InMemoryClientMetricRegistry;
+import com.opentable.jaxrs.resilience.RetryFeature;
+
+@SuppressWarnings("restriction")
+public class RetryTest {
+    private static final Map<String, String> TAGS = ImmutableMap.of("client", "retrying", "groups", "PUBLIC");
+
+    @Rule
+    public final TestServer server = new TestServer();
+
+    private final InMemoryClientMetricRegistry registry = new InMemoryClientMetricRegistry();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private WebTarget target;
+
+    @Before
+    public void setup() {
+        // /flaky/<n> fails n times, then succeeds
+        server.handle("/flaky", exchange -> {
+            final int call = count(exchange);
+            final int failures = Integer.parseInt(exchange.getRequestURI().getPath().substring("/flaky/".length()));
+            TestServer.respond(exchange, call <= failures ? HttpURLConnection.HTTP_UNAVAILABLE : HttpURLConnection.HTTP_OK, "call " + call);
+        });
+        server.handle("/later", exchange -> {
+            final int call = count(exchange);
+            if (call == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+            }
+            TestServer.respond(exchange, call == 1 ? HttpURLConnection.HTTP_UNAVAILABLE : HttpURLConnection.HTTP_OK, "call " + call);
+        });
+        server.handle("/down", exchange -> {
+            count(exchange);
+            TestServer.respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "down");
+        });
+
+        target = server.target(new JaxRsClientFactory()
+                .setMetricRegistry(registry)
+                .newClient("retrying", new JaxRsClientConfig() {
+                    @Override
+                    public int getMaxRetries() {
+                        return 3;
+                    }
+
+                    @Override
+                    public Duration getRetryBackoff() {
+                        return Duration.ofMillis(10);
+                    }
+
+                    @Override
+                    public double getRetryBudgetPercent() {
+                        return 0;
+                    }
+                }, StandardFeatureGroup.PUBLIC));
+    }
+
+    private int count(HttpExchange exchange) throws IOException {
+        TestServer.drain(exchange);
+        return calls.computeIfAbsent(exchange.getRequestURI().getPath(), p -> new AtomicInteger()).incrementAndGet();
+    }
+
+    @Test(timeout = 30000)
+    public void testRetryableFailuresAreRetried() {
+        assertEquals("call 3", target.path("flaky/2").request().get(String.class));
+        assertEquals(2, registry.getCount(RetryFeature.RETRIES, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testRetryAfterIsHonoured() {
+        final long start = System.nanoTime();
+        assertEquals("call 2", target.path("later").request().get(String.class));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test(timeout = 30000)
+    public void testAsyncRetryDoesNotBlockCaller() throws Exception {
+        target.path("flaky/0").request().get().close();
+        final long start = System.nanoTime();
+        final Future<String> result = target.path("later").request().async().get(String.class);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals("call 2", result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, registry.getCount(RetryFeature.RETRIES, TAGS));
+    }
+
+    @Test(timeout = 30000)
+    public void testOnlyIdempotentOrMarkedRequestsAreRetried() {
+        try (Response response = target.path("flaky/2").request().post(Entity.text("x"))) {
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        }
+        assertEquals("call 3", target.path("flaky/2").request()
+                .property(JaxRsClientProperties.RETRYABLE, true)
+                .post(Entity.text("x"), String.class));
+    }
+
+    @Test(timeout = 30000)
+    public void testBudgetStopsRetryStorms() {
+        for (int i = 0; i < 5; i++) {
+            try (Response response = target.path("down").request().get()) {
+                assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+            }
+        }
+        // a full budget of 10 retries, and nothing earned back at 0%
+        assertEquals(10, registry.getCount(RetryFeature.RETRIES, TAGS));
+        assertEquals(15, calls.get("/down").get());
+        assertTrue(registry.getCount(RetryFeature.BUDGET_EXHAUSTED, TAGS) > 0);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * A local HTTP server for a test, started before and stopped after each test method along with its handler
+ * threads and the clients it handed out targets for.  Use as a JUnit {@code @Rule}.
+ */
+@SuppressWarnings("restriction")
+public class TestServer extends ExternalResource {
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private HttpServer httpServer;
+
+    @Override
+    protected void before() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+    }
+
+    @Override
+    protected void after() {
+        clients.forEach(Client::close);
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** Serve {@code path} and everything below it with {@code handler}. */
+    public TestServer handle(String path, HttpHandler handler) {
+        httpServer.createContext(path, handler);
+        return this;
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + getPort());
+    }
+
+    /** @return a target for this server on {@code client}, which is closed after the test */
+    public WebTarget target(Client client) {
+        clients.add(client);
+        return client.target(getUri());
+    }
+
+    /** Read and discard the request body, so the connection can be reused. */
+    public static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+                // discard
+            }
+        }
+    }
+
+    /**
+     * Answer with a plain text body, or only its headers for a HEAD request.  The JDK server drops the connection
+     * after a HEAD, so the response says so rather than leave a dead connection in the client's pool.
+     */
+    public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(status, -1);
+        } else if (body.length == 0) {
+            // no body stream to write to; writing even nothing to it fails the exchange and drops the connection
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        exchange.close();
+    }
+
+    public static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        respond(exchange, status, text.getBytes());
+    }
+}
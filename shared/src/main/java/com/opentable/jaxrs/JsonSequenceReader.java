@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.checkTrailer;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.deliver;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import com.opentable.callback.Callback;
+
+/**
+ * Reads the record per element formats, {@link com.opentable.jaxrs.json.JsonStreamFormat#NDJSON} and
+ * {@link com.opentable.jaxrs.json.JsonStreamFormat#JSON_SEQ}, for {@link StreamedJsonResponseConverter}.
+ *
+ * <p>The last record is the {@code {"success":true}} trailer rather than an element, which only shows
+ * once nothing follows it.  So each record is buffered as tokens until the next one starts, and only
+ * then bound.  A stream cut off between records ends on an element instead of the trailer and fails
+ * just like a cut-off wrapped response.
+ */
+final class JsonSequenceReader<T>
+{
+    private static final byte RECORD_SEPARATOR = 0x1E;
+
+    private final ObjectReader reader;
+    private final JsonParser jp;
+
+    /** The record read ahead, and its size in bytes. */
+    private TokenBuffer ahead;
+    private long aheadBytes;
+
+    JsonSequenceReader(ObjectReader reader, JsonParser jp)
+    {
+        this.reader = reader;
+        this.jp = jp;
+    }
+
+    /** @return {@code in} with the record separators of a JSON text sequence turned into whitespace, all a parser needs of them */
+    static InputStream withoutRecordSeparators(InputStream in)
+    {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException
+            {
+                final int b = super.read();
+                return b == RECORD_SEPARATOR ? ' ' : b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                final int n = super.read(b, off, len);
+                for (int i = off; i < off + n; i++) {
+                    if (b[i] == RECORD_SEPARATOR) {
+                        b[i] = ' ';
+                    }
+                }
+                return n;
+            }
+        };
+    }
+
+    void read(Callback<T> callback)
+    throws IOException
+    {
+        TokenBuffer record = first();
+        while (readAhead()) {
+            if (!deliver(callback, bind(record))) {
+                return;
+            }
+            record = ahead;
+        }
+        checkSuccess(record);
+    }
+
+    void readBatches(Callback<? super List<T>> callback, int maxItems, long maxBytes)
+    throws IOException
+    {
+        final List<T> batch = new ArrayList<>(Math.min(maxItems, 1024));
+        long batchBytes = 0;
+        TokenBuffer record = first();
+        long recordBytes = aheadBytes;
+        while (readAhead()) {
+            batch.add(bind(record));
+            batchBytes += recordBytes;
+            if (batch.size() >= maxItems || batchBytes >= maxBytes) {
+                if (!deliverBatch(callback, batch)) {
+                    return;
+                }
+                batchBytes = 0;
+            }
+            record = ahead;
+            recordBytes = aheadBytes;
+        }
+        if (!batch.isEmpty() && !deliverBatch(callback, batch)) {
+            return;
+        }
+        checkSuccess(record);
+    }
+
+    private static <T> boolean deliverBatch(Callback<? super List<T>> callback, List<T> batch) throws IOException
+    {
+        try {
+            return deliver(callback, batch);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private TokenBuffer first() throws IOException
+    {
+        if (!readAhead()) {
+            // not even the trailer
+            checkTrailer(jp, null);
+        }
+        return ahead;
+    }
+
+    /** @return false at the end of the body */
+    private boolean readAhead() throws IOException
+    {
+        if (jp.nextToken() == null) {
+            return false;
+        }
+        final long start = jp.getTokenLocation().getByteOffset();
+        final TokenBuffer record = new TokenBuffer(jp);
+        record.copyCurrentStructure(jp);
+        ahead = record;
+        aheadBytes = jp.getCurrentLocation().getByteOffset() - start;
+        return true;
+    }
+
+    private T bind(TokenBuffer record) throws IOException
+    {
+        try (JsonParser p = record.asParser()) {
+            p.nextToken();
+            return reader.readValue(p);
+        }
+    }
+
+    private static void checkSuccess(TokenBuffer record) throws IOException
+    {
+        try (JsonParser p = record.asParser()) {
+            checkTrailer(p, p.nextToken() == JsonToken.START_OBJECT ? p.nextValue() : null);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.checkTrailer;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.deliver;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.readHeader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Throwables;
+
+import com.opentable.callback.Callback;
+
+/**
+ * Pipeline behind {@link StreamedJsonResponseConverter#readParallel}.
+ *
+ * <p>The calling thread tokenizes the body only far enough to find each element's extent,
+ * skipping over its contents without decoding them, and copies the element's raw bytes out of a
+ * {@link RecordingInputStream}.  The copies are bound on the executor, and the calling thread
+ * delivers the results to the callback strictly in order, never letting more than {@code window}
+ * run ahead of the callback.
+ */
+final class ParallelResultsReader<T>
+{
+    private final JsonFactory factory;
+    private final ObjectReader reader;
+    private final Executor executor;
+    private final int window;
+    private final Queue<CompletableFuture<T>> inFlight = new ArrayDeque<>();
+
+    ParallelResultsReader(JsonFactory factory, ObjectReader reader, Executor executor, int window)
+    {
+        this.factory = factory;
+        this.reader = reader;
+        this.executor = executor;
+        this.window = window;
+    }
+
+    void read(InputStream entity, Callback<T> callback)
+    throws IOException
+    {
+        final RecordingInputStream in = new RecordingInputStream(entity);
+        try (JsonParser jp = factory.createParser(in)) {
+            readHeader(jp);
+
+            JsonToken token;
+            while ((token = jp.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                final long start = jp.getTokenLocation().getByteOffset();
+                if (token.isStructStart()) {
+                    jp.skipChildren();
+                } else {
+                    jp.finishToken();
+                }
+                final byte[] element = in.slice(start, jp.getCurrentLocation().getByteOffset());
+                if (inFlight.size() >= window && !deliverNext(callback)) {
+                    return;
+                }
+                inFlight.add(CompletableFuture.supplyAsync(() -> bind(element), executor));
+            }
+            while (!inFlight.isEmpty()) {
+                if (!deliverNext(callback)) {
+                    return;
+                }
+            }
+            checkTrailer(jp, jp.nextValue());
+        } finally {
+            inFlight.forEach(f -> f.cancel(false));
+            inFlight.clear();
+        }
+    }
+
+    private T bind(byte[] element)
+    {
+        try {
+            return reader.readValue(element);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private boolean deliverNext(Callback<T> callback)
+    throws IOException
+    {
+        final T item;
+        try {
+            item = inFlight.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for element to bind", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException("Failed to bind element", e.getCause());
+        }
+        return deliver(callback, item);
+    }
+
+    /**
+     * Keeps the bytes read through it from the start of the element being sliced onwards.
+     * The buffer is compacted only when it would otherwise have to grow.
+     */
+    static final class RecordingInputStream extends FilterInputStream
+    {
+        private byte[] buf = new byte[64 * 1024];
+        /** Stream offset of {@code buf[0]}. */
+        private long base;
+        private int length;
+        /** Stream offset before which bytes are no longer needed. */
+        private long keepFrom;
+
+        RecordingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        /** @return a copy of the bytes between the given stream offsets; earlier ones are then dropped */
+        byte[] slice(long from, long to)
+        {
+            if (from < base || to > base + length || from > to) {
+                throw new IllegalStateException("Bytes " + from + "-" + to + " not recorded, have " + base + "-" + (base + length));
+            }
+            keepFrom = to;
+            return Arrays.copyOfRange(buf, (int) (from - base), (int) (to - base));
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int b = in.read();
+            if (b != -1) {
+                ensureRoom(1);
+                buf[length++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            final int n = in.read(b, off, len);
+            if (n > 0) {
+                ensureRoom(n);
+                System.arraycopy(b, off, buf, length, n);
+                length += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            // skipped bytes must still be recorded
+            final byte[] scratch = new byte[(int) Math.min(n, 8192)];
+            final int read = read(scratch, 0, scratch.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void ensureRoom(int n)
+        {
+            if (length + n <= buf.length) {
+                return;
+            }
+            final int drop = (int) (keepFrom - base);
+            if (drop > 0) {
+                System.arraycopy(buf, drop, buf, 0, length - drop);
+                length -= drop;
+                base = keepFrom;
+            }
+            if (length + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + n));
+            }
+        }
+    }
+}
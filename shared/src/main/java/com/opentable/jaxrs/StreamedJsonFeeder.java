@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.checkTrailer;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.deliver;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.expect;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import com.opentable.callback.Callback;
+
+/**
+ * Push-style counterpart of {@link StreamedJsonResponseConverter#read}: the response body is
+ * handed over chunk by chunk, as a transport receives it, and every element of the results
+ * array is delivered to the callback as soon as its last byte arrives.  No thread waits
+ * on the stream in between.
+ *
+ * <p>Built on Jackson's non-blocking parser.  The tokens of an element are buffered until it
+ * is complete and then bound with the cached {@link ObjectReader}.  Not thread safe; chunks must
+ * be fed in order.
+ */
+public final class StreamedJsonFeeder<T>
+{
+    private enum State { START, RESULTS_FIELD, RESULTS_ARRAY, RESULTS, TRAILER, DONE }
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder input;
+    private final ObjectReader reader;
+    private final Callback<T> callback;
+
+    private State state = State.START;
+    /** Tokens of the element being received, null between elements. */
+    private TokenBuffer element;
+    private int depth;
+
+    StreamedJsonFeeder(JsonParser parser, ObjectReader reader, Callback<T> callback)
+    {
+        this.parser = parser;
+        this.input = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.reader = reader;
+        this.callback = callback;
+    }
+
+    /**
+     * Parse the next chunk of the body, delivering each element it completes.
+     * The chunk must not be modified until this returns.
+     *
+     * @return false once no more input is wanted, because the success trailer was read or the
+     * callback refused an item; later chunks are ignored
+     */
+    public boolean feed(byte[] data, int offset, int length)
+    throws IOException
+    {
+        if (state == State.DONE) {
+            return false;
+        }
+        input.feedInput(data, offset, offset + length);
+        parse();
+        return state != State.DONE;
+    }
+
+    /**
+     * Signal the end of the body.
+     *
+     * @throws IOException if the body ended before the success trailer, e.g. the server failed mid-stream
+     */
+    public void end()
+    throws IOException
+    {
+        try {
+            if (state != State.DONE) {
+                input.endOfInput();
+                parse();
+            }
+            if (state != State.DONE) {
+                throw new IOException("Streamed receive did not terminate normally; inspect server logs for cause.");
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /** @return true once the trailer has been read or the callback refused an item */
+    public boolean isDone()
+    {
+        return state == State.DONE;
+    }
+
+    private void parse()
+    throws IOException
+    {
+        while (state != State.DONE) {
+            final JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.NOT_AVAILABLE) {
+                return;
+            }
+            switch (state) {
+            case START:
+                expect(parser, token, JsonToken.START_OBJECT);
+                state = State.RESULTS_FIELD;
+                break;
+            case RESULTS_FIELD:
+                expect(parser, token, JsonToken.FIELD_NAME);
+                if (!"results".equals(parser.getCurrentName())) {
+                    throw new JsonParseException(parser, "expecting results field");
+                }
+                state = State.RESULTS_ARRAY;
+                break;
+            case RESULTS_ARRAY:
+                expect(parser, token, JsonToken.START_ARRAY);
+                state = State.RESULTS;
+                break;
+            case RESULTS:
+                element(token);
+                break;
+            case TRAILER:
+                // as JsonParser.nextValue() would, skip the field name
+                if (token != JsonToken.FIELD_NAME) {
+                    checkTrailer(parser, token);
+                    state = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+    }
+
+    private void element(JsonToken token)
+    throws IOException
+    {
+        if (depth == 0) {
+            if (token == JsonToken.END_ARRAY) {
+                state = State.TRAILER;
+                return;
+            }
+            element = new TokenBuffer(parser);
+        }
+        element.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            depth++;
+        } else if (token.isStructEnd()) {
+            depth--;
+        }
+        if (depth > 0) {
+            return;
+        }
+        final T item;
+        try (JsonParser elementParser = element.asParserOnFirstToken()) {
+            item = reader.readValue(elementParser);
+        }
+        element = null;
+        if (!deliver(callback, item)) {
+            state = State.DONE;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.checkTrailer;
+import static com.opentable.jaxrs.StreamedJsonResponseConverter.readHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Flow.Publisher} of the elements of a "standard wrapped results" response, see
+ * {@link StreamedJsonResponseConverter#publisher}.
+ *
+ * <p>Elements are parsed only against demand.  Parsing runs on the given executor and gives the
+ * thread back whenever demand runs out, so a slow subscriber leaves the rest of the body unread
+ * in the socket rather than buffered in memory, and no thread waits for it.  Cancelling closes
+ * the response at once.  Only one subscriber is allowed.
+ */
+final class StreamedJsonPublisher<T> implements Flow.Publisher<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StreamedJsonPublisher.class);
+
+    private final Response response;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    StreamedJsonPublisher(Response response, ObjectMapper mapper, ObjectReader reader, Executor executor)
+    {
+        this.response = response;
+        this.mapper = mapper;
+        this.reader = reader;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(CANCELLED);
+            subscriber.onError(new IllegalStateException("A streamed response can be subscribed to only once"));
+            return;
+        }
+        final ResponseSubscription subscription = new ResponseSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.signal();
+    }
+
+    private final class ResponseSubscription implements Flow.Subscription
+    {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        /** Signals not yet seen by {@link #drain}; only the thread that raises it from 0 drains. */
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+
+        /** Only touched while draining. */
+        private JsonParser parser;
+        private boolean started;
+        private boolean done;
+
+        ResponseSubscription(Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Requested " + n + " elements; must be positive");
+            } else {
+                demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            close();
+        }
+
+        void signal()
+        {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    pending.set(0);
+                    fail(e);
+                }
+            }
+        }
+
+        private void drain()
+        {
+            int missed = 1;
+            do {
+                while (!done && !cancelled) {
+                    if (badRequest != null) {
+                        fail(badRequest);
+                    } else if (!started) {
+                        start();
+                    } else if (demand.get() > 0) {
+                        next();
+                    } else {
+                        break;
+                    }
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void start()
+        {
+            started = true;
+            final int sc = response.getStatus();
+            try {
+                switch (sc) {
+                case 201:
+                case 204:
+                    LOG.debug("Return code is {}, finishing.", sc);
+                    complete();
+                    return;
+                case 200:
+                    parser = mapper.getFactory().createParser(response.readEntity(InputStream.class));
+                    readHeader(parser);
+                    return;
+                default:
+                    if (sc >= 400 && sc < 500) {
+                        fail(new ClientErrorException(response));
+                    } else {
+                        fail(new ServerErrorException(response));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void next()
+        {
+            final T item;
+            try {
+                final JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    checkTrailer(parser, parser.nextValue());
+                    complete();
+                    return;
+                }
+                item = reader.readValue(parser);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (demand.get() != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            try {
+                subscriber.onNext(item);
+            } catch (RuntimeException e) {
+                LOG.warn("Subscriber {} failed in onNext, cancelling", subscriber, e);
+                cancel();
+            }
+        }
+
+        private void complete()
+        {
+            done = true;
+            closeParser();
+            close();
+            subscriber.onComplete();
+        }
+
+        private void fail(Throwable t)
+        {
+            done = true;
+            closeParser();
+            close();
+            if (cancelled) {
+                LOG.debug("Ignoring failure after cancel", t);
+            } else {
+                subscriber.onError(t);
+            }
+        }
+
+        /** Drain thread only; hands the parser's buffers back for reuse. */
+        private void closeParser()
+        {
+            if (parser != null && !cancelled) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    LOG.debug("Failed to close parser", e);
+                }
+            }
+        }
+
+        /** Any thread; also ends a read in progress on the drain thread. */
+        private void close()
+        {
+            if (closed.compareAndSet(false, true)) {
+                response.close();
+            }
+        }
+    }
+
+    private static final Flow.Subscription CANCELLED = new Flow.Subscription() {
+        @Override
+        public void request(long n)
+        {
+            // nothing to deliver
+        }
+
+        @Override
+        public void cancel()
+        {
+            // nothing to stop
+        }
+    };
+}
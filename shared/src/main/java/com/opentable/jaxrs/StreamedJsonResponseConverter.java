@@ -15,7 +15,13 @@ package com.opentable.jaxrs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -28,7 +34,9 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
 import org.slf4j.Logger;
@@ -36,16 +44,35 @@ import org.slf4j.LoggerFactory;
 
 import com.opentable.callback.Callback;
 import com.opentable.callback.CallbackRefusedException;
+import com.opentable.jaxrs.json.JsonStreamFormat;
 
+/**
+ * Reads responses in the "standard wrapped results" style written by
+ * {@link com.opentable.jaxrs.json.JaxRsJsonStreamer#wrappedResultsArrayOf}, handing each element
+ * to a callback as soon as it is parsed.
+ *
+ * <p>{@link #read} pulls from the response's entity stream.  Where the transport instead pushes bytes
+ * as they arrive, {@link #feeder} parses them without blocking a thread for the whole stream.
+ * {@link #publisher} offers the elements as a {@link Flow.Publisher} with backpressure, and
+ * {@link #readBatches} hands them over in chunks for bulk processing.
+ *
+ * <p>{@link #read(Response, Callback, TypeReference, JsonStreamFormat) read} and
+ * {@link #readBatches(Response, Callback, TypeReference, int, long, JsonStreamFormat) readBatches} also take
+ * the newline delimited and JSON text sequence formats; the other ways in read the wrapped format only.
+ *
+ * <p>An {@link ObjectReader} is created once per element type and then reused, so changes made to the
+ * {@link ObjectMapper} after the first read of a type are not seen by it.
+ */
 @Singleton
 public class StreamedJsonResponseConverter
 {
     private static final Logger LOG = LoggerFactory.getLogger(StreamedJsonResponseConverter.class);
 
     private final ObjectMapper mapper;
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
 
     @Inject
-    StreamedJsonResponseConverter(ObjectMapper mapper)
+    public StreamedJsonResponseConverter(ObjectMapper mapper)
     {
         this.mapper = mapper;
     }
@@ -54,6 +81,117 @@ public class StreamedJsonResponseConverter
             Callback<T> callback,
             TypeReference<T> type)
     throws IOException
+    {
+        final ObjectReader reader = reader(type);
+        read(response, in -> {
+            try (JsonParser jp = mapper.getFactory().createParser(in)) {
+                doRead(callback, reader, jp);
+            }
+        });
+    }
+
+    /**
+     * As {@link #read}, for a response in the given format; pick it by the response's media type with
+     * {@link JsonStreamFormat#forMediaType}.  The record per element formats still end with a success
+     * record, and a stream that does not is an error just as for the wrapped format.
+     */
+    public <T> void read(Response response,
+            Callback<T> callback,
+            TypeReference<T> type,
+            JsonStreamFormat format)
+    throws IOException
+    {
+        if (format == JsonStreamFormat.WRAPPED_RESULTS) {
+            read(response, callback, type);
+            return;
+        }
+        final ObjectReader reader = reader(type);
+        read(response, in -> {
+            try (JsonParser jp = sequenceParser(in, format)) {
+                new JsonSequenceReader<T>(reader, jp).read(callback);
+            }
+        });
+    }
+
+    /**
+     * As {@link #read}, but delivers the elements in batches of up to {@code maxItems}, or fewer once
+     * their JSON adds up to {@code maxBytes}; the last batch may be smaller.  Calling back once per batch
+     * rather than per element suits bulk consumers such as batched database inserts.
+     *
+     * <p>The same list is refilled for every batch, so the callback must copy it if it keeps it.
+     */
+    public <T> void readBatches(Response response,
+            Callback<? super List<T>> callback,
+            TypeReference<T> type,
+            int maxItems,
+            long maxBytes)
+    throws IOException
+    {
+        Preconditions.checkArgument(maxItems > 0, "maxItems must be positive, was %s", maxItems);
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive, was %s", maxBytes);
+        final ObjectReader reader = reader(type);
+        read(response, in -> {
+            try (JsonParser jp = mapper.getFactory().createParser(in)) {
+                doReadBatches(callback, reader, jp, maxItems, maxBytes);
+            }
+        });
+    }
+
+    /**
+     * As {@link #readBatches(Response, Callback, TypeReference, int, long)}, for a response in the given format.
+     */
+    public <T> void readBatches(Response response,
+            Callback<? super List<T>> callback,
+            TypeReference<T> type,
+            int maxItems,
+            long maxBytes,
+            JsonStreamFormat format)
+    throws IOException
+    {
+        if (format == JsonStreamFormat.WRAPPED_RESULTS) {
+            readBatches(response, callback, type, maxItems, maxBytes);
+            return;
+        }
+        Preconditions.checkArgument(maxItems > 0, "maxItems must be positive, was %s", maxItems);
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive, was %s", maxBytes);
+        final ObjectReader reader = reader(type);
+        read(response, in -> {
+            try (JsonParser jp = sequenceParser(in, format)) {
+                new JsonSequenceReader<T>(reader, jp).readBatches(callback, maxItems, maxBytes);
+            }
+        });
+    }
+
+    private JsonParser sequenceParser(InputStream in, JsonStreamFormat format)
+    throws IOException
+    {
+        return mapper.getFactory().createParser(format == JsonStreamFormat.JSON_SEQ ? JsonSequenceReader.withoutRecordSeparators(in) : in);
+    }
+
+    /**
+     * As {@link #read}, but binds elements on {@code executor}, several at a time.  The calling thread
+     * only finds where each element starts and ends and copies its bytes; binding them runs in parallel.
+     * Callbacks still run on the calling thread, in order.  At most {@code window} elements are
+     * bound or waiting for their callback at once, which bounds both memory and the load put on
+     * {@code executor}.
+     *
+     * <p>Worth it when binding rather than I/O is the bottleneck, i.e. for large arrays of complex
+     * elements; for small ones, copying the bytes costs more than it saves.
+     */
+    public <T> void readParallel(Response response,
+            Callback<T> callback,
+            TypeReference<T> type,
+            Executor executor,
+            int window)
+    throws IOException
+    {
+        Preconditions.checkArgument(window > 0, "window must be positive, was %s", window);
+        final ObjectReader reader = reader(type);
+        read(response, in -> new ParallelResultsReader<T>(mapper.getFactory(), reader, executor, window).read(in, callback));
+    }
+
+    private void read(Response response, ResultsReader results)
+    throws IOException
     {
         try {
             final int sc = response.getStatus();
@@ -64,9 +202,7 @@ public class StreamedJsonResponseConverter
                 LOG.debug("Return code is {}, finishing.", response.getStatus());
                 return;
             case 200:
-                try (JsonParser jp = mapper.getFactory().createParser(response.readEntity(InputStream.class))) {
-                    doRead(callback, type, jp);
-                }
+                results.read(response.readEntity(InputStream.class));
                 return;
             default:
                 if (sc >= 400 && sc < 500) {
@@ -79,11 +215,96 @@ public class StreamedJsonResponseConverter
         }
     }
 
+    /**
+     * Offer the response's elements to a single subscriber, parsing them on {@code executor} only as
+     * the subscriber requests them.  The publisher owns the response and closes it on completion,
+     * error or cancellation.  Non-200 statuses are handled as by {@link #read}: 201 and 204 complete
+     * empty, 4xx and 5xx signal {@link ClientErrorException} and {@link ServerErrorException}.
+     */
+    public <T> Flow.Publisher<T> publisher(Response response, TypeReference<T> type, Executor executor)
+    {
+        return new StreamedJsonPublisher<>(response, mapper, reader(type), executor);
+    }
+
+    /**
+     * Start reading a response body that arrives in chunks, e.g. from a transport listener.
+     * Only 200 responses carry results; check the status before feeding.
+     */
+    public <T> StreamedJsonFeeder<T> feeder(Callback<T> callback, TypeReference<T> type)
+    throws IOException
+    {
+        return new StreamedJsonFeeder<>(mapper.getFactory().createNonBlockingByteArrayParser(), reader(type), callback);
+    }
+
+    <T> ObjectReader reader(TypeReference<T> type)
+    {
+        final ObjectReader reader = readers.get(type.getType());
+        if (reader != null) {
+            return reader;
+        }
+        return readers.computeIfAbsent(type.getType(), t -> mapper.readerFor(mapper.getTypeFactory().constructType(t)));
+    }
+
     private <T> void doRead(
             Callback<T> callback,
-            TypeReference<T> type,
+            ObjectReader reader,
             final JsonParser jp)
     throws IOException
+    {
+        readHeader(jp);
+
+        // bind each element straight off the parser; a MappingIterator would only add a layer
+        JsonToken token;
+        while ((token = jp.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            final T item = reader.readValue(jp);
+            if (!deliver(callback, item)) {
+                return;
+            }
+        }
+        checkTrailer(jp, jp.nextValue());
+    }
+
+    private <T> void doReadBatches(
+            Callback<? super List<T>> callback,
+            ObjectReader reader,
+            final JsonParser jp,
+            int maxItems,
+            long maxBytes)
+    throws IOException
+    {
+        readHeader(jp);
+
+        final List<T> batch = new ArrayList<>(Math.min(maxItems, 1024));
+        long batchBytes = 0;
+        JsonToken token;
+        while ((token = jp.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            final long start = jp.getTokenLocation().getByteOffset();
+            batch.add(reader.readValue(jp));
+            batchBytes += jp.getCurrentLocation().getByteOffset() - start;
+            if (batch.size() >= maxItems || batchBytes >= maxBytes) {
+                if (!deliverBatch(callback, batch)) {
+                    return;
+                }
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty() && !deliverBatch(callback, batch)) {
+            return;
+        }
+        checkTrailer(jp, jp.nextValue());
+    }
+
+    private static <T> boolean deliverBatch(Callback<? super List<T>> callback, List<T> batch) throws IOException
+    {
+        try {
+            return deliver(callback, batch);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /** Consume everything up to and including the start of the results array. */
+    static void readHeader(JsonParser jp) throws IOException
     {
         expect(jp, jp.nextToken(), JsonToken.START_OBJECT);
         expect(jp, jp.nextToken(), JsonToken.FIELD_NAME);
@@ -91,39 +312,50 @@ public class StreamedJsonResponseConverter
             throw new JsonParseException(jp, "expecting results field");
         }
         expect(jp, jp.nextToken(), JsonToken.START_ARRAY);
-        // As noted in a well-hidden comment in the MappingIterator constructor,
-        // readValuesAs requires the parser to be positioned after the START_ARRAY
-        // token with an empty current token
-        jp.clearCurrentToken();
-
-        Iterator<T> iter = jp.readValuesAs(type);
+    }
 
-        while (iter.hasNext()) {
-            try {
-                callback.call(iter.next());
-            }
-            catch (CallbackRefusedException e) {
-                LOG.debug("callback refused execution, finishing.", e);
-                return;
-            }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException("Callback interrupted", e);
-            }
-            catch (Exception e) {
-                Throwables.propagateIfPossible(e, IOException.class);
-                throw new IOException("Callback failure", e);
-            }
+    /**
+     * @return false if the callback refused the item and no more should be delivered
+     */
+    static <T> boolean deliver(Callback<? super T> callback, T item) throws IOException
+    {
+        try {
+            callback.call(item);
+            return true;
+        }
+        catch (CallbackRefusedException e) {
+            LOG.debug("callback refused execution, finishing.", e);
+            return false;
         }
-        if (jp.nextValue() != JsonToken.VALUE_TRUE || !"success".equals(jp.getCurrentName())) {
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Callback interrupted", e);
+        }
+        catch (Exception e) {
+            Throwables.propagateIfPossible(e, IOException.class);
+            throw new IOException("Callback failure", e);
+        }
+    }
+
+    /**
+     * @param token the first value after the results array
+     */
+    static void checkTrailer(JsonParser jp, JsonToken token) throws IOException
+    {
+        if (token != JsonToken.VALUE_TRUE || !"success".equals(jp.getCurrentName())) {
             throw new IOException("Streamed receive did not terminate normally; inspect server logs for cause.");
         }
     }
 
-    private void expect(final JsonParser jp, final JsonToken token, final JsonToken expected) throws JsonParseException
+    static void expect(final JsonParser jp, final JsonToken token, final JsonToken expected) throws JsonParseException
     {
         if (!Objects.equal(token, expected)) {
             throw new JsonParseException(jp, String.format("Expected %s, found %s", expected, token));
         }
     }
+
+    private interface ResultsReader
+    {
+        void read(InputStream entity) throws IOException;
+    }
 }
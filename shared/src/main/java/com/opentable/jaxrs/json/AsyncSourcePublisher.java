@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Flow.Publisher} over an {@link JaxRsJsonStreamer.AsyncSource}: asks it for the next batch only
+ * once the previous one is used up and there is demand.  Batches may complete on any thread, or
+ * already be complete; delivery is trampolined so neither grows the stack.  Only one subscriber is allowed.
+ */
+final class AsyncSourcePublisher<T> implements Flow.Publisher<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSourcePublisher.class);
+
+    private final JaxRsJsonStreamer.AsyncSource<? extends T> source;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    AsyncSourcePublisher(JaxRsJsonStreamer.AsyncSource<? extends T> source)
+    {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n)
+                {
+                    // nothing to deliver
+                }
+
+                @Override
+                public void cancel()
+                {
+                    // nothing to cancel
+                }
+            });
+            subscriber.onError(new IllegalStateException("An async source can be subscribed to only once"));
+            return;
+        }
+        final SourceSubscription subscription = new SourceSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class SourceSubscription implements Flow.Subscription
+    {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        /** Signals not yet seen by {@link #drain}; only the thread that raises it from 0 drains. */
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+        /** Set by a completed batch, taken by {@link #drain}. */
+        private volatile Iterator<? extends T> arrived;
+        private volatile boolean exhausted;
+
+        /** Only touched while draining. */
+        private Iterator<? extends T> batch;
+        private boolean fetching;
+        private boolean done;
+
+        SourceSubscription(Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " elements; must be positive");
+            } else {
+                demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        private void drain()
+        {
+            if (pending.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!done && !cancelled) {
+                    if (failure != null) {
+                        done = true;
+                        subscriber.onError(failure);
+                    } else if (batch != null && batch.hasNext()) {
+                        if (demand.get() == 0) {
+                            break;
+                        }
+                        if (demand.get() != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        subscriber.onNext(batch.next());
+                    } else if (arrived != null) {
+                        batch = arrived;
+                        arrived = null;
+                        fetching = false;
+                    } else if (exhausted) {
+                        done = true;
+                        subscriber.onComplete();
+                    } else if (!fetching && demand.get() > 0) {
+                        fetching = true;
+                        fetch();
+                    } else {
+                        break;
+                    }
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void fetch()
+        {
+            try {
+                source.next().whenComplete((next, error) -> {
+                    final Iterator<? extends T> elements = error == null && next != null ? next.iterator() : null;
+                    if (error != null) {
+                        failure = error;
+                    } else if (elements == null || !elements.hasNext()) {
+                        exhausted = true;
+                    } else {
+                        arrived = elements;
+                    }
+                    drain();
+                });
+            } catch (final RuntimeException e) {
+                LOG.debug("Async source {} failed", source, e);
+                failure = e;
+            }
+        }
+    }
+}
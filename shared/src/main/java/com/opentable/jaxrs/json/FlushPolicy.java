@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides when {@link JaxRsJsonStreamer} flushes what it has written so far through to the client,
+ * so clients see the first results early and long streams never sit on a large unflushed buffer.
+ *
+ * <p>Consulted after every element with what was written since the last flush.  Nothing watches the
+ * clock in between, so a time based policy only takes effect when the next element is written.
+ */
+@FunctionalInterface
+public interface FlushPolicy
+{
+    /** Flush after every element, so each reaches the client as soon as it is written.  The default. */
+    FlushPolicy EVERY_ELEMENT = (elements, bytes, nanos) -> true;
+
+    /** Never flush explicitly; output goes out whenever a buffer fills up, and at the end. */
+    FlushPolicy NEVER = (elements, bytes, nanos) -> false;
+
+    /**
+     * @param elements elements written since the last flush
+     * @param bytes bytes written since the last flush, including those still buffered
+     * @param nanos nanoseconds since the last flush, or since the stream started
+     * @return true to flush now
+     */
+    boolean shouldFlush(long elements, long bytes, long nanos);
+
+    /** Flush once this many elements have been written since the last flush. */
+    static FlushPolicy everyElements(long elements)
+    {
+        Preconditions.checkArgument(elements > 0, "elements must be positive, was %s", elements);
+        return (e, b, n) -> e >= elements;
+    }
+
+    /** Flush once this many bytes have been written since the last flush. */
+    static FlushPolicy everyBytes(long bytes)
+    {
+        Preconditions.checkArgument(bytes > 0, "bytes must be positive, was %s", bytes);
+        return (e, b, n) -> b >= bytes;
+    }
+
+    /** Flush after an element if at least {@code interval} has passed since the last flush. */
+    static FlushPolicy every(Duration interval)
+    {
+        final long nanos = interval.toNanos();
+        return (e, b, n) -> n >= nanos;
+    }
+
+    /** @return a policy that flushes when either this one or {@code other} would */
+    default FlushPolicy or(FlushPolicy other)
+    {
+        return (e, b, n) -> shouldFlush(e, b, n) || other.shouldFlush(e, b, n);
+    }
+}
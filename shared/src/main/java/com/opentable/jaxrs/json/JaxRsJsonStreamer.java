@@ -13,21 +13,30 @@
  */
 package com.opentable.jaxrs.json;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.StreamingOutput;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,21 +45,58 @@ import com.opentable.callback.Callback;
 /**
  * A configurable JAX-RS Json output streamer.  Allows customization of the header, footer, and how
  * each element is written.
+ *
+ * <p>How often output is pushed through to the client is governed by a {@link FlushPolicy}; by default
+ * that happens after every element.  Writes block while the client is not
+ * keeping up, so a flushing stream is held back to the client's pace rather than piling up output.
+ * A {@link StreamListener} hears about every finished stream.
+ *
+ * <p>{@link #execute} writes on the container thread that calls it, for as long as the stream lasts;
+ * {@code stream} writes through non-blocking servlet output instead and holds no thread while waiting.
  */
 public class JaxRsJsonStreamer<T>
 {
     private static final Logger LOG = LoggerFactory.getLogger(JaxRsJsonStreamer.class);
 
-    private final ObjectMapper mapper;
-    private final Callback<JsonGenerator> header;
-    private final Callback<JsonGenerator> footer;
-    private final JsonEmitter<T> emitter;
+    // package-private for NonBlockingJsonWriter
+    final ObjectMapper mapper;
+    final Callback<JsonGenerator> header;
+    final Callback<JsonGenerator> footer;
+    final JsonEmitter<T> emitter;
+    final FlushPolicy flushPolicy;
+    final int bufferSize;
+    final StreamListener listener;
+    final String mediaType;
+    private final PooledBufferedOutputStream.Pool bufferPool;
+
+    /** Buffers kept for reuse by one streamer when {@link Builder#withBufferSize} is set. */
+    static final int POOLED_BUFFERS = 16;
 
     public interface JsonEmitter<T>
     {
         void emit(JsonGenerator g, T element) throws IOException;
     }
 
+    /** Pulls elements a batch at a time for {@link #stream(AsyncSource, HttpServletRequest, HttpServletResponse)}. */
+    @FunctionalInterface
+    public interface AsyncSource<T>
+    {
+        /**
+         * Called again only once the previous batch has completed and been written out.
+         * @return the next elements; an empty batch ends the stream, a failed stage aborts it
+         */
+        CompletionStage<? extends Iterable<? extends T>> next();
+    }
+
+    /** Told about each stream once it has ended, successfully or not. */
+    @FunctionalInterface
+    public interface StreamListener
+    {
+        StreamListener NONE = stats -> { };
+
+        void streamFinished(StreamStats stats);
+    }
+
     public static class Builder<T>
     {
         private Callback<JsonGenerator> header;
@@ -58,6 +104,10 @@ public class JaxRsJsonStreamer<T>
 
         @SuppressWarnings("unchecked")
         private JsonEmitter<T> emitter = (JsonEmitter<T>) StandardStreamCallbacks.DEFAULT_EMITTER;
+        private FlushPolicy flushPolicy = FlushPolicy.EVERY_ELEMENT;
+        private int bufferSize;
+        private StreamListener listener = StreamListener.NONE;
+        private String mediaType = MediaType.APPLICATION_JSON;
 
         private final TypeReference<T> type;
 
@@ -84,9 +134,40 @@ public class JaxRsJsonStreamer<T>
             return this;
         }
 
+        /** @param withFlushPolicy when to push output written so far through to the client; by default after every element */
+        public Builder<T> withFlushPolicy(FlushPolicy withFlushPolicy)
+        {
+            this.flushPolicy = withFlushPolicy;
+            return this;
+        }
+
+        /**
+         * Collect output into buffers of this size, drawn from a pool shared by this streamer's responses,
+         * before handing it to the container.  0, the default, writes straight through the generator.
+         */
+        public Builder<T> withBufferSize(int withBufferSize)
+        {
+            checkArgument(withBufferSize >= 0, "negative buffer size %s", withBufferSize);
+            this.bufferSize = withBufferSize;
+            return this;
+        }
+
+        public Builder<T> withListener(StreamListener withListener)
+        {
+            this.listener = withListener;
+            return this;
+        }
+
+        /** @param withMediaType the content type {@code stream} gives responses that have none yet */
+        public Builder<T> withMediaType(String withMediaType)
+        {
+            this.mediaType = withMediaType;
+            return this;
+        }
+
         public JaxRsJsonStreamer<T> build(ObjectMapper mapper)
         {
-            return new JaxRsJsonStreamer<T>(mapper, type, emitter, header, footer);
+            return new JaxRsJsonStreamer<T>(mapper, type, emitter, header, footer, flushPolicy, bufferSize, listener, mediaType);
         }
     }
 
@@ -134,13 +215,73 @@ public class JaxRsJsonStreamer<T>
         return builder(type).withHeader(StandardStreamCallbacks.ARRAY_HEADER).withFooter(StandardStreamCallbacks.ARRAY_FOOTER);
     }
 
+    /**
+     * Convenience method to create responses as newline delimited JSON ({@value JsonStreamFormat#APPLICATION_NDJSON}),
+     * ending with a success record.  Every line parses on its own, so such streams are easy to split and resume.
+     * <pre>
+     * item
+     * item
+     * ...
+     * {"success":true}
+     * </pre>
+     * A custom emitter must still end each element with a newline.
+     * @param type the generic type
+     * @param <T> generic type
+     * @return Builder
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Builder<T> ndjsonOf(TypeReference<T> type)
+    {
+        return builder(type)
+                .withHeader(StandardStreamCallbacks.SEQUENCE_HEADER)
+                .withEmitter((JsonEmitter<T>) StandardStreamCallbacks.NDJSON_EMITTER)
+                .withFooter(StandardStreamCallbacks.NDJSON_FOOTER)
+                .withMediaType(JsonStreamFormat.APPLICATION_NDJSON);
+    }
+
+    /**
+     * Convenience method to create responses as a JSON text sequence ({@value JsonStreamFormat#APPLICATION_JSON_SEQ},
+     * RFC 7464), ending with a success record.  Each record starts with an ASCII record separator
+     * ({@code RS} below) and ends with a newline.
+     * <pre>
+     * RS item
+     * RS item
+     * ...
+     * RS {"success":true}
+     * </pre>
+     * A custom emitter must keep that framing.
+     * @param type the generic type
+     * @param <T> generic type
+     * @return Builder
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Builder<T> jsonSeqOf(TypeReference<T> type)
+    {
+        return builder(type)
+                .withHeader(StandardStreamCallbacks.SEQUENCE_HEADER)
+                .withEmitter((JsonEmitter<T>) StandardStreamCallbacks.JSON_SEQ_EMITTER)
+                .withFooter(StandardStreamCallbacks.JSON_SEQ_FOOTER)
+                .withMediaType(JsonStreamFormat.APPLICATION_JSON_SEQ);
+    }
+
     JaxRsJsonStreamer(ObjectMapper mapper, TypeReference<T> type, JsonEmitter<T> emitter, Callback<JsonGenerator> header, Callback<JsonGenerator> footer)
+    {
+        this(mapper, type, emitter, header, footer, FlushPolicy.EVERY_ELEMENT, 0, StreamListener.NONE, MediaType.APPLICATION_JSON);
+    }
+
+    JaxRsJsonStreamer(ObjectMapper mapper, TypeReference<T> type, JsonEmitter<T> emitter, Callback<JsonGenerator> header, Callback<JsonGenerator> footer,
+                      FlushPolicy flushPolicy, int bufferSize, StreamListener listener, String mediaType)
     {
         this.emitter = checkNotNull(emitter, "null emitter");
         this.mapper = checkNotNull(mapper, "null mapper");
         checkNotNull(type, "null type");
         this.header = checkNotNull(header, "no header writer set");
         this.footer = checkNotNull(footer, "no footer writer set");
+        this.flushPolicy = checkNotNull(flushPolicy, "null flush policy");
+        this.listener = checkNotNull(listener, "null listener");
+        this.mediaType = checkNotNull(mediaType, "null media type");
+        this.bufferSize = bufferSize;
+        this.bufferPool = bufferSize > 0 ? new PooledBufferedOutputStream.Pool(bufferSize, POOLED_BUFFERS) : null;
     }
 
     public StreamingOutput execute(Callback<Callback<T>> callback)
@@ -148,6 +289,47 @@ public class JaxRsJsonStreamer<T>
         return new JsonStreamingOutput(callback);
     }
 
+    /**
+     * Streams {@code source} to a servlet response without holding a thread while the client reads.
+     * The request is put into async mode with no timeout and this returns straight away; elements are
+     * serialized as they arrive and handed to the container only when its non-blocking output is
+     * ready, and more are requested only once what was written has gone out.  A small thread pool
+     * can so serve a great many long-lived streams, and a slow client slows its source down instead
+     * of filling memory.
+     *
+     * <p>Header, footer, emitter, flush policy and listener apply as for {@link #execute}.  If the source
+     * fails the footer is never written, so clients see a truncated document rather than a complete one;
+     * if nothing was sent yet the status is 500 instead.
+     *
+     * <p>From a JAX-RS resource, inject the servlet request and response with {@code @Context} and take
+     * a {@code @Suspended AsyncResponse}, which is never resumed, so the runtime leaves the response alone.
+     *
+     * @param source the elements; only one subscriber is ever made
+     * @param request the servlet request being answered
+     * @param response its response; nothing else may write to it
+     * @throws IOException if the response could not be set up
+     */
+    public void stream(Flow.Publisher<? extends T> source, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        final AsyncContext async = request.isAsyncStarted() ? request.getAsyncContext() : request.startAsync(request, response);
+        async.setTimeout(0);
+        if (response.getContentType() == null) {
+            response.setContentType(mediaType);
+        }
+        final NonBlockingJsonWriter<T> writer = new NonBlockingJsonWriter<>(this, async, response);
+        writer.start();
+        source.subscribe(writer);
+    }
+
+    /**
+     * As {@link #stream(Flow.Publisher, HttpServletRequest, HttpServletResponse)}, pulling batches from
+     * {@code source} as the client keeps up.
+     */
+    public void stream(AsyncSource<? extends T> source, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        stream(new AsyncSourcePublisher<T>(source), request, response);
+    }
+
     private class JsonStreamingOutput implements StreamingOutput
     {
         private final Callback<Callback<T>> callback;
@@ -160,22 +342,38 @@ public class JaxRsJsonStreamer<T>
         @Override
         public void write(OutputStream output) throws IOException, WebApplicationException
         {
-            final StopWatch sw = new StopWatch();
-            sw.start();
+            final long start = System.nanoTime();
 
             LOG.trace("Start streaming {}", JaxRsJsonStreamer.this);
+            final CountingOutputStream counted = new CountingOutputStream(output);
+            final PooledBufferedOutputStream buffered = bufferPool == null ? null : new PooledBufferedOutputStream(counted, bufferPool);
             final AtomicLong count = new AtomicLong();
             boolean success = false;
 
-            try (JsonGenerator jg = mapper.getFactory().createGenerator(output)) {
+            try (JsonGenerator out = mapper.getFactory().createGenerator(buffered == null ? counted : buffered);
+                 JsonGenerator jg = new PolicyFlushedGenerator(out)) {
 
                 header.call(jg);
 
                 callback.call(new Callback<T>() {
+                    private long flushedElements;
+                    private long flushedBytes;
+                    private long flushedNanos = start;
+
                     @Override
                     public void call(T item) throws Exception
                     {
                         emitter.emit(jg, item);
+                        final long elements = count.incrementAndGet();
+
+                        final long bytes = counted.count + jg.getOutputBuffered() + (buffered == null ? 0 : buffered.getBuffered());
+                        final long now = System.nanoTime();
+                        if (flushPolicy.shouldFlush(elements - flushedElements, bytes - flushedBytes, now - flushedNanos)) {
+                            out.flush();
+                            flushedElements = elements;
+                            flushedBytes = bytes;
+                            flushedNanos = now;
+                        }
                     }
                 });
 
@@ -186,12 +384,74 @@ public class JaxRsJsonStreamer<T>
                 Throwables.propagateIfPossible(t, WebApplicationException.class, IOException.class);
                 throw new RuntimeException(t);
             } finally {
+                final long end = System.nanoTime();
+                final StreamStats stats = new StreamStats(success, count.get(), counted.count,
+                        counted.count == 0 ? null : Duration.ofNanos(counted.firstByteNanos - start),
+                        Duration.ofNanos(end - start));
                 if (success) {
-                    LOG.trace("Succeeded streaming {} results in {}ms for {}", count.get(), sw.getTime(), JaxRsJsonStreamer.this);
+                    LOG.trace("Succeeded streaming {} for {}", stats, JaxRsJsonStreamer.this);
                 } else {
-                    LOG.debug("Failed streaming after {} results in {}ms for {}", count.get(), sw.getTime(), JaxRsJsonStreamer.this);
+                    LOG.debug("Failed streaming {} for {}", stats, JaxRsJsonStreamer.this);
+                }
+                try {
+                    listener.streamFinished(stats);
+                } catch (final RuntimeException e) {
+                    LOG.warn("Stream listener failed for {}", JaxRsJsonStreamer.this, e);
                 }
             }
         }
     }
+
+    /**
+     * Ignores flushes asked for while writing, such as the one {@link ObjectMapper} does after each
+     * value by default, leaving them to the flush policy.
+     */
+    static class PolicyFlushedGenerator extends JsonGeneratorDelegate
+    {
+        PolicyFlushedGenerator(JsonGenerator out)
+        {
+            // not copying methods makes writeObject serialize through this generator, and so its flush
+            super(out, false);
+        }
+
+        @Override
+        public void flush()
+        {
+            // the flush policy decides
+        }
+    }
+
+    /** Counts the bytes handed to the container and notes when the first of them went. */
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+        private long firstByteNanos;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            written(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            written(len);
+            out.write(b, off, len);
+        }
+
+        private void written(int len)
+        {
+            if (count == 0 && len > 0) {
+                firstByteNanos = System.nanoTime();
+            }
+            count += len;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Wire formats {@link JaxRsJsonStreamer} writes and {@link com.opentable.jaxrs.StreamedJsonResponseConverter}
+ * reads.  Each ends by saying it succeeded, so a client can tell a complete stream from a cut-off one.
+ */
+public enum JsonStreamFormat
+{
+    /** {@code {"results":[...],"success":true}}, see {@link JaxRsJsonStreamer#wrappedResultsArrayOf}. */
+    WRAPPED_RESULTS(MediaType.APPLICATION_JSON_TYPE),
+    /**
+     * Newline delimited JSON: one element per line, then a {@code {"success":true}} line,
+     * see {@link JaxRsJsonStreamer#ndjsonOf}.
+     */
+    NDJSON(new MediaType("application", "x-ndjson")),
+    /**
+     * JSON text sequence (RFC 7464): each element preceded by a record separator and followed by a
+     * newline, then a {@code {"success":true}} record, see {@link JaxRsJsonStreamer#jsonSeqOf}.
+     */
+    JSON_SEQ(new MediaType("application", "json-seq"));
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String APPLICATION_JSON_SEQ = "application/json-seq";
+
+    private final MediaType mediaType;
+
+    JsonStreamFormat(MediaType mediaType)
+    {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    /** @return the format a response of this media type is in; {@link #WRAPPED_RESULTS} for anything else, or none */
+    public static JsonStreamFormat forMediaType(MediaType mediaType)
+    {
+        if (mediaType != null) {
+            for (final JsonStreamFormat format : values()) {
+                if (format != WRAPPED_RESULTS && format.mediaType.isCompatible(mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return WRAPPED_RESULTS;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Throwables;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes one stream for {@link JaxRsJsonStreamer#stream}.  Elements are serialized into memory as the
+ * source delivers them and handed to the container only while its output
+ * {@link ServletOutputStream#isReady() is ready}; otherwise the container calls back once it is.
+ * More elements are requested only while less than a chunk waits to go out, which bounds what one
+ * stream holds and passes a slow client's pace back to the source.
+ *
+ * <p>The source and the container may call in on any thread; all state is guarded by this object.
+ */
+final class NonBlockingJsonWriter<T> implements Flow.Subscriber<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(NonBlockingJsonWriter.class);
+
+    /** Chunk size when the streamer has no {@link JaxRsJsonStreamer.Builder#withBufferSize buffer size}. */
+    static final int DEFAULT_CHUNK = 8192;
+    /** Elements asked for at a time. */
+    static final int REQUEST_BATCH = 16;
+
+    private final JaxRsJsonStreamer<T> streamer;
+    private final AsyncContext async;
+    private final HttpServletResponse response;
+    private final int chunkSize;
+    private final Pending pending;
+    private final JsonGenerator out;
+    private final JsonGenerator jg;
+    private final long start = System.nanoTime();
+
+    private ServletOutputStream servletOut;
+    private Flow.Subscription subscription;
+    private long outstanding;
+    private boolean flushWanted;
+    private boolean finished;
+    private boolean closed;
+
+    private long elements;
+    private long written;
+    private long firstByteNanos;
+    private long flushedElements;
+    private long flushedBytes;
+    private long flushedNanos = start;
+
+    NonBlockingJsonWriter(JaxRsJsonStreamer<T> streamer, AsyncContext async, HttpServletResponse response) throws IOException
+    {
+        this.streamer = streamer;
+        this.async = async;
+        this.response = response;
+        this.chunkSize = streamer.bufferSize > 0 ? streamer.bufferSize : DEFAULT_CHUNK;
+        this.pending = new Pending(chunkSize);
+        this.out = streamer.mapper.getFactory().createGenerator(pending);
+        // a failed stream must not look complete
+        out.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        this.jg = new JaxRsJsonStreamer.PolicyFlushedGenerator(out);
+    }
+
+    /** Writes the header and starts listening to the container; call before subscribing. */
+    synchronized void start() throws IOException
+    {
+        LOG.trace("Start streaming asynchronously {}", streamer);
+        try {
+            streamer.header.call(jg);
+        } catch (final Exception e) {
+            async.complete();
+            Throwables.propagateIfPossible(e, IOException.class);
+            throw new RuntimeException(e);
+        }
+        async.addListener(new Abandoned());
+        servletOut = response.getOutputStream();
+        servletOut.setWriteListener(new Output());
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription s)
+    {
+        if (subscription != null || closed) {
+            s.cancel();
+            return;
+        }
+        subscription = s;
+        demand();
+    }
+
+    @Override
+    public synchronized void onNext(T item)
+    {
+        if (closed || finished) {
+            return;
+        }
+        outstanding--;
+        try {
+            streamer.emitter.emit(jg, item);
+            elements++;
+            final long bytes = written + pending.size() + out.getOutputBuffered();
+            final long now = System.nanoTime();
+            if (streamer.flushPolicy.shouldFlush(elements - flushedElements, bytes - flushedBytes, now - flushedNanos)) {
+                out.flush();
+                flushWanted = true;
+                flushedElements = elements;
+                flushedBytes = bytes;
+                flushedNanos = now;
+            }
+        } catch (final IOException | RuntimeException e) {
+            abort(e);
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t)
+    {
+        abort(t);
+    }
+
+    @Override
+    public synchronized void onComplete()
+    {
+        if (closed || finished) {
+            return;
+        }
+        try {
+            streamer.footer.call(jg);
+            out.close();
+        } catch (final Exception e) {
+            abort(e);
+            return;
+        }
+        finished = true;
+        drain();
+    }
+
+    /** Hands over whatever the container will take now, finishing once everything has gone. */
+    private void drain()
+    {
+        // not listening to the container yet; it calls onWritePossible once we are
+        if (servletOut == null) {
+            return;
+        }
+        try {
+            while (!closed) {
+                final boolean write = pending.size() > 0 && (finished || flushWanted || pending.size() >= chunkSize);
+                if (!write && !flushWanted && !finished) {
+                    break;
+                }
+                if (!servletOut.isReady()) {
+                    // the container calls onWritePossible once it is; meanwhile keep serializing up to a
+                    // chunk, so the next write takes everything that arrived while this one was in flight
+                    break;
+                }
+                if (write) {
+                    if (written == 0) {
+                        firstByteNanos = System.nanoTime();
+                    }
+                    written += pending.size();
+                    pending.handOver(servletOut);
+                } else if (flushWanted) {
+                    flushWanted = false;
+                    servletOut.flush();
+                } else {
+                    close(true);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            abort(e);
+            return;
+        }
+        demand();
+    }
+
+    private void demand()
+    {
+        if (!closed && !finished && subscription != null && outstanding <= 0 && pending.size() < chunkSize) {
+            outstanding = REQUEST_BATCH;
+            subscription.request(REQUEST_BATCH);
+        }
+    }
+
+    private void abort(Throwable t)
+    {
+        if (closed) {
+            return;
+        }
+        LOG.debug("Aborting stream after {} elements for {}", elements, streamer, t);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        try {
+            out.close();
+        } catch (final IOException e) {
+            LOG.trace("Ignoring failure to close generator", e);
+        }
+        try {
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } catch (final IllegalStateException e) {
+            LOG.trace("Response committed meanwhile", e);
+        }
+        close(false);
+    }
+
+    private void close(boolean success)
+    {
+        closed = true;
+        final StreamStats stats = new StreamStats(success, elements, written,
+                written == 0 ? null : Duration.ofNanos(firstByteNanos - start),
+                Duration.ofNanos(System.nanoTime() - start));
+        if (success) {
+            LOG.trace("Succeeded streaming {} for {}", stats, streamer);
+        } else {
+            LOG.debug("Failed streaming {} for {}", stats, streamer);
+        }
+        try {
+            streamer.listener.streamFinished(stats);
+        } catch (final RuntimeException e) {
+            LOG.warn("Stream listener failed for {}", streamer, e);
+        }
+        try {
+            async.complete();
+        } catch (final IllegalStateException e) {
+            LOG.trace("Request already completed", e);
+        }
+    }
+
+    private final class Output implements WriteListener
+    {
+        @Override
+        public void onWritePossible()
+        {
+            synchronized (NonBlockingJsonWriter.this) {
+                drain();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+            synchronized (NonBlockingJsonWriter.this) {
+                abort(t);
+            }
+        }
+    }
+
+    /** Notices the request ending under us, e.g. the client going away while the source is quiet. */
+    private final class Abandoned implements AsyncListener
+    {
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            // either we completed it or onError / onTimeout saw why
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            onError(event);
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            synchronized (NonBlockingJsonWriter.this) {
+                abort(event.getThrowable());
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+            // not restarted
+        }
+    }
+
+    /**
+     * Collects serialized output.  The container may go on reading an array it was handed after
+     * {@code write} returns, so each hand-over gives it away and starts a fresh one.
+     */
+    private static final class Pending extends ByteArrayOutputStream
+    {
+        private final int initialSize;
+
+        Pending(int initialSize)
+        {
+            super(initialSize);
+            this.initialSize = initialSize;
+        }
+
+        void handOver(ServletOutputStream to) throws IOException
+        {
+            final byte[] full = buf;
+            final int length = count;
+            buf = new byte[initialSize];
+            count = 0;
+            to.write(full, 0, length);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Buffers writes to the container's stream in an array borrowed from a {@link Pool} for the life
+ * of one response, so the container sees few, large writes without every stream allocating a
+ * buffer of its own.  The array goes back to the pool on {@link #close()}.
+ */
+final class PooledBufferedOutputStream extends OutputStream
+{
+    private final OutputStream out;
+    private final Pool pool;
+    private byte[] buf;
+    private int count;
+
+    PooledBufferedOutputStream(OutputStream out, Pool pool)
+    {
+        this.out = out;
+        this.pool = pool;
+        this.buf = pool.acquire();
+    }
+
+    /** @return bytes written to this stream but not yet passed on */
+    int getBuffered()
+    {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (count == buf.length) {
+            drain();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (len >= buf.length) {
+            drain();
+            out.write(b, off, len);
+            return;
+        }
+        if (len > buf.length - count) {
+            drain();
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (buf == null) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            pool.release(buf);
+            buf = null;
+            out.close();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /** Keeps up to {@code retained} buffers of one size for reuse; more may be lent out at once. */
+    static final class Pool
+    {
+        private final int bufferSize;
+        private final Queue<byte[]> free;
+
+        Pool(int bufferSize, int retained)
+        {
+            this.bufferSize = bufferSize;
+            this.free = new ArrayBlockingQueue<>(retained);
+        }
+
+        byte[] acquire()
+        {
+            final byte[] buf = free.poll();
+            return buf != null ? buf : new byte[bufferSize];
+        }
+
+        void release(byte[] buf)
+        {
+            free.offer(buf);
+        }
+    }
+}
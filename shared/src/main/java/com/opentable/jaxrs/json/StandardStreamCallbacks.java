@@ -51,6 +51,64 @@ class StandardStreamCallbacks
         }
     };
 
+    /** Precedes each record of a JSON text sequence. */
+    static final char RECORD_SEPARATOR = '\u001E';
+
+    static final Callback<JsonGenerator> SEQUENCE_HEADER = new Callback<JsonGenerator>() {
+        @Override
+        public void call(JsonGenerator jg) throws Exception
+        {
+            // records are framed by the emitter, not spaces between root values
+            jg.setRootValueSeparator(null);
+        }
+    };
+
+    static final JsonEmitter<Object> NDJSON_EMITTER = new JsonEmitter<Object>() {
+        @Override
+        public void emit(JsonGenerator g, Object element) throws IOException
+        {
+            g.writeObject(element);
+            g.writeRaw('\n');
+        }
+    };
+
+    static final Callback<JsonGenerator> NDJSON_FOOTER = new Callback<JsonGenerator>() {
+        @Override
+        public void call(JsonGenerator jg) throws Exception
+        {
+            writeSuccess(jg);
+            jg.writeRaw('\n');
+        }
+    };
+
+    static final JsonEmitter<Object> JSON_SEQ_EMITTER = new JsonEmitter<Object>() {
+        @Override
+        public void emit(JsonGenerator g, Object element) throws IOException
+        {
+            g.writeRaw(RECORD_SEPARATOR);
+            g.writeObject(element);
+            g.writeRaw('\n');
+        }
+    };
+
+    static final Callback<JsonGenerator> JSON_SEQ_FOOTER = new Callback<JsonGenerator>() {
+        @Override
+        public void call(JsonGenerator jg) throws Exception
+        {
+            jg.writeRaw(RECORD_SEPARATOR);
+            writeSuccess(jg);
+            jg.writeRaw('\n');
+        }
+    };
+
+    /** The terminal record of a sequence. */
+    private static void writeSuccess(JsonGenerator jg) throws IOException
+    {
+        jg.writeStartObject();
+        jg.writeBooleanField("success", true);
+        jg.writeEndObject();
+    }
+
     static final Callback<JsonGenerator> ARRAY_HEADER = new Callback<JsonGenerator>() {
         @Override
         public void call(JsonGenerator jg) throws Exception
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * What one {@link JaxRsJsonStreamer} response wrote, handed to its
+ * {@link JaxRsJsonStreamer.StreamListener} when the stream ends.
+ */
+public final class StreamStats
+{
+    private final boolean success;
+    private final long elements;
+    private final long bytes;
+    private final Duration timeToFirstByte;
+    private final Duration duration;
+
+    StreamStats(boolean success, long elements, long bytes, Duration timeToFirstByte, Duration duration)
+    {
+        this.success = success;
+        this.elements = elements;
+        this.bytes = bytes;
+        this.timeToFirstByte = timeToFirstByte;
+        this.duration = duration;
+    }
+
+    /** @return true if the footer was written, i.e. the client got a complete document */
+    public boolean isSuccess()
+    {
+        return success;
+    }
+
+    /** @return elements written */
+    public long getElements()
+    {
+        return elements;
+    }
+
+    /** @return bytes handed to the container */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /** @return time from the start of the stream until the first bytes were handed to the container, if any were */
+    public Optional<Duration> getTimeToFirstByte()
+    {
+        return Optional.ofNullable(timeToFirstByte);
+    }
+
+    /** @return time from the start of the stream until it ended */
+    public Duration getDuration()
+    {
+        return duration;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StreamStats[success=" + success + ", elements=" + elements + ", bytes=" + bytes
+                + ", timeToFirstByte=" + timeToFirstByte + ", duration=" + duration + "]";
+    }
+}
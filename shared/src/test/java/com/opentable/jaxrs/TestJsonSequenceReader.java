@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentable.callback.CallbackCollector;
+import com.opentable.callback.CallbackRefusedException;
+import com.opentable.jaxrs.json.JaxRsJsonStreamer;
+import com.opentable.jaxrs.json.JsonStreamFormat;
+
+public class TestJsonSequenceReader
+{
+    private static final TypeReference<Integer> INT_TYPE_REF = new TypeReference<Integer>() {};
+    private static final TypeReference<Map<String, Object>> MAP_TYPE_REF = new TypeReference<Map<String, Object>>() {};
+
+    public static final String NDJSON = "1\n2\n3\n{\"success\":true}\n";
+    public static final String JSON_SEQ = "\u001E1\n\u001E2\n\u001E3\n\u001E{\"success\":true}\n";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StreamedJsonResponseConverter streamer = new StreamedJsonResponseConverter(mapper);
+
+    private static Response response(String body)
+    {
+        final Response response = EasyMock.createMock(Response.class);
+        EasyMock.expect(response.getStatus()).andReturn(Status.OK.getStatusCode()).anyTimes();
+        EasyMock.expect(response.readEntity(InputStream.class)).andReturn(new ByteArrayInputStream(body.getBytes(Charsets.UTF_8)));
+        response.close();
+        EasyMock.expectLastCall();
+        EasyMock.replay(response);
+        return response;
+    }
+
+    private <T> String write(JaxRsJsonStreamer.Builder<T> builder, List<T> items) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.build(mapper).execute(callback -> {
+            for (T item : items) {
+                callback.call(item);
+            }
+        }).write(out);
+        return out.toString(Charsets.UTF_8);
+    }
+
+    @Test
+    public void testWriteNdjson() throws IOException
+    {
+        Assert.assertEquals(NDJSON, write(JaxRsJsonStreamer.ndjsonOf(INT_TYPE_REF), ImmutableList.of(1, 2, 3)));
+    }
+
+    @Test
+    public void testWriteJsonSeq() throws IOException
+    {
+        Assert.assertEquals(JSON_SEQ, write(JaxRsJsonStreamer.jsonSeqOf(INT_TYPE_REF), ImmutableList.of(1, 2, 3)));
+    }
+
+    @Test
+    public void testRead() throws IOException
+    {
+        for (Map.Entry<JsonStreamFormat, String> body : ImmutableMap.of(JsonStreamFormat.NDJSON, NDJSON, JsonStreamFormat.JSON_SEQ, JSON_SEQ).entrySet()) {
+            final CallbackCollector<Integer> callback = new CallbackCollector<>();
+            streamer.read(response(body.getValue()), callback, INT_TYPE_REF, body.getKey());
+            Assert.assertEquals(ImmutableList.of(1, 2, 3), callback.getItems());
+        }
+    }
+
+    @Test
+    public void testRoundTripObjects() throws IOException
+    {
+        final List<Map<String, Object>> items = ImmutableList.of(
+                ImmutableMap.of("a", ImmutableList.of(1, ImmutableMap.of("b", "x\ny"))),
+                ImmutableMap.of(),
+                // an element that looks like the trailer is still an element
+                ImmutableMap.of("success", true),
+                ImmutableMap.of("c", 2.5));
+        for (JsonStreamFormat format : ImmutableList.of(JsonStreamFormat.NDJSON, JsonStreamFormat.JSON_SEQ)) {
+            final String body = write(format == JsonStreamFormat.NDJSON ? JaxRsJsonStreamer.ndjsonOf(MAP_TYPE_REF) : JaxRsJsonStreamer.jsonSeqOf(MAP_TYPE_REF), items);
+            final CallbackCollector<Map<String, Object>> callback = new CallbackCollector<>();
+            streamer.read(response(body), callback, MAP_TYPE_REF, format);
+            Assert.assertEquals(items, callback.getItems());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final CallbackCollector<Integer> callback = new CallbackCollector<>();
+        streamer.read(response("{\"success\":true}\n"), callback, INT_TYPE_REF, JsonStreamFormat.NDJSON);
+        Assert.assertTrue(callback.getItems().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoTrailer() throws IOException
+    {
+        streamer.read(response("1\n2\n3\n"), new CallbackCollector<Integer>(), INT_TYPE_REF, JsonStreamFormat.NDJSON);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNothing() throws IOException
+    {
+        streamer.read(response(""), new CallbackCollector<Integer>(), INT_TYPE_REF, JsonStreamFormat.JSON_SEQ);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCutOffRecord() throws IOException
+    {
+        streamer.read(response("\u001E{\"a\":1}\n\u001E{\"a\":"), new CallbackCollector<Map<String, Object>>(), MAP_TYPE_REF, JsonStreamFormat.JSON_SEQ);
+    }
+
+    @Test
+    public void testRefuse() throws IOException
+    {
+        final List<Integer> items = new ArrayList<>();
+        streamer.read(response(NDJSON), item -> {
+            if (item >= 2) {
+                throw new CallbackRefusedException();
+            }
+            items.add(item);
+        }, INT_TYPE_REF, JsonStreamFormat.NDJSON);
+        Assert.assertEquals(ImmutableList.of(1), items);
+    }
+
+    @Test
+    public void testReadBatches() throws IOException
+    {
+        final List<List<Integer>> batches = new ArrayList<>();
+        streamer.readBatches(response(JSON_SEQ), batch -> batches.add(ImmutableList.copyOf(batch)), INT_TYPE_REF, 2, Long.MAX_VALUE, JsonStreamFormat.JSON_SEQ);
+        Assert.assertEquals(ImmutableList.of(ImmutableList.of(1, 2), ImmutableList.of(3)), batches);
+    }
+
+    @Test
+    public void testForMediaType()
+    {
+        Assert.assertEquals(JsonStreamFormat.NDJSON, JsonStreamFormat.forMediaType(new MediaType("application", "x-ndjson", "UTF-8")));
+        Assert.assertEquals(JsonStreamFormat.JSON_SEQ, JsonStreamFormat.forMediaType(new MediaType("application", "json-seq")));
+        Assert.assertEquals(JsonStreamFormat.WRAPPED_RESULTS, JsonStreamFormat.forMediaType(MediaType.APPLICATION_JSON_TYPE));
+        Assert.assertEquals(JsonStreamFormat.WRAPPED_RESULTS, JsonStreamFormat.forMediaType(null));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentable.callback.CallbackCollector;
+import com.opentable.callback.CallbackRefusedException;
+
+public class TestParallelResultsReader
+{
+    private static final TypeReference<Integer> INT_TYPE_REF = new TypeReference<Integer>() {};
+    private static final TypeReference<Object> ANY_TYPE_REF = new TypeReference<Object>() {};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StreamedJsonResponseConverter streamer = new StreamedJsonResponseConverter(mapper);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void after()
+    {
+        executor.shutdownNow();
+    }
+
+    private static Response response(String json)
+    {
+        final Response response = EasyMock.createMock(Response.class);
+        EasyMock.expect(response.getStatus()).andReturn(Status.OK.getStatusCode()).anyTimes();
+        EasyMock.expect(response.readEntity(InputStream.class)).andReturn(new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)));
+        response.close();
+        EasyMock.expectLastCall();
+        EasyMock.replay(response);
+        return response;
+    }
+
+    @Test
+    public void testOrderIsKept() throws Exception
+    {
+        final CallbackCollector<Integer> callback = new CallbackCollector<>();
+        streamer.readParallel(response(TestStreamedJsonResponseConverter.TEST_JSON), callback, INT_TYPE_REF, executor, 3);
+        Assert.assertEquals(ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), callback.getItems());
+    }
+
+    @Test
+    public void testSameResultsAsSequentialRead() throws Exception
+    {
+        final Random random = new Random(0);
+        final StringBuilder json = new StringBuilder("{ \"results\" : [ ");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                json.append(i % 7 == 0 ? " ,\n " : ",");
+            }
+            switch (i % 6) {
+            case 0:
+                json.append("{\"id\":").append(i).append(",\"name\":\"a ] b } c, \\\" d \\u00e9\",\"tags\":[1,[2,{}],[]]}");
+                break;
+            case 1:
+                json.append("\"plain ").append(i).append(" \\\\\"");
+                break;
+            case 2:
+                json.append(-random.nextInt(1000)).append(".5e3");
+                break;
+            case 3:
+                json.append(random.nextBoolean());
+                break;
+            case 4:
+                json.append("null");
+                break;
+            default:
+                json.append("[{\"x\":{\"y\":[").append(i).append(", \"]\"]}}, 17]");
+            }
+        }
+        // bigger than the recording buffer on its own
+        json.append(", \"").append(Strings.repeat("z", 200_000)).append("\"");
+        json.append(" ] , \"success\" : true }");
+
+        final CallbackCollector<Object> sequential = new CallbackCollector<>();
+        streamer.read(response(json.toString()), sequential, ANY_TYPE_REF);
+        final CallbackCollector<Object> parallel = new CallbackCollector<>();
+        streamer.readParallel(response(json.toString()), parallel, ANY_TYPE_REF, executor, 16);
+
+        Assert.assertEquals(5001, parallel.getItems().size());
+        Assert.assertEquals(sequential.getItems(), parallel.getItems());
+    }
+
+    @Test
+    public void testRefuse() throws Exception
+    {
+        final List<Integer> items = Lists.newArrayList();
+        streamer.readParallel(response(TestStreamedJsonResponseConverter.TEST_JSON), item -> {
+            if (item >= 5) {
+                throw new CallbackRefusedException();
+            }
+            items.add(item);
+        }, INT_TYPE_REF, executor, 2);
+        Assert.assertEquals(ImmutableList.of(1, 2, 3, 4), items);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception
+    {
+        streamer.readParallel(response(TestStreamedJsonResponseConverter.TRUNCATED_JSON), new CallbackCollector<Integer>(),
+                INT_TYPE_REF, executor, 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testBindFailure() throws Exception
+    {
+        streamer.readParallel(response("{\"results\": [1, {\"a\": 2}, 3], \"success\": true}"), new CallbackCollector<Integer>(),
+                INT_TYPE_REF, executor, 4);
+    }
+}
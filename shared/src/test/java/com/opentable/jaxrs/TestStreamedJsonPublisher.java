@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStreamedJsonPublisher
+{
+    private static final TypeReference<Integer> INT_TYPE_REF = new TypeReference<Integer>() {};
+    private static final Executor DIRECT = Runnable::run;
+
+    private final StreamedJsonResponseConverter streamer = new StreamedJsonResponseConverter(new ObjectMapper());
+
+    private static Response response(Status status, InputStream entity)
+    {
+        final Response response = EasyMock.createMock(Response.class);
+        EasyMock.expect(response.getStatus()).andReturn(status.getStatusCode()).anyTimes();
+        EasyMock.expect(response.getStatusInfo()).andReturn(status).anyTimes();
+        EasyMock.expect(response.readEntity(InputStream.class)).andReturn(entity).times(0, 1);
+        response.close();
+        EasyMock.expectLastCall().once();
+        EasyMock.replay(response);
+        return response;
+    }
+
+    private static InputStream inputStream(String json)
+    {
+        return new ByteArrayInputStream(json.getBytes(Charsets.UTF_8));
+    }
+
+    @Test
+    public void testDemandIsHonoured()
+    {
+        final Response response = response(Status.OK, inputStream(TestStreamedJsonResponseConverter.TEST_JSON));
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response, INT_TYPE_REF, DIRECT).subscribe(recorder);
+
+        recorder.subscription.request(3);
+        Assert.assertEquals(ImmutableList.of(1, 2, 3), recorder.items);
+        Assert.assertFalse(recorder.completed);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), recorder.items);
+        Assert.assertTrue(recorder.completed);
+        Assert.assertNull(recorder.error);
+        EasyMock.verify(response);
+    }
+
+    @Test
+    public void testSlowSubscriberLeavesBodyUnread()
+    {
+        final StringBuilder json = new StringBuilder("{\"results\": [0");
+        for (int i = 1; i < 100000; i++) {
+            json.append(',').append(i);
+        }
+        json.append("], \"success\": true}");
+        final AtomicLong read = new AtomicLong();
+        final InputStream counting = new FilterInputStream(inputStream(json.toString())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                final int n = super.read(b, off, len);
+                read.addAndGet(Math.max(n, 0));
+                return n;
+            }
+        };
+        final Response response = response(Status.OK, counting);
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response, INT_TYPE_REF, DIRECT).subscribe(recorder);
+
+        recorder.subscription.request(1);
+        Assert.assertEquals(ImmutableList.of(0), recorder.items);
+        Assert.assertTrue("read " + read.get() + " of " + json.length(), read.get() < json.length() / 10);
+
+        recorder.subscription.cancel();
+        recorder.subscription.request(1);
+        Assert.assertEquals(1, recorder.items.size());
+        Assert.assertFalse(recorder.completed);
+        EasyMock.verify(response);
+    }
+
+    @Test
+    public void testCancelClosesResponse()
+    {
+        final Response response = response(Status.OK, inputStream(TestStreamedJsonResponseConverter.TEST_JSON));
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response, INT_TYPE_REF, DIRECT).subscribe(recorder);
+        recorder.subscription.cancel();
+        EasyMock.verify(response);
+    }
+
+    @Test
+    public void testTruncatedStreamSignalsError()
+    {
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response(Status.OK, inputStream(TestStreamedJsonResponseConverter.TRUNCATED_JSON)), INT_TYPE_REF, DIRECT)
+                .subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(ImmutableList.of(1, 2, 3), recorder.items);
+        Assert.assertTrue(recorder.error instanceof IOException);
+    }
+
+    @Test
+    public void testServerError()
+    {
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response(Status.INTERNAL_SERVER_ERROR, null), INT_TYPE_REF, DIRECT).subscribe(recorder);
+        Assert.assertTrue(recorder.error instanceof ServerErrorException);
+    }
+
+    @Test
+    public void testNoContentCompletes()
+    {
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response(Status.NO_CONTENT, null), INT_TYPE_REF, DIRECT).subscribe(recorder);
+        Assert.assertTrue(recorder.completed);
+    }
+
+    @Test
+    public void testSecondSubscriberIsRejected()
+    {
+        final Flow.Publisher<Integer> publisher = streamer.publisher(
+                response(Status.OK, inputStream(TestStreamedJsonResponseConverter.TEST_JSON)), INT_TYPE_REF, DIRECT);
+        publisher.subscribe(new Recorder<>());
+        final Recorder<Integer> second = new Recorder<>();
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testNonPositiveRequestSignalsError()
+    {
+        final Recorder<Integer> recorder = new Recorder<>();
+        streamer.publisher(response(Status.OK, inputStream(TestStreamedJsonResponseConverter.TEST_JSON)), INT_TYPE_REF, DIRECT)
+                .subscribe(recorder);
+        recorder.subscription.request(0);
+        Assert.assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    private static class Recorder<T> implements Flow.Subscriber<T>
+    {
+        final List<T> items = Lists.newArrayList();
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription s)
+        {
+            this.subscription = s;
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+            error = t;
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+        }
+    }
+}
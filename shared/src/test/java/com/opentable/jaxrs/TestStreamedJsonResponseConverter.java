@@ -28,8 +28,10 @@ import org.junit.Test;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 public class TestStreamedJsonResponseConverter
 {
@@ -37,6 +39,8 @@ public class TestStreamedJsonResponseConverter
 
     public static final String TEST_JSON = "{\"results\": [1, 2, 3, 4, 5, 6, 7, 8, 9, 10], \"success\":true}";
     public static final String EMPTY_JSON = "{\"results\": [], \"success\":true}";
+    public static final String OBJECT_JSON = "{\"results\": [{\"a\": [1, {\"b\": \"x\"}]}, {}, {\"c\": 2.5}], \"success\": true}";
+    public static final String TRUNCATED_JSON = "{\"results\": [1, 2, 3";
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final StreamedJsonResponseConverter streamer = new StreamedJsonResponseConverter(mapper);
@@ -92,4 +96,119 @@ public class TestStreamedJsonResponseConverter
         CallbackCollector<Integer> callback = new CallbackCollector<>();
         streamer.read(response(Status.OK, inputStream(EMPTY_JSON)), callback, INT_TYPE_REF);
     }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception
+    {
+        streamer.read(response(Status.OK, inputStream(TRUNCATED_JSON)), new CallbackCollector<Integer>(), INT_TYPE_REF);
+    }
+
+    @Test
+    public void testReaderIsCached()
+    {
+        Assert.assertSame(streamer.reader(INT_TYPE_REF), streamer.reader(new TypeReference<Integer>() {}));
+    }
+
+    @Test
+    public void testFeederByteAtATime() throws Exception
+    {
+        final CallbackCollector<Map<String, Object>> callback = new CallbackCollector<>();
+        final StreamedJsonFeeder<Map<String, Object>> feeder = streamer.feeder(callback, new TypeReference<Map<String, Object>>() {});
+        final byte[] bytes = OBJECT_JSON.getBytes(Charsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertFalse(feeder.isDone());
+            feeder.feed(bytes, i, 1);
+        }
+        Assert.assertTrue(feeder.isDone());
+        feeder.end();
+
+        Assert.assertEquals(mapper.readValue("[{\"a\": [1, {\"b\": \"x\"}]}, {}, {\"c\": 2.5}]", List.class), callback.getItems());
+    }
+
+    @Test
+    public void testFeederDeliversCompleteElementsEarly() throws Exception
+    {
+        final CallbackCollector<Integer> callback = new CallbackCollector<>();
+        final StreamedJsonFeeder<Integer> feeder = streamer.feeder(callback, INT_TYPE_REF);
+        final byte[] head = "{\"results\": [1, 2, 3".getBytes(Charsets.UTF_8);
+        Assert.assertTrue(feeder.feed(head, 0, head.length));
+        // 3 might continue as 34
+        Assert.assertEquals(ImmutableList.of(1, 2), callback.getItems());
+
+        final byte[] tail = "4], \"success\": true}".getBytes(Charsets.UTF_8);
+        Assert.assertFalse(feeder.feed(tail, 0, tail.length));
+        feeder.end();
+        Assert.assertEquals(ImmutableList.of(1, 2, 34), callback.getItems());
+    }
+
+    @Test
+    public void testFeederRefuse() throws Exception
+    {
+        final List<Integer> items = Lists.newArrayList();
+        final StreamedJsonFeeder<Integer> feeder = streamer.feeder(item -> {
+            if (item >= 5) {
+                throw new CallbackRefusedException();
+            }
+            items.add(item);
+        }, INT_TYPE_REF);
+        final byte[] bytes = TEST_JSON.getBytes(Charsets.UTF_8);
+        Assert.assertFalse(feeder.feed(bytes, 0, bytes.length));
+        feeder.end();
+
+        Assert.assertEquals(ImmutableList.of(1, 2, 3, 4), items);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFeederTruncated() throws Exception
+    {
+        final StreamedJsonFeeder<Integer> feeder = streamer.feeder(new CallbackCollector<Integer>(), INT_TYPE_REF);
+        final byte[] bytes = TRUNCATED_JSON.getBytes(Charsets.UTF_8);
+        feeder.feed(bytes, 0, bytes.length);
+        feeder.end();
+    }
+
+    @Test
+    public void testBatchesBySize() throws Exception
+    {
+        final List<List<Integer>> batches = Lists.newArrayList();
+        streamer.readBatches(response(Status.OK, inputStream(TEST_JSON)), batch -> batches.add(ImmutableList.copyOf(batch)), INT_TYPE_REF, 3, Long.MAX_VALUE);
+
+        Assert.assertEquals(ImmutableList.of(
+                ImmutableList.of(1, 2, 3), ImmutableList.of(4, 5, 6), ImmutableList.of(7, 8, 9), ImmutableList.of(10)), batches);
+    }
+
+    @Test
+    public void testBatchesByBytes() throws Exception
+    {
+        final List<List<String>> batches = Lists.newArrayList();
+        final String json = "{\"results\": [\"aaaaaaaa\", \"b\", \"c\", \"dddddddd\", \"e\"], \"success\": true}";
+        streamer.readBatches(response(Status.OK, inputStream(json)), batch -> batches.add(ImmutableList.copyOf(batch)),
+                new TypeReference<String>() {}, 100, 10);
+
+        // "aaaaaaaa" with its quotes is 10 bytes on its own
+        Assert.assertEquals(ImmutableList.of(
+                ImmutableList.of("aaaaaaaa"), ImmutableList.of("b", "c", "dddddddd"), ImmutableList.of("e")), batches);
+    }
+
+    @Test
+    public void testBatchRefuse() throws Exception
+    {
+        final List<List<Integer>> batches = Lists.newArrayList();
+        streamer.readBatches(response(Status.OK, inputStream(TEST_JSON)), batch -> {
+            if (batches.size() == 2) {
+                throw new CallbackRefusedException();
+            }
+            batches.add(ImmutableList.copyOf(batch));
+        }, INT_TYPE_REF, 4, Long.MAX_VALUE);
+
+        Assert.assertEquals(ImmutableList.of(ImmutableList.of(1, 2, 3, 4), ImmutableList.of(5, 6, 7, 8)), batches);
+    }
+
+    @Test
+    public void testBatchesEmpty() throws Exception
+    {
+        final List<List<Integer>> batches = Lists.newArrayList();
+        streamer.readBatches(response(Status.OK, inputStream(EMPTY_JSON)), batch -> batches.add(ImmutableList.copyOf(batch)), INT_TYPE_REF, 4, 1024);
+        Assert.assertTrue(batches.isEmpty());
+    }
 }
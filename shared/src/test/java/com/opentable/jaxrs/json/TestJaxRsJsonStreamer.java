@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentable.callback.Callback;
+
+public class TestJaxRsJsonStreamer
+{
+    private static final TypeReference<Integer> INT_TYPE_REF = new TypeReference<Integer>() {};
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Callback<Callback<Integer>> TEN = callback -> {
+        for (int i = 1; i <= 10; i++) {
+            callback.call(i);
+        }
+    };
+
+    @Test
+    public void testStatsAreReported() throws IOException
+    {
+        final AtomicReference<StreamStats> stats = new AtomicReference<>();
+        final FlushRecorder out = new FlushRecorder();
+        JaxRsJsonStreamer.wrappedResultsArrayOf(INT_TYPE_REF)
+                .withListener(stats::set)
+                .build(MAPPER)
+                .execute(TEN)
+                .write(out);
+
+        Assert.assertEquals("{\"results\":[1,2,3,4,5,6,7,8,9,10],\"success\":true}", out.toString(Charsets.UTF_8));
+        Assert.assertTrue(stats.get().isSuccess());
+        Assert.assertEquals(10, stats.get().getElements());
+        Assert.assertEquals(out.size(), stats.get().getBytes());
+        Assert.assertTrue(stats.get().getTimeToFirstByte().isPresent());
+        Assert.assertTrue(stats.get().getTimeToFirstByte().get().compareTo(stats.get().getDuration()) <= 0);
+    }
+
+    @Test
+    public void testFailureIsReported()
+    {
+        final AtomicReference<StreamStats> stats = new AtomicReference<>();
+        final StreamingOutput output = JaxRsJsonStreamer.arrayOf(INT_TYPE_REF)
+                .withListener(stats::set)
+                .build(MAPPER)
+                .execute(callback -> {
+                    callback.call(1);
+                    callback.call(2);
+                    throw new IllegalStateException("boom");
+                });
+        try {
+            output.write(new FlushRecorder());
+            Assert.fail();
+        } catch (final Exception e) {
+            Assert.assertEquals("boom", e.getMessage());
+        }
+        Assert.assertFalse(stats.get().isSuccess());
+        Assert.assertEquals(2, stats.get().getElements());
+    }
+
+    @Test
+    public void testFlushEveryElementByDefault() throws IOException
+    {
+        final FlushRecorder out = new FlushRecorder();
+        JaxRsJsonStreamer.arrayOf(INT_TYPE_REF).build(MAPPER).execute(TEN).write(out);
+        Assert.assertEquals("[1", out.flushedAt.get(0));
+        Assert.assertEquals("[1,2", out.flushedAt.get(1));
+        // plus the generator's own flush on close
+        Assert.assertEquals(11, out.flushedAt.size());
+    }
+
+    @Test
+    public void testNeverFlush() throws IOException
+    {
+        final FlushRecorder out = new FlushRecorder();
+        JaxRsJsonStreamer.arrayOf(INT_TYPE_REF).withFlushPolicy(FlushPolicy.NEVER).build(MAPPER).execute(TEN).write(out);
+        Assert.assertEquals(1, out.flushedAt.size());
+    }
+
+    @Test
+    public void testFlushEveryElements() throws IOException
+    {
+        final FlushRecorder out = new FlushRecorder();
+        JaxRsJsonStreamer.arrayOf(INT_TYPE_REF)
+                .withFlushPolicy(FlushPolicy.everyElements(3))
+                .build(MAPPER)
+                .execute(TEN)
+                .write(out);
+        Assert.assertEquals("[1,2,3", out.flushedAt.get(0));
+        Assert.assertEquals("[1,2,3,4,5,6", out.flushedAt.get(1));
+        Assert.assertEquals("[1,2,3,4,5,6,7,8,9", out.flushedAt.get(2));
+        Assert.assertEquals(4, out.flushedAt.size());
+    }
+
+    @Test
+    public void testFlushEveryBytes() throws IOException
+    {
+        final FlushRecorder out = new FlushRecorder();
+        JaxRsJsonStreamer.arrayOf(INT_TYPE_REF)
+                .withFlushPolicy(FlushPolicy.everyBytes(8))
+                .withBufferSize(1024)
+                .build(MAPPER)
+                .execute(TEN)
+                .write(out);
+        Assert.assertEquals("[1,2,3,4", out.flushedAt.get(0));
+        Assert.assertEquals("[1,2,3,4,5,6,7,8", out.flushedAt.get(1));
+        Assert.assertEquals("[1,2,3,4,5,6,7,8,9,10]", out.flushedAt.get(out.flushedAt.size() - 1));
+    }
+
+    @Test
+    public void testCombinedPolicy()
+    {
+        final FlushPolicy policy = FlushPolicy.everyElements(100).or(FlushPolicy.everyBytes(1000));
+        Assert.assertFalse(policy.shouldFlush(1, 1, 0));
+        Assert.assertTrue(policy.shouldFlush(100, 1, 0));
+        Assert.assertTrue(policy.shouldFlush(1, 1000, 0));
+        Assert.assertFalse(FlushPolicy.every(java.time.Duration.ofSeconds(1)).shouldFlush(1, 1, 999_999_999));
+        Assert.assertTrue(FlushPolicy.every(java.time.Duration.ofSeconds(1)).shouldFlush(1, 1, 1_000_000_000));
+    }
+
+    @Test
+    public void testBufferedOutputMatchesUnbuffered() throws IOException
+    {
+        final Callback<Callback<Integer>> many = callback -> {
+            for (int i = 0; i < 10000; i++) {
+                callback.call(i);
+            }
+        };
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        JaxRsJsonStreamer.wrappedResultsArrayOf(INT_TYPE_REF).build(MAPPER).execute(many).write(plain);
+
+        final JaxRsJsonStreamer<Integer> pooled = JaxRsJsonStreamer.wrappedResultsArrayOf(INT_TYPE_REF)
+                .withBufferSize(100)
+                .withFlushPolicy(FlushPolicy.everyElements(777))
+                .build(MAPPER);
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            pooled.execute(many).write(out);
+            Assert.assertArrayEquals(plain.toByteArray(), out.toByteArray());
+        }
+    }
+
+    /** Remembers what had been written at each flush. */
+    private static class FlushRecorder extends ByteArrayOutputStream
+    {
+        final List<String> flushedAt = new ArrayList<>();
+
+        @Override
+        public void flush()
+        {
+            flushedAt.add(toString(Charsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.jaxrs.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNonBlockingJsonWriter
+{
+    private static final TypeReference<Integer> INT_TYPE_REF = new TypeReference<Integer>() {};
+    private static final int POOL_THREADS = 8;
+
+    private final AtomicReference<StreamStats> stats = new AtomicReference<>();
+    private final JaxRsJsonStreamer<Integer> streamer = JaxRsJsonStreamer.wrappedResultsArrayOf(INT_TYPE_REF)
+            .withListener(stats::set)
+            .build(new ObjectMapper());
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private Server server;
+    private URI uri;
+    private volatile StreamHandler handler;
+
+    @FunctionalInterface
+    private interface StreamHandler
+    {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new Server(new QueuedThreadPool(POOL_THREADS, 2));
+        final ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                handler.handle(request, response);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        server.stop();
+    }
+
+    private String get() throws Exception
+    {
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String expected(int count)
+    {
+        return IntStream.rangeClosed(1, count).mapToObj(String::valueOf)
+                .collect(Collectors.joining(",", "{\"results\":[", "],\"success\":true}"));
+    }
+
+    @Test(timeout = 30000)
+    public void testPublisher() throws Exception
+    {
+        handler = (request, response) -> {
+            final SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>();
+            streamer.stream(publisher, request, response);
+            new Thread(() -> {
+                for (int i = 1; i <= 10000; i++) {
+                    publisher.submit(i);
+                }
+                publisher.close();
+            }).start();
+        };
+        Assert.assertEquals(expected(10000), get());
+        Assert.assertTrue(stats.get().isSuccess());
+        Assert.assertEquals(10000, stats.get().getElements());
+        Assert.assertEquals(expected(10000).length(), stats.get().getBytes());
+    }
+
+    @Test(timeout = 30000)
+    public void testAsyncSource() throws Exception
+    {
+        final AtomicInteger batches = new AtomicInteger();
+        handler = (request, response) -> streamer.stream(() -> {
+            final int b = batches.getAndIncrement();
+            // some batches complete later on another thread, some already have
+            final List<Integer> batch = b == 5 ? Collections.emptyList()
+                    : IntStream.rangeClosed(b * 100 + 1, b * 100 + 100).boxed().collect(Collectors.toList());
+            return b % 2 == 0 ? CompletableFuture.supplyAsync(() -> batch) : CompletableFuture.completedFuture(batch);
+        }, request, response);
+        Assert.assertEquals(expected(500), get());
+        Assert.assertEquals(6, batches.get());
+        Assert.assertTrue(stats.get().isSuccess());
+    }
+
+    @Test(timeout = 30000)
+    public void testFailureIsNotAComplete() throws Exception
+    {
+        handler = (request, response) -> {
+            final SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>();
+            streamer.stream(publisher, request, response);
+            publisher.submit(1);
+            publisher.submit(2);
+            publisher.closeExceptionally(new IllegalStateException("boom"));
+        };
+        final HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertFalse(response.body(), response.body().contains("success"));
+        Assert.assertFalse(stats.get().isSuccess());
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowClientHoldsBackSource() throws Exception
+    {
+        final int total = 1_000_000;
+        final AtomicLong requested = new AtomicLong();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final JaxRsJsonStreamer<Integer> batching = JaxRsJsonStreamer.wrappedResultsArrayOf(INT_TYPE_REF)
+                .withFlushPolicy(FlushPolicy.everyBytes(NonBlockingJsonWriter.DEFAULT_CHUNK))
+                .withListener(stats::set)
+                .build(new ObjectMapper());
+        handler = (request, response) -> batching.stream(new CountingPublisher(total, requested, subscribed), request, response);
+
+        try (InputStream body = uri.toURL().openStream()) {
+            Assert.assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+            // let socket and container buffers fill up while nobody reads
+            long before;
+            do {
+                before = requested.get();
+                Thread.sleep(200);
+            } while (requested.get() != before);
+            Assert.assertTrue("requested " + before, before < total);
+
+            Assert.assertEquals(expected(total).length(), body.readAllBytes().length);
+        }
+        Assert.assertEquals(total, requested.get());
+        Assert.assertTrue(stats.get().isSuccess());
+    }
+
+    @Test(timeout = 60000)
+    public void testStreamsOutnumberThreads() throws Exception
+    {
+        final int streams = POOL_THREADS * 5;
+        final List<SubmissionPublisher<Integer>> publishers = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch allOpen = new CountDownLatch(streams);
+        handler = (request, response) -> {
+            final SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>();
+            streamer.stream(publisher, request, response);
+            publishers.add(publisher);
+            allOpen.countDown();
+        };
+
+        final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < streams; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        // a blocking writer would hold a pool thread per stream and never get here
+        Assert.assertTrue(allOpen.await(30, TimeUnit.SECONDS));
+        for (SubmissionPublisher<Integer> publisher : publishers) {
+            for (int i = 1; i <= 100; i++) {
+                publisher.submit(i);
+            }
+            publisher.close();
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(expected(100), response.get(30, TimeUnit.SECONDS).body());
+        }
+    }
+
+    /** Emits 1..total strictly against demand, counting what was asked for. */
+    private static class CountingPublisher implements Flow.Publisher<Integer>
+    {
+        private final int total;
+        private final AtomicLong requested;
+        private final CountDownLatch subscribed;
+
+        CountingPublisher(int total, AtomicLong requested, CountDownLatch subscribed)
+        {
+            this.total = total;
+            this.requested = requested;
+            this.subscribed = subscribed;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Integer> subscriber)
+        {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicLong demand = new AtomicLong();
+                private final AtomicInteger wip = new AtomicInteger();
+                private int next = 1;
+
+                @Override
+                public void request(long n)
+                {
+                    demand.addAndGet(n);
+                    if (wip.getAndIncrement() != 0) {
+                        return;
+                    }
+                    int missed = 1;
+                    do {
+                        while (next <= total && demand.get() > 0) {
+                            demand.decrementAndGet();
+                            requested.incrementAndGet();
+                            subscriber.onNext(next++);
+                        }
+                        if (next == total + 1) {
+                            next++;
+                            subscriber.onComplete();
+                        }
+                        missed = wip.addAndGet(-missed);
+                    } while (missed != 0);
+                }
+
+                @Override
+                public void cancel()
+                {
+                    // runs to the end regardless
+                }
+            });
+            subscribed.countDown();
+        }
+    }
+}